@@ -1,27 +1,68 @@
 /**
  * Class to handle all of the bets
+ * Each race owns its own wallet, so races running side by side never share a balance.
  * @author Peter Bojthe
- * @version 18/04/25
+ * @version 20/04/25
  */
 public class BettingSystem {
-    // Balance initially set to 100.
-    public static double balance = 100.0;
+    private double balance;             // Money the user has left to bet with
 
     /**
-     * Calculate the possible winnings of a horse
-     * @param horse horse we are calculating the winnings of
+     * Constructor for a wallet with the starting balance of 100.
+     */
+    public BettingSystem() {
+        this(100.0);
+    }
+
+    /**
+     * Constructor for a wallet with the given balance.
+     * @param balance the starting balance
+     */
+    public BettingSystem(double balance) {
+        this.balance = balance;
+    }
+
+    /**
+     * @return the money the user has left to bet with
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Calculate the possible winnings of a horse from its exact odds.
+     * The payout includes the stake, so a horse with a 25% chance of winning
+     * pays back four times the bet. A horse that can never win is priced as a
+     * one in a million chance.
+     * @param odds the exact odds of the field the horse is racing in
+     * @param lane the 0-based lane index of the horse
+     * @param bet the amount of money placed on the race by the user
+     * @return return the possible winnings by the horse
+     */
+    public static double calculateWinnings(ExactOdds odds, int lane, double bet) {
+        double winProbability = Math.max(odds.getWinProbability(lane), 1e-6);
+        return bet / winProbability;
+    }
+
+    /**
+     * Calculate the possible winnings of a horse from any win probabilities of its field,
+     * such as the chances on form from HorseRatings.getWinProbabilities.
+     * A horse that can never win is priced as a one in a million chance.
+     * @param winProbabilities the chance of the horse in each lane winning
+     * @param lane the 0-based lane index of the horse
      * @param bet the amount of money placed on the race by the user
-     * @return return the possible winnings by the hore
+     * @return return the possible winnings by the horse
      */
-    public static double calculateWinnings(Horse horse, double bet) {
-        return ((horse.getConfidence()+horse.getWinRate()+1.1)*bet)+bet;
+    public static double calculateWinnings(double[] winProbabilities, int lane, double bet) {
+        double winProbability = Math.max(winProbabilities[lane], 1e-6);
+        return bet / winProbability;
     }
 
     /**
      * add to balance
      * @param wonMoney money to add to balance
      */
-    public static void addWinnings(double wonMoney) {
+    public void addWinnings(double wonMoney) {
         balance = balance + wonMoney;
     }
 
@@ -29,7 +70,7 @@ public class BettingSystem {
      * decrease balance
      * @param lostMoney amount to decrease balcance by
      */
-    public static void removeLoss(double lostMoney) {
+    public void removeLoss(double lostMoney) {
         balance = balance - lostMoney;
     }
 }
\ No newline at end of file
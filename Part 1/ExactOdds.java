@@ -0,0 +1,82 @@
+/**
+ * Exact win, dead-heat and place probabilities for every lane of a field,
+ * as computed by the ExactOddsSolver.
+ * Place probabilities rank horses by the move on which they would reach the
+ * finish line if the race carried on after the winner, horses crossing on the
+ * same move share the better place.
+ * Lanes are 0-based indexes into the field.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class ExactOdds {
+    private final double[] outrightWin;        // Probability of winning alone
+    private final double[] deadHeat;           // Probability of winning together with another horse
+    private final double[] winShare;           // Expected share of the win, a dead heat is split evenly
+    private final double[][] place;            // place[k][lane], probability of finishing in the first k+1
+    private final double noWinner;             // Probability that every horse falls
+    private final double unresolved;           // Probability mass left after the last move solved for
+
+    /**
+     * Constructor for a solved field.
+     *
+     * @param outrightWin probability of each lane winning alone
+     * @param deadHeat probability of each lane sharing the win
+     * @param winShare expected share of the win of each lane
+     * @param place place[k][lane] is the probability of finishing in the first k+1
+     * @param noWinner probability that every horse falls
+     * @param unresolved probability left over because the solver stopped early
+     */
+    public ExactOdds(double[] outrightWin, double[] deadHeat, double[] winShare, double[][] place, double noWinner, double unresolved) {
+        this.outrightWin = outrightWin.clone();
+        this.deadHeat = deadHeat.clone();
+        this.winShare = winShare.clone();
+        this.place = new double[place.length][];
+        for (int k = 0; k < place.length; k++) {
+            this.place[k] = place[k].clone();
+        }
+        this.noWinner = noWinner;
+        this.unresolved = unresolved;
+    }
+
+    /**
+     * Probability that the horse in a lane wins, with a dead heat counted
+     * as the horse's share of the win. This is the probability fair odds are priced from.
+     *
+     * @param lane the 0-based lane index
+     * @return the win probability of the lane
+     */
+    public double getWinProbability(int lane) { return winShare[lane]; }
+
+    /** @return the probability the horse in the lane wins alone, @param lane the 0-based lane index */
+    public double getOutrightWinProbability(int lane) { return outrightWin[lane]; }
+
+    /** @return the probability the horse in the lane wins in a dead heat, @param lane the 0-based lane index */
+    public double getDeadHeatProbability(int lane) { return deadHeat[lane]; }
+
+    /**
+     * Probability that the horse in a lane would finish in the first places.
+     *
+     * @param lane the 0-based lane index
+     * @param places the number of places that count (1 to getMaxPlaces())
+     * @return the place probability of the lane
+     */
+    public double getPlaceProbability(int lane, int places) {
+        if (places < 1 || places > place.length) {
+            throw new IllegalArgumentException("Places must be between 1 and " + place.length);
+        }
+        return place[places - 1][lane];
+    }
+
+    /** @return the largest number of places solved for */
+    public int getMaxPlaces() { return place.length; }
+
+    /** @return the probability that every horse falls */
+    public double getNoWinnerProbability() { return noWinner; }
+
+    /** @return the probability left unassigned because the solver stopped after its last move */
+    public double getUnresolvedProbability() { return unresolved; }
+
+    /** @return the number of lanes in the field */
+    public int getLanes() { return winShare.length; }
+}
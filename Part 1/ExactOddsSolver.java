@@ -0,0 +1,267 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes the odds of a field exactly instead of sampling races.
+ * On every move a standing horse advances with probability equal to its confidence
+ * and then falls with probability 0.1 * confidence squared, independently of the
+ * other horses. So each horse's chance of first reaching the finish on each move
+ * (its first-passage distribution) can be solved with dynamic programming over its
+ * distance, and the distributions of the whole field combined into exact win,
+ * dead-heat and place probabilities.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class ExactOddsSolver {
+    private static final double EPSILON = 1e-12;    // Probability mass small enough to stop solving
+
+    private final int maxTicks;                     // Most moves solved for one horse
+    private final int maxPlaces;                    // Number of places solved for
+
+    /**
+     * Constructor for a solver of up to a million moves and the first three places.
+     */
+    public ExactOddsSolver() {
+        this(1_000_000, 3);
+    }
+
+    /**
+     * Constructor for a solver with the given limits.
+     *
+     * @param maxTicks most moves solved for one horse
+     * @param maxPlaces number of places solved for
+     */
+    public ExactOddsSolver(int maxTicks, int maxPlaces) {
+        if (maxTicks <= 0 || maxPlaces <= 0) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.maxTicks = maxTicks;
+        this.maxPlaces = maxPlaces;
+    }
+
+    /**
+     * Solves the odds of a field of horses.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     * @param finishDistance the distance a horse must travel to win
+     * @return the exact odds of the field
+     */
+    public ExactOdds solve(List<Horse> horses, int finishDistance) {
+        double[] confidence = new double[horses.size()];
+        boolean[] occupied = new boolean[horses.size()];
+        for (int i = 0; i < horses.size(); i++) {
+            Horse horse = horses.get(i);
+            if (horse == null) continue;
+            confidence[i] = horse.getConfidence();
+            occupied[i] = true;
+        }
+        return solve(confidence, occupied, finishDistance);
+    }
+
+    /**
+     * Solves the odds of every lane.
+     *
+     * @param confidence confidence of the horse in each lane
+     * @param occupied true for every lane that has a horse in it
+     * @param finishDistance the distance a horse must travel to win
+     * @return the exact odds of the field
+     */
+    public ExactOdds solve(double[] confidence, boolean[] occupied, int finishDistance) {
+        int lanes = confidence.length;
+        int places = Math.min(maxPlaces, Math.max(1, lanes));
+        double[][] firstPassage = new double[lanes][];
+        double[] neverFinish = new double[lanes];
+        double[] leftOver = new double[lanes];
+        int horizon = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (!occupied[lane]) continue;
+            double[] remaining = new double[1];
+            firstPassage[lane] = firstPassage(confidence[lane], finishDistance, remaining);
+            leftOver[lane] = remaining[0];
+            double finished = 0.0;
+            for (double p : firstPassage[lane]) finished += p;
+            neverFinish[lane] = Math.max(0.0, 1.0 - finished - remaining[0]);
+            horizon = Math.max(horizon, firstPassage[lane].length);
+        }
+
+        double[] outrightWin = new double[lanes];
+        double[] deadHeat = new double[lanes];
+        double[] winShare = new double[lanes];
+        double[][] place = new double[places][lanes];
+        double[] notBefore = new double[lanes];     // P(T > t-1), horse has not finished before move t
+        double[] notAfter = new double[lanes];      // P(T > t), horse has not finished by move t
+        Arrays.fill(notBefore, 1.0);
+        double[] ties = new double[lanes + 1];
+        double[] ahead = new double[lanes + 1];
+
+        for (int t = 1; t <= horizon; t++) {
+            for (int lane = 0; lane < lanes; lane++) {
+                notAfter[lane] = notBefore[lane] - probabilityAt(firstPassage[lane], t);
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                double p = probabilityAt(firstPassage[lane], t);
+                if (p == 0.0) continue;
+
+                // ties[k]: every other horse is still running at t and k of them cross on move t
+                // ahead[k]: k of the other horses crossed before move t
+                Arrays.fill(ties, 0.0);
+                Arrays.fill(ahead, 0.0);
+                ties[0] = 1.0;
+                ahead[0] = 1.0;
+                int others = 0;
+                for (int other = 0; other < lanes; other++) {
+                    if (other == lane || !occupied[other]) continue;
+                    double finishesNow = notBefore[other] - notAfter[other];
+                    double finishedBefore = 1.0 - notBefore[other];
+                    others++;
+                    for (int k = others; k >= 1; k--) {
+                        ties[k] = ties[k] * notAfter[other] + ties[k - 1] * finishesNow;
+                        ahead[k] = ahead[k] * (1.0 - finishedBefore) + ahead[k - 1] * finishedBefore;
+                    }
+                    ties[0] *= notAfter[other];
+                    ahead[0] *= 1.0 - finishedBefore;
+                }
+
+                outrightWin[lane] += p * ties[0];
+                for (int k = 1; k <= others; k++) {
+                    deadHeat[lane] += p * ties[k];
+                    winShare[lane] += p * ties[k] / (k + 1);
+                }
+                winShare[lane] += p * ties[0];
+                double atMost = 0.0;
+                for (int k = 0; k < places; k++) {
+                    if (k <= others) atMost += ahead[k];
+                    place[k][lane] += p * atMost;
+                }
+            }
+            System.arraycopy(notAfter, 0, notBefore, 0, lanes);
+        }
+
+        double noWinner = 1.0;
+        boolean anyHorse = false;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (!occupied[lane]) continue;
+            anyHorse = true;
+            noWinner *= neverFinish[lane];
+        }
+        if (!anyHorse) noWinner = 1.0;
+        double resolved = noWinner;
+        for (double share : winShare) resolved += share;
+        return new ExactOdds(outrightWin, deadHeat, winShare, place, noWinner, Math.max(0.0, 1.0 - resolved));
+    }
+
+    /**
+     * Solves the first-passage distribution of a single horse.
+     *
+     * @param confidence the confidence of the horse
+     * @param finishDistance the distance the horse must travel
+     * @return element t-1 is the probability the horse first reaches the finish on move t
+     */
+    public double[] firstPassage(double confidence, int finishDistance) {
+        return firstPassage(confidence, finishDistance, new double[1]);
+    }
+
+    /**
+     * Solves the first-passage distribution of a single horse.
+     * The horse's probability of standing at each distance is carried from move to move
+     * until almost none is left or the move limit is reached.
+     *
+     * @param confidence the confidence of the horse
+     * @param finishDistance the distance the horse must travel
+     * @param remaining element 0 receives the probability still running after the last move solved
+     * @return element t-1 is the probability the horse first reaches the finish on move t
+     */
+    private double[] firstPassage(double confidence, int finishDistance, double[] remaining) {
+        if (finishDistance <= 0) {
+            throw new IllegalArgumentException("Finish distance must be positive");
+        }
+        if (confidence <= 0.0) {
+            remaining[0] = 0.0;
+            return new double[0];
+        }
+        double fall = 0.1 * confidence * confidence;
+        double stay = (1.0 - confidence) * (1.0 - fall);
+        double advance = confidence * (1.0 - fall);
+
+        double[] standing = new double[finishDistance];
+        standing[0] = 1.0;
+        double[] passage = new double[Math.min(maxTicks, 4 * finishDistance + 16)];
+        double mass = 1.0;
+        int t = 0;
+        while (mass > EPSILON && t < maxTicks) {
+            if (t == passage.length) {
+                passage = Arrays.copyOf(passage, (int) Math.min(maxTicks, 2L * passage.length));
+            }
+            // Crossing the line counts even if the horse falls on the same move
+            passage[t] = standing[finishDistance - 1] * confidence;
+            int furthest = Math.min(t + 1, finishDistance - 1);
+            mass = 0.0;
+            for (int d = furthest; d >= 1; d--) {
+                standing[d] = standing[d] * stay + standing[d - 1] * advance;
+                mass += standing[d];
+            }
+            standing[0] *= stay;
+            mass += standing[0];
+            t++;
+        }
+        remaining[0] = mass;
+        return Arrays.copyOf(passage, t);
+    }
+
+    /**
+     * Reads a first-passage probability, zero past the end of the distribution.
+     *
+     * @param passage the first-passage distribution, null for an empty lane
+     * @param t the move (1-based)
+     * @return the probability of first reaching the finish on move t
+     */
+    private static double probabilityAt(double[] passage, int t) {
+        if (passage == null || t > passage.length) return 0.0;
+        return passage[t - 1];
+    }
+
+    /**
+     * Benchmarks the solver against Monte Carlo sampling on a 12-horse field.
+     * Usage: java ExactOddsSolver [finishDistance] [samplingBudgetMillis]
+     *
+     * @param args optional finish distance and sampling time budget
+     */
+    public static void main(String[] args) {
+        int finishDistance = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        long budget = (args.length > 1) ? Long.parseLong(args[1]) : 5000;
+
+        double[] confidence = new double[12];
+        boolean[] occupied = new boolean[12];
+        for (int lane = 0; lane < confidence.length; lane++) {
+            confidence[lane] = 0.05 + 0.02 * lane;
+            occupied[lane] = true;
+        }
+
+        ExactOddsSolver solver = new ExactOddsSolver();
+        for (int i = 0; i < 5; i++) solver.solve(confidence, occupied, finishDistance); // warm up
+        long start = System.nanoTime();
+        ExactOdds exact = solver.solve(confidence, occupied, finishDistance);
+        double exactMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+        OddsCalculator sampler = new OddsCalculator(ForkJoinPool.commonPool(), new RaceRandom(1), budget, Integer.MAX_VALUE / 2);
+        start = System.nanoTime();
+        OddsEstimate sampled = sampler.calculate(confidence, occupied, finishDistance);
+        double sampledMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+        System.out.printf("Field of 12, finish distance %d%n", finishDistance);
+        System.out.printf("%-5s %-10s %-10s %-10s %-18s %s%n", "Lane", "Conf", "Exact", "Place(3)", "Sampled", "Within 95%");
+        double worst = 0.0;
+        for (int lane = 0; lane < confidence.length; lane++) {
+            double difference = Math.abs(exact.getWinProbability(lane) - sampled.getWinProbability(lane));
+            worst = Math.max(worst, difference);
+            System.out.printf("%-5d %-10.2f %-10.5f %-10.5f %.5f +- %.5f  %s%n", lane + 1, confidence[lane],
+                exact.getWinProbability(lane), exact.getPlaceProbability(lane, 3), sampled.getWinProbability(lane),
+                sampled.getMarginOfError(lane), difference <= sampled.getMarginOfError(lane) ? "yes" : "no");
+        }
+        System.out.printf("No winner: exact %.6f, sampled %.6f%n", exact.getNoWinnerProbability(), sampled.getNoWinnerProbability());
+        System.out.printf("Exact solver:  %.2f ms (unresolved mass %.1e)%n", exactMillis, exact.getUnresolvedProbability());
+        System.out.printf("Monte Carlo:   %.2f ms for %d races, largest difference %.5f%n", sampledMillis, sampled.getSimulations(), worst);
+    }
+}
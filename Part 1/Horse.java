@@ -21,9 +21,8 @@ public class Horse {
     private double winRate;                // total wins divided by the total races
     private double winnings;               // the money won by the user if the horse wins (initially 0)
     private boolean betPlacedOn;           // if the user has put a bet on a horse then true
-
-    // Fields of Class Horse
-    static int horseCounter;           // Static counter to track the number of horses created
+    private RaceState raceState;           // the race this horse is running in, null when not racing
+    private int raceLane;                  // the 0-based lane of the horse in raceState
 
     /**
      * Constructor for objects of class Horse.
@@ -55,7 +54,7 @@ public class Horse {
         if (this.totalRaces == 0) {
             this.winRate = 0;
         } else {
-            this.winRate = totalWins / totalRaces;
+            this.winRate = winRate;
         }
         this.laneNumber = laneNumber;
 
@@ -64,8 +63,6 @@ public class Horse {
 
         this.betPlacedOn = false; 
         this.winnings = 0.0;
-        
-        horseCounter++;
     }
 
     /**
@@ -107,16 +104,50 @@ public class Horse {
         this.horseFallen = false;
         this.betPlacedOn = false; 
         this.winnings = 0.0;
-        horseCounter++; 
     }
 
     /**
      * Marks the horse as fallen.
      */
     public void fall() {
+        if (raceState != null) {
+            raceState.fall(raceLane);
+            return;
+        }
         this.horseFallen = true;
     }
 
+    /**
+     * Attaches the horse to a lane of a running race.
+     * While attached the horse is a view over the race state: its position,
+     * fallen flag and confidence are read from and written to that lane.
+     *
+     * @param state the state of the race the horse is running in
+     * @param lane the 0-based lane index of the horse in the race state
+     */
+    public void attachTo(RaceState state, int lane) {
+        detach();
+        state.putHorse(lane, this.horseConfidence);
+        state.setDistance(lane, this.horseDistance);
+        if (this.horseFallen) {
+            state.fall(lane);
+        }
+        this.raceState = state;
+        this.raceLane = lane;
+    }
+
+    /**
+     * Detaches the horse from the race it is running in,
+     * keeping its final position, fallen flag and confidence.
+     */
+    public void detach() {
+        if (raceState == null) return;
+        this.horseDistance = raceState.getDistance(raceLane);
+        this.horseFallen = raceState.hasFallen(raceLane);
+        this.horseConfidence = raceState.getConfidence(raceLane);
+        this.raceState = null;
+    }
+
     /**
      * Returns the lane number assigned to the horse.
      *
@@ -141,6 +172,7 @@ public class Horse {
      * @return the confidence rating of the horse (0.0 to 1.0).
      */
     public double getConfidence() {
+        if (raceState != null) return raceState.getConfidence(raceLane);
         return this.horseConfidence;
     }
 
@@ -150,6 +182,7 @@ public class Horse {
      * @return the distance traveled by the horse.
      */
     public int getDistanceTravelled() {
+        if (raceState != null) return raceState.getDistance(raceLane);
         return this.horseDistance;
     }
 
@@ -178,6 +211,10 @@ public class Horse {
     public void goBackToStart() {
         this.horseDistance = 0;
         this.horseFallen = false;
+        if (raceState != null) {
+            raceState.setDistance(raceLane, 0);
+            raceState.standUp(raceLane);
+        }
     }
 
     /**
@@ -187,6 +224,7 @@ public class Horse {
      * @return true if the horse is in a fallen state, false if the horse remains upright
      */
     public boolean hasFallen() {
+        if (raceState != null) return raceState.hasFallen(raceLane);
         return this.horseFallen;
     }
 
@@ -194,9 +232,31 @@ public class Horse {
      * Advances the horse's position by one unit along the race track.
      */
     public void moveForward() {
+        if (raceState != null) {
+            raceState.setDistance(raceLane, raceState.getDistance(raceLane) + 1);
+            return;
+        }
         this.horseDistance += 1;
     }
 
+    /**
+     * Places the horse at a distance along the race track.
+     * Used to move a horse that is not attached to a race state.
+     *
+     * @param distance the distance travelled by the horse (must be non-negative)
+     * @throws IllegalArgumentException if negative value is provided
+     */
+    public void setDistanceTravelled(int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Distance cannot be negative");
+        }
+        if (raceState != null) {
+            raceState.setDistance(raceLane, distance);
+            return;
+        }
+        this.horseDistance = distance;
+    }
+
     /**
      * Updates the horse's confidence rating with value
      * Confidence values are constrained to the range [0.0, 1.0] and rounded to 2 decimal places
@@ -213,6 +273,9 @@ public class Horse {
             // Round to 2 decimal places for consistency in simulation calculations
             this.horseConfidence = Math.round(newConfidence * 100.0) / 100.0;
         }
+        if (raceState != null) {
+            raceState.setConfidence(raceLane, this.horseConfidence);
+        }
     }
 
     /**
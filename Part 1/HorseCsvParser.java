@@ -0,0 +1,466 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Streaming parser for lines of horse details, as saved in the CSV file.
+ * Lines are read into one reused char buffer and split by recording where each
+ * field starts and ends, so a line costs no String[] and no substrings. Numbers
+ * are parsed straight from the buffer; only the fields asked for as strings,
+ * such as the name, become strings. Reading a file is a forward walk with next(),
+ * holding one buffer of the file at a time however long it is.
+ * The fields of a line are only valid until the next call to next() or parse().
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class HorseCsvParser implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;       // Chars read from the file at a time
+    private static final int MAX_FAST_DIGITS = 15;        // Digits a double holds exactly
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader reader;                          // Source of the lines, null when lines are given by parse
+    private char[] buffer;                                // Chars read but not yet passed over
+    private int position;                                 // Start of the next line in the buffer
+    private int limit;                                    // End of the chars in the buffer
+    private boolean endOfInput;                           // Whether the reader has no more chars
+    private int[] fieldStart = new int[8];                // Start of every field of the line
+    private int[] fieldEnd = new int[8];                  // End of every field of the line
+    private int fieldCount;                               // Fields of the line, 0 before the first line
+    private long lineNumber;                              // 1-based number of the line, in the file
+
+    /**
+     * Constructor for a parser of lines handed to parse, one at a time.
+     */
+    public HorseCsvParser() {
+        this.reader = null;
+        this.buffer = new char[128];
+        this.endOfInput = true;
+    }
+
+    /**
+     * Constructor for a parser of every line of a reader.
+     *
+     * @param reader the reader to parse, closed with the parser
+     */
+    public HorseCsvParser(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Opens a parser over a UTF-8 file.
+     *
+     * @param file the file to parse
+     * @return the parser, before its first line
+     * @throws IOException if the file cannot be opened
+     */
+    public static HorseCsvParser open(Path file) throws IOException {
+        return new HorseCsvParser(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Moves to the next line of the reader.
+     *
+     * @return true if there was a line, false at the end of the input
+     * @throws IOException if the reader fails
+     */
+    public boolean next() throws IOException {
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] == '\n') {
+                    split(position, scan);
+                    position = scan + 1;
+                    return true;
+                }
+            }
+            if (endOfInput) break;
+            scan -= position;
+            fill();
+            scan += position;
+        }
+        if (position == limit) {
+            fieldCount = 0;
+            return false;
+        }
+        split(position, limit);      // last line has no line ending
+        position = limit;
+        return true;
+    }
+
+    /**
+     * Parses one line, such as a line of the HorseRegistry, copying it into the buffer.
+     *
+     * @param line the line to parse, without a line ending
+     * @return this parser, for reading the fields
+     */
+    public HorseCsvParser parse(CharSequence line) {
+        int length = line.length();
+        if (buffer.length < length) buffer = new char[Math.max(length, buffer.length * 2)];
+        if (line instanceof String) {
+            ((String) line).getChars(0, length, buffer, 0);
+        } else {
+            for (int i = 0; i < length; i++) buffer[i] = line.charAt(i);
+        }
+        position = limit = 0;
+        split(0, length);
+        return this;
+    }
+
+    /**
+     * Moves the unread chars to the front of the buffer, growing it for a line longer
+     * than the buffer, and reads more after them.
+     *
+     * @throws IOException if the reader fails
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, position, grown, 0, unread);
+            buffer = grown;
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Records where each field of a line starts and ends.
+     * A carriage return before the line ending is not part of the last field.
+     *
+     * @param start start of the line in the buffer
+     * @param end end of the line in the buffer
+     */
+    private void split(int start, int end) {
+        if (end > start && buffer[end-1] == '\r') end--;
+        lineNumber++;
+        fieldCount = 0;
+        int from = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer[i] == ',') {
+                if (fieldCount == fieldStart.length) {
+                    fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+                    fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+                }
+                fieldStart[fieldCount] = from;
+                fieldEnd[fieldCount] = i;
+                fieldCount++;
+                from = i + 1;
+            }
+        }
+    }
+
+    /** @return the number of fields of the line, empty ones included */
+    public int getFieldCount() { return fieldCount; }
+
+    /** @return the 1-based number of the line, counting every line parsed */
+    public long getLineNumber() { return lineNumber; }
+
+    /**
+     * Gets a field as a string, exactly as written.
+     *
+     * @param field the 0-based field
+     * @return the field
+     */
+    public String getString(int field) {
+        check(field);
+        return new String(buffer, fieldStart[field], fieldEnd[field] - fieldStart[field]);
+    }
+
+    /**
+     * Gets the first char of a field.
+     *
+     * @param field the 0-based field
+     * @return the char
+     * @throws IllegalArgumentException if the field is empty
+     */
+    public char getChar(int field) {
+        check(field);
+        if (fieldEnd[field] == fieldStart[field]) {
+            throw new IllegalArgumentException("Field "+field+" of line "+lineNumber+" is empty");
+        }
+        return buffer[fieldStart[field]];
+    }
+
+    /**
+     * Parses a field as an int, ignoring spaces around it.
+     *
+     * @param field the 0-based field
+     * @return the int
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getInt(int field) {
+        check(field);
+        int start = skipSpaces(fieldStart[field], fieldEnd[field]);
+        int end = trimSpaces(start, fieldEnd[field]);
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) i++;
+        if (i == end) throw badNumber(field);
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) throw badNumber(field);
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) throw badNumber(field);
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw badNumber(field);
+        return (int) value;
+    }
+
+    /**
+     * Parses a field as a double, ignoring spaces around it.
+     * Plain decimals of up to 15 digits, as the file is written, are read directly
+     * and rounded exactly as Double.parseDouble rounds them; anything else, such as
+     * an exponent, goes to Double.parseDouble.
+     *
+     * @param field the 0-based field
+     * @return the double
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDouble(int field) {
+        check(field);
+        int start = skipSpaces(fieldStart[field], fieldEnd[field]);
+        int end = trimSpaces(start, fieldEnd[field]);
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) i++;
+        long mantissa = 0;
+        int digits = 0;             // significant digits
+        int decimals = -1;          // digits after the point, -1 before it
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                sawDigit = true;
+                if (digits > 0 || c != '0') digits++;
+                mantissa = mantissa * 10 + (c - '0');
+                if (decimals >= 0) decimals++;
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || !sawDigit || digits > MAX_FAST_DIGITS || decimals >= POWERS_OF_TEN.length) {
+            try {
+                return Double.parseDouble(new String(buffer, start, end - start));
+            } catch (NumberFormatException e) {
+                throw badNumber(field);
+            }
+        }
+        double value = decimals <= 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Compares a field with a string, ignoring case.
+     *
+     * @param field the 0-based field
+     * @param text the string to compare with
+     * @return true if they are equal ignoring case
+     */
+    public boolean fieldEqualsIgnoreCase(int field, String text) {
+        check(field);
+        return fieldEnd[field] - fieldStart[field] == text.length() && regionMatchesIgnoreCase(field, text);
+    }
+
+    /**
+     * Checks whether a field starts with a string, ignoring case.
+     *
+     * @param field the 0-based field
+     * @param prefix the string the field may start with
+     * @return true if the field starts with it ignoring case
+     */
+    public boolean fieldStartsWithIgnoreCase(int field, String prefix) {
+        check(field);
+        return fieldEnd[field] - fieldStart[field] >= prefix.length() && regionMatchesIgnoreCase(field, prefix);
+    }
+
+    /**
+     * Compares the start of a field with a string, ignoring case, as String.equalsIgnoreCase does.
+     *
+     * @param field the 0-based field, at least as long as the string
+     * @param text the string to compare with
+     * @return true if they match ignoring case
+     */
+    private boolean regionMatchesIgnoreCase(int field, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char a = buffer[fieldStart[field] + i];
+            char b = text.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)
+                    && Character.toUpperCase(a) != Character.toUpperCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets every field of the line as strings, as line.split(",", -1) would.
+     *
+     * @return the fields
+     */
+    public String[] toArray() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) fields[i] = getString(i);
+        return fields;
+    }
+
+    /**
+     * Creates a horse from a line of the horse details file, parsing its numbers in place.
+     *
+     * @param lane the lane of the horse
+     * @return the horse
+     * @throws IllegalArgumentException if the line does not have 6 fields or a number is malformed
+     */
+    public Horse toHorse(int lane) {
+        if (fieldCount != 6) {
+            throw new IllegalArgumentException(String.format("Invalid data format. Expected %d columns, found %d", 6, fieldCount));
+        }
+        return new Horse(getString(0), getDouble(1), getChar(2), getInt(3), getInt(4), getDouble(5), lane);
+    }
+
+    /**
+     * Closes the reader, if the parser has one.
+     *
+     * @throws IOException if the reader cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (reader != null) reader.close();
+    }
+
+    /**
+     * Checks a field is on the line.
+     *
+     * @param field the 0-based field
+     */
+    private void check(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Line "+lineNumber+" has "+fieldCount+" fields, no field "+field);
+        }
+    }
+
+    /** @return the first index from start that is not a space, or end */
+    private int skipSpaces(int start, int end) {
+        while (start < end && buffer[start] == ' ') start++;
+        return start;
+    }
+
+    /** @return the index after the last char before end that is not a space */
+    private int trimSpaces(int start, int end) {
+        while (end > start && buffer[end-1] == ' ') end--;
+        return end;
+    }
+
+    /**
+     * Creates the error for a field that is not a number.
+     *
+     * @param field the 0-based field
+     * @return the error, naming the line and the field
+     */
+    private NumberFormatException badNumber(int field) {
+        return new NumberFormatException("For input string: \""+getString(field)+"\" (line "+lineNumber+", field "+field+")");
+    }
+
+    /**
+     * Benchmarks loading a large stable with the parser against split and the
+     * string constructor of Horse.
+     * Usage: java HorseCsvParser [horses] [file]
+     *
+     * @param args number of horses, default 1,000,000, and a scratch file to write them to
+     * @throws IOException if the scratch file cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int horses = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path file = args.length > 1 ? Path.of(args[1]) : Files.createTempFile("stable", ".csv");
+        SplittableRandom random = new SplittableRandom(7);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Name,Confidence,Character,Total Wins,Total Races,Win Rate");
+            writer.newLine();
+            for (int i = 0; i < horses; i++) {
+                int races = random.nextInt(200);
+                int wins = races == 0 ? 0 : random.nextInt(races + 1);
+                writer.write(HorseDetailsFileHandling.formatHorse("Horse " + i, 0.1 + random.nextDouble() * 0.9,
+                    (char) ('A' + random.nextInt(26)), wins, races, races == 0 ? 0.0 : (double) wins / races));
+                writer.newLine();
+            }
+        }
+        System.out.printf("%,d horses, %,d bytes%n", horses, Files.size(file));
+
+        for (int round = 0; round < 3; round++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            List<Horse> split = new ArrayList<>(horses);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                while ((line = reader.readLine()) != null) {
+                    String[] row = line.split(",", -1);
+                    split.add(new Horse(row[0], row[1], row[2], row[3], row[4], row[5], 1));
+                }
+            }
+            long splitNanos = System.nanoTime() - start;
+            long splitBytes = allocatedBytes() - bytes;
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            List<Horse> parsed = new ArrayList<>(horses);
+            try (HorseCsvParser parser = open(file)) {
+                parser.next();
+                while (parser.next()) parsed.add(parser.toHorse(1));
+            }
+            long parseNanos = System.nanoTime() - start;
+            long parseBytes = allocatedBytes() - bytes;
+
+            System.out.printf("split:  %5d ms, %,6d MB allocated%n", splitNanos / 1_000_000, splitBytes >> 20);
+            System.out.printf("parser: %5d ms, %,6d MB allocated%n", parseNanos / 1_000_000, parseBytes >> 20);
+            if (round == 0) {
+                for (int i = 0; i < horses; i++) {
+                    Horse a = split.get(i);
+                    Horse b = parsed.get(i);
+                    if (!a.getName().equals(b.getName()) || a.getConfidence() != b.getConfidence() || a.getSymbol() != b.getSymbol()
+                            || a.getTotalWins() != b.getTotalWins() || a.getTotalRaces() != b.getTotalRaces() || a.getWinRate() != b.getWinRate()) {
+                        System.out.println("Horse "+i+" differs: "+a.getName()+" / "+b.getName());
+                        return;
+                    }
+                }
+                System.out.println("Both read the same horses");
+            }
+        }
+        if (args.length < 2) Files.delete(file);
+    }
+
+    /** @return bytes allocated by this thread so far, or 0 where the JVM does not count them */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
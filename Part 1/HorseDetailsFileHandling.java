@@ -1,23 +1,34 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Handles storage and retrieval of horse details in CSV format.
  * Provides methods for saving, counting, retrieving, and displaying horse data
  * with comprehensive error handling and data validation.
+ * The file is read once into a HorseRegistry, which answers counts, rows and
+ * name lookups from memory and writes every change through to the file.
+ * Stats after a race go through a HorseStatsWriter, which rewrites the file once
+ * per batch of races rather than once per horse.
+ * Lines are split by a HorseCsvParser, which reads fields and numbers in place
+ * instead of splitting every line into new strings. The saved horses are shown
+ * a page at a time by a HorseTablePager, which reads only the page it shows.
+ * Ratings learnt from finishing orders are kept by a HorseRatings in a file next
+ * to this one, loaded once and shared by every race that rates its results.
  * @author Peter Bojthe
  * @version 16/04/25
  */
 public class HorseDetailsFileHandling {
     private static final String FILE_NAME = "SavingHorseDetails.csv";
     private static final int EXPECTED_COLUMNS = 6;
+    private static final int PAGE_SIZE = 20;               // Saved horses shown at a time
+    private static final HorseRegistry REGISTRY = new HorseRegistry(new File(FILE_NAME));
+    private static volatile HorseStatsWriter stats = new HorseStatsWriter(REGISTRY, 1, 0);   // Flushes after every race
+    private static final ThreadLocal<HorseCsvParser> PARSER = ThreadLocal.withInitial(HorseCsvParser::new);   // Splits registry lines
+    private static HorseRatings ratings;                   // Ratings of every horse, loaded on first use
     
     /**
      * Saves horse details to the CSV file in append mode after validating parameters
@@ -49,67 +60,173 @@ public class HorseDetailsFileHandling {
         }
 
         // Check if horse name already exists
-        File file = new File(FILE_NAME);
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length > 0 && parts[0].equalsIgnoreCase(name)) {
-                        return; // Horse already exists - silent return
-                    }
-                }
-            }
+        if (REGISTRY.rowOf(name) >= 0) {
+            return; // Horse already exists - silent return
         }
 
         // Save the new horse
-        try (PrintWriter horseFile = new PrintWriter(new FileWriter(file, true))) {
-            horseFile.printf("%s,%.2f,%c,%d,%d,%.2f%n",name, confidence, character, win, total, winRate);
-        }
+        REGISTRY.append(String.format("%s,%.2f,%c,%d,%d,%.2f", name, confidence, character, win, total, winRate));
     }
 
     /**
      * Update the saved horse details after every race
      * Finds horse based on name (name is unique) and updates all of its details
+     * The file is replaced in one atomic step, so it is never left half written
      * @param horse The horse which will be updated in the file... IF it is in the file already.
+     * @throws IOException If the file is missing or cannot be written, it is then unchanged
      */
     public static void updateHorseInFile(Horse horse) throws IOException {
-        List<String> lines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line;
-            // Read header first
-            String header = reader.readLine();
-            if (header != null) {
-                lines.add(header);
-            }
-            
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6 && parts[0].equalsIgnoreCase(horse.getName())) {
-                    // Found the horse - replace with updated details
-                    String updatedLine = String.format("%s,%.2f,%s,%d,%d,%.2f",
-                        horse.getName(),
-                        horse.getConfidence(),
-                        horse.getSymbol(),
-                        horse.getTotalWins(),
-                        horse.getTotalRaces(),
-                        horse.getWinRate());
-                    lines.add(updatedLine);
-                } else {
-                    lines.add(line);
-                }
+        if (!new File(FILE_NAME).exists()) {
+            throw new FileNotFoundException(FILE_NAME + " (No such file or directory)");
+        }
+        int row = savedRowOf(horse);
+        if (row < 1) {
+            return; // Header or not saved - nothing to update
+        }
+
+        // Found the horse - replace with updated details
+        REGISTRY.replace(row, formatHorse(horse));
+    }
+
+    /**
+     * Records the stats of every saved horse after a race. They are seen by reads
+     * at once and written to the file together, when the flush policy says so.
+     * Horses that are not saved are skipped.
+     *
+     * @param horses the horses in the race, null entries are empty lanes
+     * @throws IOException If the file cannot be read, or a flush cannot write it; the stats then stay recorded
+     */
+    public static void recordRaceResults(List<Horse> horses) throws IOException {
+        HorseStatsWriter writer = stats;
+        for (Horse horse : horses) {
+            if (horse == null) continue;
+            int row = savedRowOf(horse);
+            if (row >= 1) {
+                writer.record(row, formatHorse(horse));
             }
         }
-        
-        // Write all lines back to the file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))) {
-            for (String fileLine : lines) {
-                writer.write(fileLine);
-                writer.newLine();
+        writer.endRace();
+    }
+
+    /**
+     * Adds the outcome of a race to the stats of every saved horse in it: one more
+     * race for each, and one more win for each winner. The race is added to the stats
+     * as recorded rather than to those of the horse, so races run at the same time on
+     * copies of one horse all count. Confidence is left as saved.
+     * Horses that are not saved are skipped.
+     *
+     * @param horses the horses in the race in lane order, null entries are empty lanes
+     * @param result the outcome of the race
+     * @throws IOException If the file cannot be read, or a flush cannot write it; the stats then stay recorded
+     */
+    public static void recordRaceResults(List<Horse> horses, RaceResult result) throws IOException {
+        HorseStatsWriter writer = stats;
+        HorseCsvParser parser = PARSER.get();
+        for (int lane = 0; lane < horses.size(); lane++) {
+            Horse horse = horses.get(lane);
+            if (horse == null) continue;
+            synchronized (REGISTRY) {   // No other race may record the horse between its read and its write
+                int row = savedRowOf(horse);
+                if (row < 1) continue;
+                parser.parse(REGISTRY.getLine(row));
+                int wins = parser.getInt(3) + (result.isWinner(lane) ? 1 : 0);
+                int races = parser.getInt(4) + 1;
+                writer.record(row, formatHorse(parser.getString(0), parser.getDouble(1), parser.getChar(2),
+                    wins, races, (double) wins / races));
             }
-        } catch (IOException e) {
-            System.err.println("Error writing to file: " + e.getMessage());
         }
+        writer.endRace();
+    }
+
+    /**
+     * Writes every recorded stat still waiting for its flush, such as before the program ends.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public static void flushRaceResults() throws IOException {
+        stats.flush();
+    }
+
+    /**
+     * Changes how often recorded stats are written, after flushing the ones waiting.
+     *
+     * @param racesPerFlush write after this many races, 0 to write on time only
+     * @param flushMillis also write this often in milliseconds, 0 to write on races only
+     * @return the writer now in use, for its report
+     * @throws IOException If the waiting stats cannot be written
+     * @throws IllegalArgumentException If a value is negative or both are 0
+     */
+    public static synchronized HorseStatsWriter setFlushPolicy(int racesPerFlush, long flushMillis) throws IOException {
+        HorseStatsWriter next = new HorseStatsWriter(REGISTRY, racesPerFlush, flushMillis);
+        HorseStatsWriter previous = stats;
+        stats = next;
+        previous.close();
+        return next;
+    }
+
+    /**
+     * Writes lines of horse details over the saved horses they belong to, in one rewrite.
+     * A line only replaces a saved line with fewer races run, so stats that are
+     * already newer, or the same, are left alone. Horses that are not saved are skipped.
+     *
+     * @param lines lines of horse details, as formatted for the file
+     * @return number of saved horses changed
+     * @throws IOException If the file cannot be read or written
+     */
+    public static int foldHorseLines(Collection<String> lines) throws IOException {
+        HorseCsvParser parser = PARSER.get();
+        int changed = 0;
+        for (String line : lines) {
+            int races = parser.parse(line).getInt(4);
+            int row = REGISTRY.rowOf(parser.getString(0));
+            if (row < 1) continue;
+            parser.parse(REGISTRY.getLine(row));
+            if (parser.getFieldCount() != EXPECTED_COLUMNS || parser.getInt(4) >= races) continue;
+            REGISTRY.stage(row, line);
+            changed++;
+        }
+        REGISTRY.flush();
+        return changed;
+    }
+
+    /**
+     * Finds the row of a saved horse whose stats can be updated.
+     *
+     * @param horse the horse to find
+     * @return the 1-based row, or -1 if it is not saved or its row is malformed
+     * @throws IOException If the file cannot be read
+     */
+    private static int savedRowOf(Horse horse) throws IOException {
+        int row = REGISTRY.rowOf(horse.getName());
+        if (row < 1 || PARSER.get().parse(REGISTRY.getLine(row)).getFieldCount() < EXPECTED_COLUMNS) {
+            return -1;
+        }
+        return row;
+    }
+
+    /**
+     * Formats the details of a horse as a line of the file.
+     *
+     * @param horse the horse to format
+     * @return the line, without a line ending
+     */
+    private static String formatHorse(Horse horse) {
+        return formatHorse(horse.getName(), horse.getConfidence(), horse.getSymbol(), horse.getTotalWins(), horse.getTotalRaces(), horse.getWinRate());
+    }
+
+    /**
+     * Formats horse details as a line of the file.
+     *
+     * @param name The name of the horse
+     * @param confidence The confidence score
+     * @param symbol The character symbol representing the horse
+     * @param wins Number of wins
+     * @param races Total races
+     * @param winRate Win percentage
+     * @return the line, without a line ending
+     */
+    static String formatHorse(String name, double confidence, char symbol, int wins, int races, double winRate) {
+        return String.format("%s,%.2f,%s,%d,%d,%.2f", name, confidence, symbol, wins, races, winRate);
     }
 
     /**
@@ -119,18 +236,7 @@ public class HorseDetailsFileHandling {
      * @throws IOException If an I/O error occurs while reading
      */
     public static int countFileLines() throws IOException {
-        File file = new File(FILE_NAME);
-        if (!file.exists() || file.length() == 0) {
-            return 0;
-        }
-
-        int lineNumber = -1; // Start at -1 to ignore initiall line. 
-        try (BufferedReader horseFile = new BufferedReader(new FileReader(file))) {
-            while (horseFile.readLine() != null) {
-                lineNumber++;
-            }
-        }
-        return lineNumber;
+        return Math.max(0, REGISTRY.lineCount() - 1); // Ignore the header line
     }
 
     /**
@@ -148,21 +254,51 @@ public class HorseDetailsFileHandling {
             throw new IllegalArgumentException("Line number must be positive");
         }
 
+        String line = REGISTRY.getLine(lineNumber);
+        return line == null ? null : validateDataRow(PARSER.get().parse(line).toArray());
+    }
+
+    /**
+     * Creates a horse from a specific line in the file, parsing its numbers in place.
+     *
+     * @param lineNumber The 1-based line number to read
+     * @param lane The lane of the horse
+     * @return The horse, or null if line doesn't exist
+     * @throws IOException If an I/O error occurs
+     * @throws IllegalArgumentException If lineNumber is invalid or the line is malformed
+     */
+    public static Horse loadHorse(int lineNumber, int lane) throws IOException {
+        if (lineNumber < 1) {
+            throw new IllegalArgumentException("Line number must be positive");
+        }
+
+        String line = REGISTRY.getLine(lineNumber);
+        return line == null ? null : PARSER.get().parse(line).toHorse(lane);
+    }
+
+    /**
+     * Reads every saved horse from the file, one line at a time, parsing numbers
+     * in place. The registry is not loaded, so a stable of any size is read with
+     * one buffer and the horses themselves. Stats recorded but not yet flushed
+     * are not seen.
+     *
+     * @return Every saved horse, in lane 1, empty if the file doesn't exist
+     * @throws IOException If an I/O error occurs while reading
+     * @throws IllegalArgumentException If a row is malformed
+     */
+    public static List<Horse> loadHorses() throws IOException {
+        List<Horse> horses = new ArrayList<>();
         File file = new File(FILE_NAME);
         if (!file.exists()) {
-            return null;
+            return horses;
         }
-
-        try (BufferedReader horseFile = new BufferedReader(new FileReader(file))) {
-            String line;
-            int currentLine = 0;
-            while ((line = horseFile.readLine()) != null) {
-                if (currentLine++ == lineNumber) {
-                    return validateDataRow(line.split(",", -1));
-                }
+        try (HorseCsvParser parser = HorseCsvParser.open(file.toPath())) {
+            parser.next(); // Skip the header line
+            while (parser.next()) {
+                horses.add(parser.toHorse(1));
             }
         }
-        return null;
+        return horses;
     }
 
     /**
@@ -172,113 +308,67 @@ public class HorseDetailsFileHandling {
      * @throws IOException If an I/O error occurs while reading
      */
     public static List<String[]> readCSV() throws IOException {
-        List<String[]> data = new ArrayList<>();
-        File file = new File(FILE_NAME);
-        
-        if (!file.exists() || file.length() == 0) {
-            return data;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] row = line.split(",", -1); // Keep empty values
-                data.add(validateDataRow(row));
-            }
+        List<String> lines = REGISTRY.getLines();
+        List<String[]> data = new ArrayList<>(lines.size());
+        HorseCsvParser parser = PARSER.get();
+        for (String line : lines) {
+            data.add(validateDataRow(parser.parse(line).toArray())); // Keeps empty values
         }
         return data;
     }
 
     /**
-     * Displays all horse details in a formatted table with borders.
+     * Displays the first page of horse details in a formatted table with borders.
      * provides clear error messages if error happens
      */
     public static void printFormattedTable() {
         try {
-            List<String[]> data = readCSV();
-            
-            if (data.isEmpty()) {
-                System.out.println("No horse data available.");
-                return;
-            }
-
-            // Verify all rows have expected columns
-            for (String[] row : data) {
-                if (row.length != EXPECTED_COLUMNS) {
-                    System.err.println("Error: Malformed data found. Expected " + 
-                                     EXPECTED_COLUMNS + " columns but found " + row.length);
-                    return;
-                }
-            }
-
-            // Calculate column widths
-            int[] colWidths = new int[EXPECTED_COLUMNS];
-            for (String[] row : data) {
-                for (int i = 0; i < EXPECTED_COLUMNS; i++) {
-                    colWidths[i] = Math.max(colWidths[i], row[i].length());
-                }
-            }
-            
-            // Print table
-            printSeparatorLine(colWidths);
-            printTableRow(data.get(0), colWidths); // Header row
-            printSeparatorLine(colWidths);
-            
-            for (int i = 1; i < data.size(); i++) {
-                printTableRow(data.get(i), colWidths);
-                printSeparatorLine(colWidths);
-            }
+            openTable().printPage(0);
         } catch (IOException e) {
             System.err.println("Error reading horse data: " + e.getMessage());
         }
     }
 
     /**
-     * Validates a data row to ensure it has the correct number of columns.
+     * Opens a paged table over the file, after writing any recorded stats
+     * so the table shows them.
      *
-     * @param row The data row to validate
-     * @return The validated row array
-     * @throws IllegalArgumentException If row has incorrect number of columns
+     * @return the table, one page held at a time
+     * @throws IOException If the recorded stats cannot be written
      */
-    private static String[] validateDataRow(String[] row) {
-        if (row.length != EXPECTED_COLUMNS) {
-            throw new IllegalArgumentException(
-                String.format("Invalid data format. Expected %d columns, found %d", 
-                EXPECTED_COLUMNS, row.length));
-        }
-        return row;
+    public static HorseTablePager openTable() throws IOException {
+        flushRaceResults();
+        return new HorseTablePager(new File(FILE_NAME).toPath(), PAGE_SIZE);
     }
 
     /**
-     * Prints a formatted table row with proper alignment.
+     * Gets the ratings of every horse, reading them from the file next to the horse
+     * details file the first time they are asked for.
      *
-     * @param row The data row to print
-     * @param colWidths Array of column widths
+     * @return the ratings shared by every race
+     * @throws IOException If the ratings file cannot be read
      */
-    private static void printTableRow(String[] row, int[] colWidths) {
-        System.out.print("|");
-        for (int i = 0; i < row.length; i++) {
-            String value = row[i].trim();
-            if (value.matches("[A-Za-z0-9]+")) { // Alphanumeric value
-                System.out.printf(" %" + colWidths[i] + "s |", value);
-            } else { // String value
-                System.out.printf(" %-" + colWidths[i] + "s |", value);
-            }
+    public static synchronized HorseRatings getRatings() throws IOException {
+        if (ratings == null) {
+            ratings = HorseRatings.load(new File(FILE_NAME).toPath().resolveSibling(HorseRatings.FILE_NAME));
         }
-        System.out.println();
+        return ratings;
     }
 
     /**
-     * Prints a separator line for the table.
+     * Validates a data row to ensure it has the correct number of columns.
      *
-     * @param colWidths Array of column widths
+     * @param row The data row to validate
+     * @return The validated row array
+     * @throws IllegalArgumentException If row has incorrect number of columns
      */
-    private static void printSeparatorLine(int[] colWidths) {
-        System.out.print("+");
-        for (int width : colWidths) {
-            System.out.print("-".repeat(width + 2) + "+");
+    private static String[] validateDataRow(String[] row) {
+        if (row.length != EXPECTED_COLUMNS) {
+            throw new IllegalArgumentException(
+                String.format("Invalid data format. Expected %d columns, found %d", 
+                EXPECTED_COLUMNS, row.length));
         }
-        System.out.println();
+        return row;
     }
 
     /**
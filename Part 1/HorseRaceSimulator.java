@@ -1,15 +1,31 @@
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * The main class and main method to run the program.
  * Start a race with given distance passed to Race class
+ * An optional master seed can be passed as the first argument to replay a simulation.
+ * Every race is journalled, and the journal is folded into the saved horses
+ * in the background and once more before the program ends.
+ * Every race also updates the horse ratings, which are saved when the program ends.
  * 
  * @author Peter Bojthe
  * @version 16/04/25
  */
 public class HorseRaceSimulator {
     public static void main(String[] args) throws IOException {
-        Race race = new Race();
-        race.startRace();
+        Race race = (args.length > 0) ? new Race(new RaceRandom(Long.parseLong(args[0]))) : new Race();
+        Path journalPath = Paths.get(RaceJournal.FILE_NAME);
+        try (JournalCompactor compactor = new JournalCompactor(journalPath, 5_000)) {
+            compactor.compact();   // catch up with races journalled before a crash
+            try (RaceJournal journal = new RaceJournal(journalPath, true)) {
+                race.setJournal(journal);
+                HorseRatings ratings = HorseDetailsFileHandling.getRatings();
+                race.setRatings(ratings);
+                race.startRace();
+                ratings.save();
+            }
+        }
     }
 }
\ No newline at end of file
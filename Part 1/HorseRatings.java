@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ratings of every horse, learnt from the order horses finish in.
+ * Each horse has a rating (the mean of a normal belief about its strength) and a
+ * deviation (how unsure that belief is), as in Glicko. After a race every horse in
+ * the field is updated at once with the Plackett-Luce update of Weng and Lin (2011):
+ * the finish is read as the winner being picked from the whole field, the second from
+ * the rest and so on, each with a chance of exp(rating / c) over the sum for the horses
+ * left, where c grows with the deviations of the field. A horse gains the more the
+ * stronger the horses it beat, loses the more the weaker the horses that beat it, and
+ * moves less as its deviation shrinks. Only horses that reached the line are placed,
+ * sharing first place if they got there together, and the rest come after them in no
+ * order: behind the winner, slow horses still standing would otherwise beat fast ones
+ * that fell, and the ratings would price staying up rather than winning. A race with no
+ * winner changes no rating. With suffix sums of the chances and prefix sums over the
+ * places, a race updates in O(field size) over plain arrays, so batch simulations of any
+ * speed can rate every race.
+ * The ratings are kept in a file next to the horse details file, written in one atomic step.
+ *
+ * @author Peter Bojthe
+ * @version 24/04/25
+ */
+public class HorseRatings {
+    public static final String FILE_NAME = "HorseRatings.csv";
+    public static final double START_RATING = 25.0;                     // Rating of a horse that has not raced
+    public static final double START_DEVIATION = START_RATING / 3;      // Deviation of a horse that has not raced
+    private static final double BETA = START_DEVIATION / 2;             // Spread of a horse's form from race to race
+    private static final double DYNAMICS = START_DEVIATION / 100;       // Deviation added before each race, so ratings keep moving
+    private static final double KAPPA = 0.0001;                         // Smallest share of its variance a horse keeps after a race
+
+    private final Path file;                         // Where the ratings are saved
+    private final Map<String, Integer> ids = new HashMap<>();   // Index of every rated horse by name
+    private String[] names = new String[16];         // Name of each rated horse
+    private double[] rating = new double[16];        // Rating of each horse
+    private double[] variance = new double[16];      // Squared deviation of each horse
+    private int[] races = new int[16];               // Races rated for each horse
+    private int count;                               // Horses rated
+    private long racesRated;                         // Races rated since loading
+    private boolean changed;                         // True if there are ratings not yet saved
+
+    // Scratch arrays of the race being rated, grown to the largest field
+    private int[] placed = new int[8];               // Lanes in finishing order
+    private int[] field = new int[8];                // Horse index of each placed lane
+    private double[] chance = new double[8];         // exp(rating / c) of each placed horse
+    private double[] behind = new double[8];         // Sum of the chances of each placed horse and those behind it
+
+    /**
+     * Constructor for an empty set of ratings saved to a file.
+     *
+     * @param file where the ratings are saved
+     */
+    public HorseRatings(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the ratings saved in a file, an empty set if there is no file yet.
+     *
+     * @param file the ratings file
+     * @return the ratings in the file
+     * @throws IOException if the file cannot be read
+     */
+    public static HorseRatings load(Path file) throws IOException {
+        HorseRatings ratings = new HorseRatings(file);
+        if (!Files.exists(file)) return ratings;
+        try (HorseCsvParser parser = HorseCsvParser.open(file)) {
+            parser.next(); // Skip the header line
+            while (parser.next()) {
+                if (parser.getFieldCount() < 4) continue;
+                int id = ratings.idOf(parser.getString(0));
+                ratings.rating[id] = parser.getDouble(1);
+                ratings.variance[id] = parser.getDouble(2) * parser.getDouble(2);
+                ratings.races[id] = parser.getInt(3);
+            }
+        }
+        ratings.changed = false;
+        return ratings;
+    }
+
+    /**
+     * Updates the rating of every horse in a finished race from the order they finished in.
+     *
+     * @param result the outcome of the race
+     * @param horses the horses in lane order, null entries are empty lanes
+     */
+    public synchronized void record(RaceResult result, List<Horse> horses) {
+        int[] finishOrder = result.getFinishOrder();
+        int n = finishOrder.length;
+        if (n < 2) return;
+        if (placed.length < n) grow(n);
+
+        // Horses over the line are placed first, the rest come after in no order
+        int ranked = 0;
+        for (int lane : finishOrder) if (isPlaced(result, lane)) placed[ranked++] = lane;
+        if (ranked == 0) return;
+        int p = ranked;
+        for (int lane : finishOrder) if (!isPlaced(result, lane)) placed[p++] = lane;
+
+        double cSquared = 0.0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            int id = idOf(horses.get(placed[i]).getName());
+            field[i] = id;
+            variance[id] += DYNAMICS * DYNAMICS;
+            cSquared += variance[id] + BETA * BETA;
+            best = Math.max(best, rating[id]);
+        }
+        double c = Math.sqrt(cSquared);
+        for (int i = n - 1; i >= 0; i--) {
+            chance[i] = Math.exp((rating[field[i]] - best) / c);      // scaled by exp(-best / c), which every ratio cancels
+            behind[i] = chance[i] + (i + 1 < n ? behind[i + 1] : 0.0);
+        }
+
+        // Walk the places, a place being the horses tied on it
+        double sumInverse = 0.0;          // Sum over the places so far of 1 / (chances left at the place)
+        double sumInverseSquared = 0.0;
+        for (int start = 0; start < n; ) {
+            int end = start + 1;
+            boolean unplaced = start >= ranked;
+            if (unplaced) {
+                end = n;
+            } else {
+                while (end < ranked && result.getDistance(placed[start]) == result.getDistance(placed[end])) end++;
+                double left = behind[start];
+                sumInverse += 1.0 / left;
+                sumInverseSquared += 1.0 / (left * left);
+            }
+            double share = unplaced ? 0.0 : 1.0 / (end - start);     // Unplaced horses won no place of their own
+            for (int i = start; i < end; i++) {
+                int id = field[i];
+                double v = variance[id];
+                double q = chance[i];
+                rating[id] += v / c * (share - q * sumInverse);
+                double information = Math.sqrt(v) / c * v / cSquared * (q * sumInverse - q * q * sumInverseSquared);
+                variance[id] = v * Math.max(1.0 - information, KAPPA);
+                races[id]++;
+            }
+            start = end;
+        }
+        racesRated++;
+        changed = true;
+    }
+
+    /**
+     * Checks if a horse earned a place, by reaching the finish.
+     *
+     * @param result the outcome of the race
+     * @param lane the lane of the horse
+     * @return true if the horse reached the line
+     */
+    private static boolean isPlaced(RaceResult result, int lane) {
+        return result.getDistance(lane) == result.getRaceLength();
+    }
+
+    /**
+     * Works out the chance of each horse of a field winning, from the ratings alone.
+     * Horses that have never been rated count as new horses.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     * @return the chance of the horse in each lane winning, 0 for an empty lane
+     */
+    public synchronized double[] getWinProbabilities(List<Horse> horses) {
+        double[] probability = new double[horses.size()];
+        double cSquared = 0.0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (Horse horse : horses) {
+            if (horse == null) continue;
+            Integer id = ids.get(horse.getName());
+            cSquared += (id == null ? START_DEVIATION * START_DEVIATION : variance[id]) + BETA * BETA;
+            best = Math.max(best, id == null ? START_RATING : rating[id]);
+        }
+        double c = Math.sqrt(cSquared);
+        double total = 0.0;
+        for (int lane = 0; lane < horses.size(); lane++) {
+            Horse horse = horses.get(lane);
+            if (horse == null) continue;
+            probability[lane] = Math.exp((getRating(horse.getName()) - best) / c);
+            total += probability[lane];
+        }
+        if (total > 0.0) {
+            for (int lane = 0; lane < probability.length; lane++) probability[lane] /= total;
+        }
+        return probability;
+    }
+
+    /** @return the rating of a horse, START_RATING if it has not been rated, @param name the name of the horse */
+    public synchronized double getRating(String name) {
+        Integer id = ids.get(name);
+        return id == null ? START_RATING : rating[id];
+    }
+
+    /** @return the deviation of a horse's rating, START_DEVIATION if it has not been rated, @param name the name of the horse */
+    public synchronized double getDeviation(String name) {
+        Integer id = ids.get(name);
+        return id == null ? START_DEVIATION : Math.sqrt(variance[id]);
+    }
+
+    /** @return the rating a horse is almost surely above, rating minus three deviations, @param name the name of the horse */
+    public synchronized double getConservativeRating(String name) {
+        return getRating(name) - 3 * getDeviation(name);
+    }
+
+    /** @return the number of races rated for a horse, @param name the name of the horse */
+    public synchronized int getRaces(String name) {
+        Integer id = ids.get(name);
+        return id == null ? 0 : races[id];
+    }
+
+    /** @return the number of horses rated */
+    public synchronized int size() { return count; }
+
+    /** @return the number of races rated since the ratings were loaded */
+    public synchronized long getRacesRated() { return racesRated; }
+
+    /**
+     * Writes every rating to the file if any changed since it was last saved,
+     * replacing the file in one atomic step with HorseRegistry.writeAtomically.
+     *
+     * @throws IOException if the file cannot be written, it is then left as it was
+     */
+    public void save() throws IOException {
+        List<String> lines;
+        synchronized (this) {
+            if (!changed) return;
+            lines = new ArrayList<>(count + 1);
+            lines.add("Name,Rating,Deviation,Races");
+            for (int id = 0; id < count; id++) {
+                lines.add(names[id] + "," + rating[id] + "," + Math.sqrt(variance[id]) + "," + races[id]);
+            }
+            changed = false;
+        }
+        try {
+            HorseRegistry.writeAtomically(file, lines);
+        } catch (IOException e) {
+            synchronized (this) { changed = true; }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the index of a horse, adding it as a new horse if it has not been rated.
+     *
+     * @param name the name of the horse
+     * @return the index of the horse in the arrays
+     */
+    private int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            rating = Arrays.copyOf(rating, count * 2);
+            variance = Arrays.copyOf(variance, count * 2);
+            races = Arrays.copyOf(races, count * 2);
+        }
+        names[count] = name;
+        rating[count] = START_RATING;
+        variance[count] = START_DEVIATION * START_DEVIATION;
+        ids.put(name, count);
+        changed = true;
+        return count++;
+    }
+
+    /**
+     * Grows the scratch arrays to a field size.
+     *
+     * @param n the number of horses in the field
+     */
+    private void grow(int n) {
+        placed = new int[n];
+        field = new int[n];
+        chance = new double[n];
+        behind = new double[n];
+    }
+
+    /** @return a one line summary of the ratings */
+    public synchronized String report() {
+        return String.format("%d horses rated over %d races this session", count, racesRated);
+    }
+}
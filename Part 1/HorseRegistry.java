@@ -0,0 +1,350 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory index of the lines of the horse details file.
+ * The file is read once into a list of lines, which gives every row by position,
+ * and a hash index from the lower-cased horse name to its row, which gives every
+ * horse by name. Counting, fetching a row and finding a name take constant time
+ * instead of a scan of the file. New lines are written through to the file before
+ * the index is changed. Changed lines can be staged in memory, where they are seen
+ * at once, and written together by a single rewrite of the file on flush.
+ * The file is read again if something else changed it, which is noticed from its
+ * length and modification time, and staged lines are laid over the new contents.
+ * A rewrite goes to a temporary file in the same directory, is forced to disk and
+ * is then renamed over the file in one atomic step, so a crash at any point leaves
+ * either the old file or the new one. Flushes that arrive while a rewrite is under
+ * way wait for it and are then written together by one rewrite (group commit).
+ * Row 0 is the first line of the file, normally the header.
+ *
+ * @author Peter Bojthe
+ * @version 16/04/25
+ */
+public class HorseRegistry {
+    private final File file;                                      // The file the registry indexes
+    private final List<String> lines = new ArrayList<>();         // Every line of the file, in order
+    private final Map<String, Integer> rowOfName = new HashMap<>(); // Row of the first line with each name
+    private final Map<String, String> staged = new LinkedHashMap<>(); // Changed lines not yet written, by name
+    private long loadedLength = -1;                               // Length of the file when last read or written
+    private long loadedModified = -1;                             // Modification time of the file then
+    private boolean writing;                                      // True while a flush is rewriting the file
+    private long stagedVersion;                                   // Counts the lines ever staged
+    private long writtenVersion;                                  // Staged lines the file holds, by that count
+
+    /**
+     * Constructor for a registry of a horse details file, read on first use.
+     *
+     * @param file the file to index
+     */
+    public HorseRegistry(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Counts the lines of the file.
+     *
+     * @return number of lines, the header included
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized int lineCount() throws IOException {
+        refresh();
+        return lines.size();
+    }
+
+    /**
+     * Gets a line of the file by its position.
+     *
+     * @param row the 0-based row, 0 is the header
+     * @return the line, or null if the file has no such row
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized String getLine(int row) throws IOException {
+        refresh();
+        return row >= 0 && row < lines.size() ? lines.get(row) : null;
+    }
+
+    /**
+     * Finds the first line of a horse, ignoring case.
+     *
+     * @param name the name of the horse
+     * @return the 0-based row, or -1 if no line has that name
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized int rowOf(String name) throws IOException {
+        refresh();
+        Integer row = rowOfName.get(key(name));
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Copies every line of the file.
+     *
+     * @return the lines in file order
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized List<String> getLines() throws IOException {
+        refresh();
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * Appends a line to the end of the file, then to the index.
+     *
+     * @param line the line to add, without a line ending
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void append(String line) throws IOException {
+        awaitNoRewrite();
+        refresh();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+            writer.write(line);
+            writer.newLine();
+        }
+        index(lines.size(), line);
+        lines.add(line);
+        remember();
+    }
+
+    /**
+     * Replaces a line and rewrites the file at once, along with any staged lines.
+     *
+     * @param row the 0-based row to replace
+     * @param line the new line, with the same name as the old one
+     * @throws IOException if the file cannot be written, the line then stays staged
+     */
+    public void replace(int row, String line) throws IOException {
+        stage(row, line);
+        flush();
+    }
+
+    /**
+     * Replaces a line in memory only. Reads see it straight away and the
+     * file gets it on the next flush. Staging the same horse again keeps the latest line.
+     *
+     * @param row the 0-based row to replace
+     * @param line the new line, with the same name as the old one
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void stage(int row, String line) throws IOException {
+        refresh();
+        lines.set(row, line);
+        staged.put(key(nameOf(line)), line);
+        stagedVersion++;
+    }
+
+    /**
+     * Counts the lines staged and not yet written.
+     *
+     * @return number of horses with staged lines
+     */
+    public synchronized int stagedCount() {
+        return staged.size();
+    }
+
+    /**
+     * Writes every staged line to the file in a single atomic rewrite.
+     * Nothing is written if no line is staged. If another thread is rewriting
+     * the file, this waits for it, and the first waiter then writes the lines of
+     * every waiter at once; the others find their lines written and return.
+     *
+     * @return number of horses written by this call
+     * @throws IOException if the file cannot be written, the lines then stay staged
+     */
+    public int flush() throws IOException {
+        List<String> snapshot;
+        Map<String, String> batch;
+        long version;
+        synchronized (this) {
+            refresh();
+            long mine = stagedVersion;
+            while (writing && writtenVersion < mine) awaitRewrite();
+            if (staged.isEmpty() || writtenVersion >= mine) return 0;
+            writing = true;
+            snapshot = new ArrayList<>(lines);
+            batch = new HashMap<>(staged);
+            version = stagedVersion;
+        }
+        try {
+            writeAtomically(snapshot);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            writing = false;
+            writtenVersion = version;
+            // Lines staged again while the file was written stay staged for the next flush
+            staged.entrySet().removeIf(entry -> entry.getValue().equals(batch.get(entry.getKey())));
+            remember();
+            notifyAll();
+            return batch.size();
+        }
+    }
+
+    /**
+     * Reads the file again if it changed since it was last read or written.
+     *
+     * @throws IOException if the file exists but cannot be read
+     */
+    private void refresh() throws IOException {
+        if (writing) return;   // the rewrite under way changes the file, not someone else
+        long length = file.exists() ? file.length() : -2;
+        if (length == loadedLength && file.lastModified() == loadedModified) return;
+
+        lines.clear();
+        rowOfName.clear();
+        if (length > 0) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    index(lines.size(), line);
+                    lines.add(line);
+                }
+            }
+        }
+        loadedLength = length;
+        loadedModified = file.lastModified();
+
+        // Lay staged lines over the new contents, dropping horses no longer in the file
+        staged.entrySet().removeIf(entry -> {
+            Integer row = rowOfName.get(entry.getKey());
+            if (row == null) return true;
+            lines.set(row, entry.getValue());
+            return false;
+        });
+    }
+
+    /**
+     * Writes lines over the file in one atomic step, see the static writeAtomically.
+     *
+     * @param snapshot the lines to write
+     * @throws IOException if the file is missing or cannot be written, it is then left as it was
+     */
+    private void writeAtomically(List<String> snapshot) throws IOException {
+        if (!file.exists()) throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+        writeAtomically(file.toPath(), snapshot);
+    }
+
+    /**
+     * Writes lines to a temporary file next to a file, forces it to disk and renames
+     * it over the file, then forces the directory so the rename survives a crash too.
+     * A crash at any point leaves either the old file or the new one.
+     *
+     * @param target the file to replace, created if it does not exist
+     * @param lines the lines to write, each followed by a line ending
+     * @throws IOException if the file cannot be written, it is then left as it was
+     */
+    static void writeAtomically(Path target, Iterable<String> lines) throws IOException {
+        target = target.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile());
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()))) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Some systems cannot open a directory, the rename is still atomic there
+        }
+    }
+
+    /**
+     * Waits for the rewrite under way to finish, holding the lock again when it returns.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private void awaitRewrite() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the horse file to be written");
+        }
+    }
+
+    /**
+     * Waits until no rewrite is under way, so an append cannot land in the file being replaced.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private void awaitNoRewrite() throws InterruptedIOException {
+        while (writing) awaitRewrite();
+    }
+
+    /**
+     * Records the length and modification time of the file as written by the registry.
+     */
+    private void remember() {
+        loadedLength = file.length();
+        loadedModified = file.lastModified();
+    }
+
+    /**
+     * Adds a line's name to the index unless an earlier line has it.
+     *
+     * @param row the 0-based row of the line
+     * @param line the line
+     */
+    private void index(int row, String line) {
+        rowOfName.putIfAbsent(key(nameOf(line)), row);
+    }
+
+    /**
+     * Gets the name a line starts with.
+     *
+     * @param line a line of the file
+     * @return the text before the first comma
+     */
+    private static String nameOf(String line) {
+        int comma = line.indexOf(',');
+        return comma < 0 ? line : line.substring(0, comma);
+    }
+
+    /**
+     * Gets the index key of a name.
+     *
+     * @param name the name of a horse
+     * @return the name in lower case
+     */
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
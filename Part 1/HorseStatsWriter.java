@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind stage for the stats of saved horses.
+ * The new stats of every horse in a race are staged in the HorseRegistry, where
+ * reads see them straight away, and the file is rewritten once for a whole
+ * batch instead of once per horse. A batch is flushed after a number of races,
+ * after a length of time, or both, whichever comes first.
+ * Flushing after every race gives one rewrite per race, however many horses ran.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class HorseStatsWriter {
+    private final HorseRegistry registry;            // Where stats are staged and flushed
+    private final int racesPerFlush;                 // Races per flush, 0 to flush on time only
+    private final long flushMillis;                  // Time between timed flushes, 0 to flush on races only
+    private final ScheduledExecutorService timer;    // Runs the timed flushes, null without them
+    private int racesSinceFlush;                     // Races recorded since the last flush
+    private long flushes;                            // Rewrites of the file
+    private long horsesWritten;                      // Horse stats written over every flush
+
+    /**
+     * Constructor for a writer with a flush policy.
+     *
+     * @param registry the registry of the horse details file
+     * @param racesPerFlush flush after this many races, 0 to flush on time only
+     * @param flushMillis also flush this often in milliseconds, 0 to flush on races only
+     * @throws IllegalArgumentException if a value is negative or both are 0
+     */
+    public HorseStatsWriter(HorseRegistry registry, int racesPerFlush, long flushMillis) {
+        if (racesPerFlush < 0 || flushMillis < 0 || (racesPerFlush == 0 && flushMillis == 0)) {
+            throw new IllegalArgumentException("Flush after a number of races, a time, or both");
+        }
+        this.registry = registry;
+        this.racesPerFlush = racesPerFlush;
+        this.flushMillis = flushMillis;
+        if (flushMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "horse-stats-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleWithFixedDelay(this::timedFlush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Stages the new line of a horse, to be written with the rest of its batch.
+     *
+     * @param row the 0-based row of the horse in the file
+     * @param line the new line of the horse
+     * @throws IOException if the file cannot be read
+     */
+    public void record(int row, String line) throws IOException {
+        registry.stage(row, line);
+    }
+
+    /**
+     * Marks the end of a race, flushing the batch if the policy says so.
+     *
+     * @throws IOException if the batch cannot be written, it stays staged for the next flush
+     */
+    public void endRace() throws IOException {
+        boolean due;
+        synchronized (this) {
+            racesSinceFlush++;
+            due = racesPerFlush > 0 && racesSinceFlush >= racesPerFlush;
+        }
+        if (due) flush();
+    }
+
+    /**
+     * Writes every staged horse to the file in one rewrite.
+     *
+     * @throws IOException if the file cannot be written, the horses stay staged
+     */
+    public void flush() throws IOException {
+        int written = registry.flush();
+        synchronized (this) {
+            racesSinceFlush = 0;
+            if (written > 0) {
+                flushes++;
+                horsesWritten += written;
+            }
+        }
+    }
+
+    /**
+     * Flushes and stops the timed flushes.
+     *
+     * @throws IOException if the last batch cannot be written
+     */
+    public void close() throws IOException {
+        if (timer != null) timer.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Flush run by the timer, a failed write is reported and retried on the next flush.
+     */
+    private void timedFlush() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+    }
+
+    /** @return the number of rewrites of the file */
+    public synchronized long getFlushes() { return flushes; }
+
+    /** @return the number of horse stats written over every flush */
+    public synchronized long getHorsesWritten() { return horsesWritten; }
+
+    /** @return a one line summary of the flush policy and the writes made */
+    public synchronized String report() {
+        return String.format("%d horse stats written in %d rewrites (flush every %s%s%s)",
+            horsesWritten, flushes, racesPerFlush > 0 ? racesPerFlush + " races" : "",
+            racesPerFlush > 0 && flushMillis > 0 ? " or " : "", flushMillis > 0 ? flushMillis + " ms" : "");
+    }
+}
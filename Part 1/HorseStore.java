@@ -0,0 +1,430 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Saved horses in a binary file of fixed-size records, memory-mapped.
+ * Every record is 128 bytes, so the record of horse n is found by arithmetic and
+ * updating a horse after a race writes its stats in place, a few bytes, instead of
+ * rewriting the file as the CSV must. Names are found through an open-addressing
+ * table of record numbers hashed on the lower-cased name, compared against the
+ * names in the mapped file, so opening a store creates no strings.
+ * The CSV file stays the format the game reads and writes; importCsv and exportCsv
+ * convert between the two, and main benchmarks one against the other.
+ *
+ * File layout: a 16 byte header (magic, version, record size, record count) and
+ * then the records, each holding
+ * name length (2), name (48 chars), symbol (2), padding, confidence (8),
+ * win rate (8), wins (4) and races (4).
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class HorseStore implements AutoCloseable {
+    public static final int MAX_NAME_LENGTH = 48;         // Longest name a record holds
+    private static final int MAGIC = 0x48525331;          // "HRS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 128;
+    private static final int COUNT_AT = 12;               // Offset of the record count in the header
+    private static final int NAME_LENGTH_AT = 0;          // Offsets of the fields in a record
+    private static final int NAME_AT = 2;
+    private static final int SYMBOL_AT = NAME_AT + MAX_NAME_LENGTH * 2;
+    private static final int CONFIDENCE_AT = 104;
+    private static final int WIN_RATE_AT = 112;
+    private static final int WINS_AT = 120;
+    private static final int RACES_AT = 124;
+
+    private final FileChannel channel;                    // The open store file
+    private MappedByteBuffer map;                         // The header and room for capacity records
+    private int capacity;                                 // Records the mapping has room for
+    private int count;                                    // Records in the store
+    private int[] nameTable;                              // Record number + 1 by name hash, 0 for a free slot
+
+    /**
+     * Constructor for a store over an open file.
+     *
+     * @param channel the store file, opened for reading and writing
+     * @throws IOException if the file cannot be mapped or is not a horse store
+     */
+    private HorseStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        if (channel.size() == 0) {
+            mapFor(1024);
+            map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_SIZE).putInt(COUNT_AT, 0);
+        } else {
+            if (channel.size() < HEADER_SIZE) throw new IOException("Not a horse store: file too short");
+            mapFor((int) Math.max(1, (channel.size() - HEADER_SIZE) / RECORD_SIZE));
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != RECORD_SIZE) {
+                throw new IOException("Not a horse store, or a different version of one");
+            }
+            count = map.getInt(COUNT_AT);
+        }
+        nameTable = new int[tableSizeFor(count)];
+        for (int record = 0; record < count; record++) {
+            insertName(record);
+        }
+    }
+
+    /**
+     * Opens a store, creating an empty one if the file does not exist.
+     *
+     * @param path the store file
+     * @return the open store
+     * @throws IOException if the file cannot be opened or is not a horse store
+     */
+    public static HorseStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new HorseStore(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the horses in the store.
+     *
+     * @return number of horses
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Finds a horse by name, ignoring case.
+     *
+     * @param name the name of the horse
+     * @return the 1-based number of its record, or -1 if the store does not hold it
+     */
+    public synchronized int find(String name) {
+        int mask = nameTable.length - 1;
+        for (int slot = hashName(name) & mask; nameTable[slot] != 0; slot = (slot + 1) & mask) {
+            if (nameEquals(nameTable[slot] - 1, name)) return nameTable[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a horse to the end of the store, unless a horse of that name is in it already.
+     *
+     * @param name the name of the horse
+     * @param confidence the confidence of the horse
+     * @param symbol the character the horse is drawn with
+     * @param wins races won
+     * @param races races run
+     * @param winRate races won out of races run
+     * @return the 1-based number of its record, or -1 if the name was taken
+     * @throws IllegalArgumentException if the name is empty or longer than MAX_NAME_LENGTH
+     * @throws IOException if the store cannot grow
+     */
+    public synchronized int add(String name, double confidence, char symbol, int wins, int races, double winRate) throws IOException {
+        if (name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Horse name must be 1 to "+MAX_NAME_LENGTH+" characters: "+name);
+        }
+        if (find(name) > 0) return -1;
+        if (count == capacity) mapFor(capacity * 2);
+        int at = offsetOf(count);
+        map.putShort(at + NAME_LENGTH_AT, (short) name.length());
+        for (int i = 0; i < MAX_NAME_LENGTH; i++) {
+            map.putChar(at + NAME_AT + i * 2, i < name.length() ? name.charAt(i) : '\0');
+        }
+        writeStats(at, confidence, symbol, wins, races, winRate);
+        count++;
+        map.putInt(COUNT_AT, count);
+        if (count * 2 > nameTable.length) {
+            nameTable = new int[tableSizeFor(count)];
+            for (int record = 0; record < count; record++) insertName(record);
+        } else {
+            insertName(count - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the stats of a horse after a race over its record, in place.
+     *
+     * @param horse the horse to update
+     * @return true if the store holds the horse and it was updated
+     */
+    public synchronized boolean update(Horse horse) {
+        int number = find(horse.getName());
+        if (number < 0) return false;
+        writeStats(offsetOf(number - 1), horse.getConfidence(), horse.getSymbol(), horse.getTotalWins(), horse.getTotalRaces(), horse.getWinRate());
+        return true;
+    }
+
+    /**
+     * Gets a horse in the same form as HorseDetailsFileHandling.getHorseDetails.
+     *
+     * @param number the 1-based number of the record
+     * @return name, confidence, symbol, wins, races and win rate as text, or null if there is no such record
+     */
+    public synchronized String[] getHorseDetails(int number) {
+        if (number < 1 || number > count) return null;
+        int record = number - 1;
+        return new String[] {
+            getName(number),
+            String.format("%.2f", map.getDouble(offsetOf(record) + CONFIDENCE_AT)),
+            String.valueOf(map.getChar(offsetOf(record) + SYMBOL_AT)),
+            String.valueOf(map.getInt(offsetOf(record) + WINS_AT)),
+            String.valueOf(map.getInt(offsetOf(record) + RACES_AT)),
+            String.format("%.2f", map.getDouble(offsetOf(record) + WIN_RATE_AT))
+        };
+    }
+
+    /** @return the name of a horse, @param number the 1-based number of the record */
+    public synchronized String getName(int number) {
+        int at = offsetOf(number - 1);
+        char[] name = new char[map.getShort(at + NAME_LENGTH_AT)];
+        for (int i = 0; i < name.length; i++) name[i] = map.getChar(at + NAME_AT + i * 2);
+        return new String(name);
+    }
+
+    /** @return the confidence of a horse, @param number the 1-based number of the record */
+    public synchronized double getConfidence(int number) { return map.getDouble(offsetOf(number - 1) + CONFIDENCE_AT); }
+
+    /** @return the symbol of a horse, @param number the 1-based number of the record */
+    public synchronized char getSymbol(int number) { return map.getChar(offsetOf(number - 1) + SYMBOL_AT); }
+
+    /** @return the races won by a horse, @param number the 1-based number of the record */
+    public synchronized int getWins(int number) { return map.getInt(offsetOf(number - 1) + WINS_AT); }
+
+    /** @return the races run by a horse, @param number the 1-based number of the record */
+    public synchronized int getRaces(int number) { return map.getInt(offsetOf(number - 1) + RACES_AT); }
+
+    /** @return the win rate of a horse, @param number the 1-based number of the record */
+    public synchronized double getWinRate(int number) { return map.getDouble(offsetOf(number - 1) + WIN_RATE_AT); }
+
+    /**
+     * Forces every change made through the mapping out to the disk.
+     */
+    public synchronized void force() {
+        map.force();
+    }
+
+    /**
+     * Forces the changes to disk and closes the store.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+
+    /**
+     * Adds every horse in a horse details CSV file to a store, skipping the header
+     * and names the store already holds.
+     *
+     * @param csv the CSV file to read
+     * @param store the store to add to
+     * @return number of horses added
+     * @throws IOException if the file cannot be read or the store cannot grow
+     * @throws IllegalArgumentException if a row is malformed
+     */
+    public static int importCsv(Path csv, HorseStore store) throws IOException {
+        int added = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();   // header
+            while ((line = reader.readLine()) != null) {
+                String[] row = line.split(",", -1);
+                if (row.length != 6) {
+                    throw new IllegalArgumentException("Invalid data format. Expected 6 columns, found "+row.length+": "+line);
+                }
+                if (store.add(row[0], Double.parseDouble(row[1]), row[2].charAt(0), Integer.parseInt(row[3]),
+                        Integer.parseInt(row[4]), Double.parseDouble(row[5])) > 0) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Writes every horse in a store to a horse details CSV file, replacing it.
+     *
+     * @param store the store to read
+     * @param csv the CSV file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportCsv(HorseStore store, Path csv) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("Name,Confidence,Character,Total Wins,Total Races,Win Rate");
+            writer.newLine();
+            for (int number = 1; number <= store.size(); number++) {
+                writer.write(String.join(",", store.getHorseDetails(number)));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Maps the header and room for a number of records, growing the file if needed.
+     *
+     * @param records records to make room for
+     * @throws IOException if the file cannot be mapped
+     */
+    private void mapFor(int records) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+        capacity = records;
+    }
+
+    /**
+     * Writes the stats of a record.
+     *
+     * @param at offset of the record
+     * @param confidence the confidence of the horse
+     * @param symbol the character the horse is drawn with
+     * @param wins races won
+     * @param races races run
+     * @param winRate races won out of races run
+     */
+    private void writeStats(int at, double confidence, char symbol, int wins, int races, double winRate) {
+        map.putChar(at + SYMBOL_AT, symbol);
+        map.putDouble(at + CONFIDENCE_AT, confidence);
+        map.putDouble(at + WIN_RATE_AT, winRate);
+        map.putInt(at + WINS_AT, wins);
+        map.putInt(at + RACES_AT, races);
+    }
+
+    /** @return the offset of a record in the file, @param record the 0-based record */
+    private static int offsetOf(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    /** @return a power of two at least twice the number of names, @param names the number of names */
+    private static int tableSizeFor(int names) {
+        return Integer.highestOneBit(Math.max(16, names * 4 - 1));
+    }
+
+    /**
+     * Puts a record in the name table.
+     *
+     * @param record the 0-based record
+     */
+    private void insertName(int record) {
+        int at = offsetOf(record);
+        int length = map.getShort(at + NAME_LENGTH_AT);
+        int hash = 0;
+        for (int i = 0; i < length; i++) hash = 31 * hash + Character.toLowerCase(map.getChar(at + NAME_AT + i * 2));
+        int mask = nameTable.length - 1;
+        int slot = spread(hash) & mask;
+        while (nameTable[slot] != 0) slot = (slot + 1) & mask;
+        nameTable[slot] = record + 1;
+    }
+
+    /** @return the table hash of a name, ignoring case, @param name the name */
+    private static int hashName(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+        return spread(hash);
+    }
+
+    /** @return the hash with its high bits mixed into the low ones, @param hash a string hash */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compares the name in a record with a name, ignoring case.
+     *
+     * @param record the 0-based record
+     * @param name the name to compare with
+     * @return true if they are the same name
+     */
+    private boolean nameEquals(int record, String name) {
+        int at = offsetOf(record);
+        if (map.getShort(at + NAME_LENGTH_AT) != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char stored = map.getChar(at + NAME_AT + i * 2);
+            if (Character.toLowerCase(stored) != Character.toLowerCase(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Benchmarks the store against the CSV file at a given size.
+     * Writes a CSV stable of random horses to a temporary directory, imports it,
+     * and times opening, reading a record and updating a horse both ways.
+     *
+     * @param args [horses, default 1000000] [CSV updates, default 3]
+     * @throws IOException if the temporary files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int horses = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int csvUpdates = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        Path dir = Files.createTempDirectory("horse-store");
+        Path csv = dir.resolve("SavingHorseDetails.csv");
+        Path bin = dir.resolve("SavingHorseDetails.hrs");
+        SplittableRandom random = new SplittableRandom(42);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                writer.write("Name,Confidence,Character,Total Wins,Total Races,Win Rate");
+                writer.newLine();
+                for (int i = 0; i < horses; i++) {
+                    int races = random.nextInt(100);
+                    int wins = races == 0 ? 0 : random.nextInt(races + 1);
+                    writer.write(String.format("Horse %d,%.2f,%c,%d,%d,%.2f", i, random.nextDouble(), (char) ('A' + i % 26), wins, races, races == 0 ? 0.0 : (double) wins / races));
+                    writer.newLine();
+                }
+            }
+
+            long start = System.nanoTime();
+            HorseRegistry registry = new HorseRegistry(csv.toFile());
+            registry.lineCount();
+            long csvOpen = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < 100_000; i++) registry.getLine(1 + random.nextInt(horses)).split(",", -1);
+            long csvGet = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < csvUpdates; i++) {
+                int row = 1 + random.nextInt(horses);
+                registry.replace(row, registry.getLine(row));
+            }
+            long csvUpdate = System.nanoTime() - start;
+
+            long[] times = new long[4];
+            start = System.nanoTime();
+            try (HorseStore store = open(bin)) {
+                importCsv(csv, store);
+            }
+            times[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            try (HorseStore store = open(bin)) {
+                times[1] = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < 100_000; i++) store.getHorseDetails(1 + random.nextInt(horses));
+                times[2] = System.nanoTime() - start;
+                Horse[] field = new Horse[1000];
+                for (int i = 0; i < field.length; i++) field[i] = new Horse("horse " + random.nextInt(horses), "0.5", "H", "0", "0", "0", 1);
+                start = System.nanoTime();
+                for (int i = 0; i < 100_000; i++) {
+                    Horse horse = field[i % field.length];
+                    horse.setTotalRaces(i);
+                    store.update(horse);
+                }
+                store.force();
+                times[3] = System.nanoTime() - start;
+            }
+
+            System.out.printf("%,d horses: CSV %,d bytes, store %,d bytes%n", horses, Files.size(csv), Files.size(bin));
+            System.out.printf("open           CSV %8.1f ms   store %8.1f ms (import %.1f ms)%n", csvOpen / 1e6, times[1] / 1e6, times[0] / 1e6);
+            System.out.printf("read a horse   CSV %8.3f us   store %8.3f us%n", csvGet / 1e5 / 1e3, times[2] / 1e5 / 1e3);
+            System.out.printf("update a horse CSV %8.1f ms   store %8.3f us (with one force at the end)%n", csvUpdate / 1e6 / csvUpdates, times[3] / 1e5 / 1e3);
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(bin);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shows the horse details file as a table one page at a time.
+ * The file is scanned once for the byte offset of the first row of every page, so
+ * a page is read by seeking to its offset and parsing its rows, and only one page
+ * is held in memory however big the file is. Column widths are worked out from
+ * the header and the first rows, widened for the rows of the page shown, and
+ * values wider than a column may be are cut to fit, so no page needs every row
+ * read. Searching by the start of a name streams the file and keeps only the
+ * first page of matches.
+ * The index is built again if the file has changed since it was scanned.
+ * Rows are numbered from 1 as in HorseDetailsFileHandling.getHorseDetails.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class HorseTablePager {
+    private static final int SAMPLE_ROWS = 1000;          // Rows the column widths are worked out from
+    private static final int MAX_WIDTH = 24;              // Widest a column may be
+    private static final int SCAN_BUFFER = 1 << 16;       // Bytes read at a time while indexing
+
+    private final Path file;                              // The horse details file
+    private final int pageSize;                           // Rows on a page
+    private long[] pageOffsets = new long[16];            // Byte offset of the first row of every page
+    private int rows;                                     // Rows of the file, without the header
+    private String[] header = new String[0];              // Names of the columns
+    private int[] widths = new int[0];                    // Width of every column, the row number first
+    private long indexedLength = -1;                      // Length of the file when it was indexed
+    private long indexedModified = -1;                    // Modification time of the file then
+
+    /**
+     * Constructor for a pager over a horse details file, indexed on first use.
+     *
+     * @param file the file to show
+     * @param pageSize rows on a page
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public HorseTablePager(Path file, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.file = file;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Counts the rows of the file.
+     *
+     * @return number of rows, without the header
+     * @throws IOException if the file cannot be read
+     */
+    public int getRowCount() throws IOException {
+        refresh();
+        return rows;
+    }
+
+    /**
+     * Counts the pages of the table.
+     *
+     * @return number of pages, at least 1
+     * @throws IOException if the file cannot be read
+     */
+    public int getPageCount() throws IOException {
+        refresh();
+        return Math.max(1, (rows + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * Gets the page a row is shown on.
+     *
+     * @param row the 1-based row
+     * @return the 0-based page
+     */
+    public int pageOf(int row) {
+        return Math.max(0, row - 1) / pageSize;
+    }
+
+    /**
+     * Prints one page of the table, with its rows numbered.
+     *
+     * @param page the 0-based page, clamped to the pages there are
+     * @return the page printed
+     * @throws IOException if the file cannot be read
+     */
+    public int printPage(int page) throws IOException {
+        refresh();
+        if (rows == 0) {
+            System.out.println("No horse data available.");
+            return 0;
+        }
+        page = Math.max(0, Math.min(page, getPageCount() - 1));
+        List<String[]> shown = new ArrayList<>(pageSize);
+        int first = page * pageSize + 1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             HorseCsvParser parser = new HorseCsvParser(new InputStreamReader(Channels.newInputStream(channel.position(pageOffsets[page])), StandardCharsets.UTF_8))) {
+            while (shown.size() < pageSize && parser.next()) {
+                shown.add(withRowNumber(first + shown.size(), parser));
+            }
+        }
+        printTable(shown);
+        System.out.printf("Page %d of %d (%d horses)%n", page + 1, getPageCount(), rows);
+        return page;
+    }
+
+    /**
+     * Prints the rows whose horse name starts with a prefix, ignoring case,
+     * up to a page of them.
+     *
+     * @param prefix the start of the name
+     * @return number of rows that match, shown or not
+     * @throws IOException if the file cannot be read
+     */
+    public int printSearch(String prefix) throws IOException {
+        refresh();
+        List<String[]> shown = new ArrayList<>(pageSize);
+        int matches = 0;
+        if (Files.exists(file)) {
+            try (HorseCsvParser parser = HorseCsvParser.open(file)) {
+                parser.next(); // Skip the header line
+                for (int row = 1; parser.next(); row++) {
+                    if (!parser.fieldStartsWithIgnoreCase(0, prefix)) continue;
+                    if (matches++ < pageSize) shown.add(withRowNumber(row, parser));
+                }
+            }
+        }
+        if (matches == 0) {
+            System.out.println("No saved horse name starts with \"" + prefix + "\".");
+            return 0;
+        }
+        printTable(shown);
+        System.out.printf("%d horses start with \"%s\"%s%n", matches, prefix, matches > shown.size() ? ", first " + shown.size() + " shown" : "");
+        return matches;
+    }
+
+    /**
+     * Indexes the file again if it has changed since it was last indexed.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void refresh() throws IOException {
+        long length = Files.exists(file) ? Files.size(file) : -1;
+        long modified = length >= 0 ? Files.getLastModifiedTime(file).toMillis() : -1;
+        if (length == indexedLength && modified == indexedModified) return;
+        rows = 0;
+        header = new String[0];
+        widths = new int[0];
+        if (length >= 0) {
+            index();
+            sampleWidths();
+        }
+        indexedLength = length;
+        indexedModified = modified;
+    }
+
+    /**
+     * Scans the bytes of the file for the start of every line, keeping the offset
+     * of the first row of each page.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void index() throws IOException {
+        int pages = 0;
+        int lines = 0;                 // lines started, the header is line 0
+        boolean atLineStart = true;
+        long position = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < buffer.limit(); i++, position++) {
+                    if (atLineStart) {
+                        if (lines >= 1 && (lines - 1) % pageSize == 0) {
+                            if (pages == pageOffsets.length) pageOffsets = Arrays.copyOf(pageOffsets, pages * 2);
+                            pageOffsets[pages++] = position;
+                        }
+                        lines++;
+                        atLineStart = false;
+                    }
+                    if (bytes[i] == '\n') atLineStart = true;
+                }
+                buffer.clear();
+            }
+        }
+        rows = Math.max(0, lines - 1);
+    }
+
+    /**
+     * Works out the column widths from the header and the first rows.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void sampleWidths() throws IOException {
+        try (HorseCsvParser parser = HorseCsvParser.open(file)) {
+            if (!parser.next()) return;
+            header = new String[parser.getFieldCount() + 1];
+            header[0] = "Row";
+            for (int i = 1; i < header.length; i++) header[i] = parser.getString(i - 1);
+            widths = new int[header.length];
+            for (int i = 0; i < header.length; i++) widths[i] = Math.max(1, Math.min(MAX_WIDTH, header[i].length()));
+            widths[0] = Math.max(widths[0], Integer.toString(rows).length());
+            for (int sampled = 0; sampled < SAMPLE_ROWS && parser.next(); sampled++) {
+                for (int i = 1; i < widths.length && i - 1 < parser.getFieldCount(); i++) {
+                    widths[i] = Math.min(MAX_WIDTH, Math.max(widths[i], parser.getString(i - 1).trim().length()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the fields of a row with its row number in front, padded or cut to the columns there are.
+     *
+     * @param row the 1-based row
+     * @param parser the parser, on the row
+     * @return the cells of the row
+     */
+    private String[] withRowNumber(int row, HorseCsvParser parser) {
+        String[] cells = new String[header.length];
+        cells[0] = Integer.toString(row);
+        for (int i = 1; i < cells.length; i++) {
+            cells[i] = i - 1 < parser.getFieldCount() ? parser.getString(i - 1) : "";
+        }
+        return cells;
+    }
+
+    /**
+     * Prints the header and rows in a table with borders.
+     *
+     * @param shown the rows to print
+     */
+    private void printTable(List<String[]> shown) {
+        int[] pageWidths = widths.clone();
+        for (String[] row : shown) {
+            for (int i = 0; i < pageWidths.length; i++) {
+                pageWidths[i] = Math.min(MAX_WIDTH, Math.max(pageWidths[i], row[i].trim().length()));
+            }
+        }
+        printSeparatorLine(pageWidths);
+        printTableRow(header, pageWidths);
+        printSeparatorLine(pageWidths);
+        for (String[] row : shown) {
+            printTableRow(row, pageWidths);
+            printSeparatorLine(pageWidths);
+        }
+    }
+
+    /**
+     * Prints a formatted table row with proper alignment, cutting values wider than their column.
+     *
+     * @param row The data row to print
+     * @param widths Array of column widths
+     */
+    private static void printTableRow(String[] row, int[] widths) {
+        StringBuilder line = new StringBuilder("|");
+        for (int i = 0; i < widths.length; i++) {
+            String value = row[i].trim();
+            if (value.length() > widths[i]) value = value.substring(0, widths[i] - 1) + "~";
+            String padding = " ".repeat(widths[i] - value.length());
+            if (value.matches("[A-Za-z0-9]+")) { // Alphanumeric value
+                line.append(' ').append(padding).append(value).append(" |");
+            } else { // String value
+                line.append(' ').append(value).append(padding).append(" |");
+            }
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Prints a separator line for the table.
+     *
+     * @param widths Array of column widths
+     */
+    private static void printSeparatorLine(int[] widths) {
+        StringBuilder line = new StringBuilder("+");
+        for (int width : widths) {
+            line.append("-".repeat(width + 2)).append('+');
+        }
+        System.out.println(line);
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds the race journal into the horse details file in the background.
+ * Each pass reads the journal from where the last pass stopped, keeps the latest
+ * stats of every horse, and stages the ones that differ from the file for a single
+ * rewrite. Journal lines hold a horse's stats after the race rather than what
+ * changed, so folding a race twice leaves the file the same; a crash between
+ * folding and saving the checkpoint costs nothing but a repeated pass.
+ * Races run on copies of the saved horses, such as the meetings of a tournament
+ * run in parallel, are skipped: each copy's stats tell only of its own meeting.
+ * Malformed lines are counted and skipped rather than stopping the fold there.
+ * The offset reached is kept in a checkpoint file next to the journal, replaced
+ * atomically after it is forced to disk.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class JournalCompactor implements AutoCloseable {
+    private final Path journal;                         // The journal to fold
+    private final Path checkpoint;                      // Holds the offset the last pass reached
+    private final ScheduledExecutorService timer;       // Runs the passes, null if run by hand only
+    private long offset;                                // Offset of the first race not yet folded
+    private long racesFolded;                           // Races read over every pass
+    private long horsesUpdated;                         // Horses whose saved stats changed
+    private long malformedLines;                        // Lines skipped as not races
+
+    /**
+     * Constructor for a compactor of a journal.
+     *
+     * @param journal the journal to fold
+     * @param periodMillis time between passes, 0 to run passes by hand only
+     */
+    public JournalCompactor(Path journal, long periodMillis) {
+        this.journal = journal;
+        this.checkpoint = journal.resolveSibling(journal.getFileName() + ".checkpoint");
+        this.offset = readCheckpoint();
+        if (periodMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "race-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleWithFixedDelay(this::timedCompact, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Folds every saved race journalled since the last pass into the horse details file.
+     *
+     * @return number of horses whose saved stats changed
+     * @throws IOException if the journal cannot be read or the file cannot be written
+     */
+    public synchronized int compact() throws IOException {
+        Map<String, String> latest = new LinkedHashMap<>();
+        long[] races = new long[1];
+        long[] malformed = new long[1];
+        long reached = RaceJournal.read(journal, offset, entry -> {
+            if (!entry.isSaved()) return;   // run on copies of the saved horses
+            races[0]++;
+            for (RaceJournal.Runner runner : entry.getRunners()) {
+                latest.put(runner.getName().toLowerCase(Locale.ROOT), HorseDetailsFileHandling.formatHorse(runner.getName(),
+                    runner.getConfidence(), runner.getSymbol(), runner.getWins(), runner.getRaces(), runner.getWinRate()));
+            }
+        }, line -> malformed[0]++);
+        if (reached == offset) return 0;
+        if (malformed[0] > 0) System.err.println("Skipped " + malformed[0] + " malformed race journal lines");
+
+        int updated = HorseDetailsFileHandling.foldHorseLines(latest.values());
+        HorseRegistry.writeAtomically(checkpoint, List.of(Long.toString(reached)));
+        offset = reached;
+        racesFolded += races[0];
+        malformedLines += malformed[0];
+        horsesUpdated += updated;
+        return updated;
+    }
+
+    /**
+     * Reads the offset the last pass reached. A checkpoint that is missing or cannot be
+     * read counts as the start of the journal, as folding it again changes nothing.
+     *
+     * @return the offset of the first race not yet folded
+     */
+    private long readCheckpoint() {
+        try {
+            return Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint, StandardCharsets.UTF_8).trim()) : 0L;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable race journal checkpoint: " + e.getMessage());
+            return 0L;
+        }
+    }
+
+    /**
+     * Runs a last pass and stops the timed ones.
+     *
+     * @throws IOException if the last pass fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (timer != null) {
+            timer.shutdown();
+            try {
+                timer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Pass run by the timer, a failed pass is reported and tried again next time.
+     */
+    private void timedCompact() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error folding the race journal: " + e.getMessage());
+        }
+    }
+
+    /** @return a one line summary of the passes made */
+    public synchronized String report() {
+        return String.format("%d saved races folded, %d saved horse updates, %d malformed lines skipped", racesFolded, horsesUpdated, malformedLines);
+    }
+}
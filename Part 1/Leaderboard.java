@@ -0,0 +1,282 @@
+import java.util.Arrays;
+
+/**
+ * Running order of a race, kept up to date one move at a time.
+ * Every horse on the board has a key packing its distance above its lane, so keys
+ * are unique, a higher key is further ahead and horses level on distance are ordered
+ * by lane. The keys live in a treap held in plain arrays indexed by lane: a binary
+ * search tree on the key that is also a heap on a fixed priority per lane, so its
+ * depth is O(log n) whatever order the horses move in. Moving a horse and finding
+ * its position take O(log n), reading the leading k horses O(log n + k), and none
+ * of them allocate, so the board keeps up with fields of any size.
+ * Fallen horses are taken off the board. Lanes are 0-based indexes into the field.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class Leaderboard {
+    private static final int NONE = 0;                    // Node of an empty tree, lane i is node i + 1
+
+    private final long[] key;                             // Packed distance and lane of each node
+    private final int[] priority;                         // Heap priority of each node, fixed by its lane
+    private final int[] left;                             // Subtree of lower keys
+    private final int[] right;                            // Subtree of higher keys
+    private final int[] size;                             // Nodes in the subtree of each node, 0 for NONE
+    private final boolean[] onBoard;                      // True for each node in the tree
+    private final int[] stack;                            // Path of an in-order walk, reused by every walk
+    private int root = NONE;
+    private int splitLow;                                 // Lower half of the latest split
+    private int splitHigh;                                // Higher half of the latest split
+
+    /**
+     * Constructor for an empty board.
+     *
+     * @param lanes the number of lanes in the race
+     */
+    public Leaderboard(int lanes) {
+        if (lanes < 0) {
+            throw new IllegalArgumentException("Number of lanes cannot be negative");
+        }
+        this.key = new long[lanes + 1];
+        this.priority = new int[lanes + 1];
+        this.left = new int[lanes + 1];
+        this.right = new int[lanes + 1];
+        this.size = new int[lanes + 1];
+        this.onBoard = new boolean[lanes + 1];
+        this.stack = new int[lanes + 1];
+        for (int node = 1; node <= lanes; node++) {
+            priority[node] = mix(node);
+        }
+    }
+
+    /**
+     * Packs a distance and a lane into a key, ahead of every key of a shorter distance.
+     *
+     * @param distance the distance travelled, not negative
+     * @param lane the 0-based lane index
+     * @return the key of the lane at that distance
+     */
+    public static long pack(int distance, int lane) {
+        return ((long) distance << 32) | (Integer.MAX_VALUE - lane);
+    }
+
+    /**
+     * Writes a position the way it is shown in a race.
+     *
+     * @param position the 1-based position
+     * @return the position such as 1st, 2nd or 11th
+     */
+    public static String ordinal(int position) {
+        int lastTwo = position % 100;
+        if (lastTwo >= 11 && lastTwo <= 13) return position + "th";
+        return switch (position % 10) {
+            case 1 -> position + "st";
+            case 2 -> position + "nd";
+            case 3 -> position + "rd";
+            default -> position + "th";
+        };
+    }
+
+    /**
+     * Puts a lane on the board at a distance, or moves it there if it is on already.
+     *
+     * @param lane the 0-based lane index
+     * @param distance the distance travelled
+     */
+    public void update(int lane, int distance) {
+        int node = lane + 1;
+        long packed = pack(distance, lane);
+        if (onBoard[node]) {
+            if (key[node] == packed) return;
+            root = erase(root, key[node]);
+        }
+        key[node] = packed;
+        left[node] = NONE;
+        right[node] = NONE;
+        size[node] = 1;
+        onBoard[node] = true;
+        root = insert(root, node);
+    }
+
+    /**
+     * Takes a lane off the board, if it is on.
+     *
+     * @param lane the 0-based lane index
+     */
+    public void remove(int lane) {
+        int node = lane + 1;
+        if (!onBoard[node]) return;
+        root = erase(root, key[node]);
+        onBoard[node] = false;
+    }
+
+    /**
+     * Takes every lane off the board.
+     */
+    public void clear() {
+        Arrays.fill(onBoard, false);
+        root = NONE;
+    }
+
+    /** @return true if the lane is on the board, @param lane the 0-based lane index */
+    public boolean contains(int lane) { return onBoard[lane + 1]; }
+
+    /** @return the distance of the lane on the board or -1 if it is not on it, @param lane the 0-based lane index */
+    public int getDistance(int lane) { return onBoard[lane + 1] ? (int) (key[lane + 1] >>> 32) : -1; }
+
+    /** @return the number of lanes on the board */
+    public int size() { return size[root]; }
+
+    /**
+     * Finds the position of a lane in the running order.
+     *
+     * @param lane the 0-based lane index
+     * @return the 1-based position, -1 if the lane is not on the board
+     */
+    public int getPosition(int lane) {
+        int node = lane + 1;
+        if (!onBoard[node]) return -1;
+        long target = key[node];
+        int ahead = 0;
+        int t = root;
+        while (t != NONE) {
+            if (key[t] > target) {
+                ahead += 1 + size[right[t]];
+                t = left[t];
+            } else {
+                if (key[t] == target) return ahead + size[right[t]] + 1;
+                t = right[t];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills in the lanes of the leading horses, first place first.
+     *
+     * @param k the number of lanes wanted
+     * @param out receives the 0-based lane indexes
+     * @return the number of lanes filled in, at most k
+     */
+    public int top(int k, int[] out) {
+        int filled = 0;
+        int depth = 0;
+        int t = root;
+        k = Math.min(k, out.length);
+        while (filled < k && (t != NONE || depth > 0)) {
+            if (t != NONE) {
+                stack[depth++] = t;
+                t = right[t];
+            } else {
+                t = stack[--depth];
+                out[filled++] = t - 1;
+                t = left[t];
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Adds a node to a tree.
+     *
+     * @param t the root of the tree
+     * @param node the node to add, not in the tree
+     * @return the root of the tree with the node
+     */
+    private int insert(int t, int node) {
+        if (t == NONE) return node;
+        if (priority[node] > priority[t]) {
+            split(t, key[node]);
+            left[node] = splitLow;
+            right[node] = splitHigh;
+            resize(node);
+            return node;
+        }
+        if (key[node] < key[t]) {
+            left[t] = insert(left[t], node);
+        } else {
+            right[t] = insert(right[t], node);
+        }
+        resize(t);
+        return t;
+    }
+
+    /**
+     * Takes the node of a key out of a tree.
+     *
+     * @param t the root of the tree
+     * @param target the key, in the tree
+     * @return the root of the tree without it
+     */
+    private int erase(int t, long target) {
+        if (t == NONE) return NONE;
+        if (key[t] == target) return merge(left[t], right[t]);
+        if (target < key[t]) {
+            left[t] = erase(left[t], target);
+        } else {
+            right[t] = erase(right[t], target);
+        }
+        resize(t);
+        return t;
+    }
+
+    /**
+     * Splits a tree into the keys below a key and the rest, left in splitLow and splitHigh.
+     *
+     * @param t the root of the tree
+     * @param at the key to split at
+     */
+    private void split(int t, long at) {
+        if (t == NONE) {
+            splitLow = NONE;
+            splitHigh = NONE;
+        } else if (key[t] < at) {
+            split(right[t], at);
+            right[t] = splitLow;
+            resize(t);
+            splitLow = t;
+        } else {
+            split(left[t], at);
+            left[t] = splitHigh;
+            resize(t);
+            splitHigh = t;
+        }
+    }
+
+    /**
+     * Joins two trees, every key of the first below every key of the second.
+     *
+     * @param low the root of the lower tree
+     * @param high the root of the higher tree
+     * @return the root of the joined tree
+     */
+    private int merge(int low, int high) {
+        if (low == NONE) return high;
+        if (high == NONE) return low;
+        if (priority[low] > priority[high]) {
+            right[low] = merge(right[low], high);
+            resize(low);
+            return low;
+        }
+        left[high] = merge(low, left[high]);
+        resize(high);
+        return high;
+    }
+
+    /** Works out the size of a node from its subtrees, @param node the node */
+    private void resize(int node) { size[node] = 1 + size[left[node]] + size[right[node]]; }
+
+    /**
+     * Spreads the bits of a node number, so the tree stays balanced for any order of keys.
+     *
+     * @param node the node
+     * @return the priority of the node
+     */
+    private static int mix(int node) {
+        int h = node * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
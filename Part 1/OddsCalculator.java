@@ -0,0 +1,214 @@
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Prices a field of horses by simulating the race many times on every core.
+ * Simulations are split into batches and run with fork/join, each batch on its
+ * own RaceEngine. A latency budget bounds how long a field may be priced for:
+ * once it has run out every batch stops early, so the estimate is built from
+ * however many races fitted in the budget.
+ * Slow fields are simulated by jumping from event to event rather than move by move.
+ * Bets are priced by ExactOddsSolver; this sampler is kept as the cross-check its
+ * benchmark compares the exact odds against.
+ *
+ * @author Peter Bojthe
+ * @version 22/04/25
+ */
+public class OddsCalculator {
+    private static final int BATCH_SIZE = 1024;       // Races simulated by one fork/join task
+
+    private final ForkJoinPool pool;                  // Pool the simulations run on
+    private final RaceRandom random;                  // Source of the streams of every batch
+    private long latencyBudgetMillis;                 // Longest time a field may be priced for
+    private int maxSimulations;                       // Most races simulated for one field
+
+    /**
+     * Constructor for a calculator that runs on the common fork/join pool.
+     *
+     * @param latencyBudgetMillis longest time in milliseconds a field may be priced for
+     * @param maxSimulations most races simulated for one field
+     */
+    public OddsCalculator(long latencyBudgetMillis, int maxSimulations) {
+        this(ForkJoinPool.commonPool(), latencyBudgetMillis, maxSimulations);
+    }
+
+    /**
+     * Constructor for a calculator that runs on the given pool.
+     *
+     * @param pool the fork/join pool the simulations run on
+     * @param latencyBudgetMillis longest time in milliseconds a field may be priced for
+     * @param maxSimulations most races simulated for one field
+     */
+    public OddsCalculator(ForkJoinPool pool, long latencyBudgetMillis, int maxSimulations) {
+        this(pool, new RaceRandom(), latencyBudgetMillis, maxSimulations);
+    }
+
+    /**
+     * Constructor for a calculator that runs on the given pool with a seeded source,
+     * so that the races behind an estimate can be reproduced.
+     *
+     * @param pool the fork/join pool the simulations run on
+     * @param random the source every batch's stream is split from
+     * @param latencyBudgetMillis longest time in milliseconds a field may be priced for
+     * @param maxSimulations most races simulated for one field
+     */
+    public OddsCalculator(ForkJoinPool pool, RaceRandom random, long latencyBudgetMillis, int maxSimulations) {
+        this.pool = pool;
+        this.random = random;
+        setLatencyBudgetMillis(latencyBudgetMillis);
+        setMaxSimulations(maxSimulations);
+    }
+
+    /**
+     * Estimates the win probability of every horse in a field.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     * @param raceLength the distance a horse must travel to win
+     * @return the estimated odds of the field
+     */
+    public OddsEstimate calculate(List<Horse> horses, int raceLength) {
+        double[] confidence = new double[horses.size()];
+        boolean[] occupied = new boolean[horses.size()];
+        for (int i = 0; i < horses.size(); i++) {
+            Horse horse = horses.get(i);
+            if (horse == null) continue;
+            confidence[i] = horse.getConfidence();
+            occupied[i] = true;
+        }
+        return calculate(confidence, occupied, raceLength);
+    }
+
+    /**
+     * Estimates the win probability of every lane.
+     *
+     * @param confidence confidence of the horse in each lane
+     * @param occupied true for every lane that has a horse in it
+     * @param raceLength the distance a horse must travel to win
+     * @return the estimated odds of the field
+     */
+    public OddsEstimate calculate(double[] confidence, boolean[] occupied, int raceLength) {
+        long deadline = System.nanoTime() + latencyBudgetMillis * 1_000_000L;
+        SimulationTask task = new SimulationTask(confidence, occupied, raceLength, maxSimulations, deadline, random.split());
+        double[] totals = pool.invoke(task);
+
+        int lanes = confidence.length;
+        double[] winShareSum = new double[lanes];
+        double[] winShareSquares = new double[lanes];
+        System.arraycopy(totals, 0, winShareSum, 0, lanes);
+        System.arraycopy(totals, lanes, winShareSquares, 0, lanes);
+        return new OddsEstimate(winShareSum, winShareSquares, (long) totals[2 * lanes], (long) totals[2 * lanes + 1]);
+    }
+
+    /**
+     * Sets the longest time a field may be priced for.
+     *
+     * @param latencyBudgetMillis the budget in milliseconds (must be positive)
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public void setLatencyBudgetMillis(long latencyBudgetMillis) {
+        if (latencyBudgetMillis <= 0) {
+            throw new IllegalArgumentException("Latency budget must be positive");
+        }
+        this.latencyBudgetMillis = latencyBudgetMillis;
+    }
+
+    /**
+     * Sets the most races simulated for one field.
+     *
+     * @param maxSimulations the number of races (must be positive)
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public void setMaxSimulations(int maxSimulations) {
+        if (maxSimulations <= 0) {
+            throw new IllegalArgumentException("Number of simulations must be positive");
+        }
+        this.maxSimulations = maxSimulations;
+    }
+
+    /** @return the longest time in milliseconds a field may be priced for */
+    public long getLatencyBudgetMillis() { return latencyBudgetMillis; }
+
+    /** @return the most races simulated for one field */
+    public int getMaxSimulations() { return maxSimulations; }
+
+    /**
+     * Fork/join task simulating a number of races.
+     * Each task owns its random stream and splits a new one off for every subtask.
+     * Returns the win share sums of every lane, then their squares,
+     * then the number of races without a winner and the number of races run.
+     */
+    private static class SimulationTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] confidence;
+        private final boolean[] occupied;
+        private final int raceLength;
+        private final int races;
+        private final long deadline;
+        private final SplittableRandom stream;
+
+        SimulationTask(double[] confidence, boolean[] occupied, int raceLength, int races, long deadline, SplittableRandom stream) {
+            this.confidence = confidence;
+            this.occupied = occupied;
+            this.raceLength = raceLength;
+            this.races = races;
+            this.deadline = deadline;
+            this.stream = stream;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (races <= BATCH_SIZE) {
+                return simulateBatch();
+            }
+            int half = races / 2;
+            SimulationTask left = new SimulationTask(confidence, occupied, raceLength, half, deadline, stream.split());
+            SimulationTask right = new SimulationTask(confidence, occupied, raceLength, races - half, deadline, stream);
+            left.fork();
+            double[] totals = right.compute();
+            double[] leftTotals = left.join();
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += leftTotals[i];
+            }
+            return totals;
+        }
+
+        /**
+         * Simulates this task's races one after another on a single engine.
+         *
+         * @return the totals of the batch
+         */
+        private double[] simulateBatch() {
+            int lanes = confidence.length;
+            double[] totals = new double[2 * lanes + 2];
+            if (System.nanoTime() > deadline) {
+                return totals;
+            }
+            RaceEngine engine = new RaceEngine(confidence, occupied, raceLength);
+            engine.setRandom(stream);
+            int race = 0;
+            for (; race < races; race++) {
+                if ((race & 15) == 0 && System.nanoTime() > deadline) break;
+                engine.simulateFastest();
+                int winners = 0;
+                for (int lane = 0; lane < lanes; lane++) {
+                    if (engine.isWinner(lane)) winners++;
+                }
+                if (winners == 0) {
+                    totals[2 * lanes]++;
+                } else {
+                    double share = 1.0 / winners;
+                    for (int lane = 0; lane < lanes; lane++) {
+                        if (!engine.isWinner(lane)) continue;
+                        totals[lane] += share;
+                        totals[lanes + lane] += share * share;
+                    }
+                }
+            }
+            totals[2 * lanes + 1] = race;
+            return totals;
+        }
+    }
+}
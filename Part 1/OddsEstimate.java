@@ -0,0 +1,74 @@
+/**
+ * Win probabilities for every lane of a field, as estimated by the OddsCalculator.
+ * Each probability comes with a 95% confidence interval.
+ * When horses cross the line on the same move the win is shared between them,
+ * so a dead heat between two horses counts half a win for each.
+ * Lanes are 0-based indexes into the field.
+ *
+ * @author Peter Bojthe
+ * @version 20/04/25
+ */
+public class OddsEstimate {
+    private static final double Z_95 = 1.96;   // Normal quantile for a 95% interval
+
+    private final double[] winShareSum;        // Sum of the win share of each lane over all simulations
+    private final double[] winShareSquares;    // Sum of the squared win share of each lane
+    private final long noWinnerRaces;          // Races in which every horse fell
+    private final long simulations;            // Number of races simulated
+
+    /**
+     * Constructor for an estimate built from simulation totals.
+     *
+     * @param winShareSum sum of the win share of each lane
+     * @param winShareSquares sum of the squared win share of each lane
+     * @param noWinnerRaces number of races in which every horse fell
+     * @param simulations number of races simulated
+     */
+    public OddsEstimate(double[] winShareSum, double[] winShareSquares, long noWinnerRaces, long simulations) {
+        this.winShareSum = winShareSum.clone();
+        this.winShareSquares = winShareSquares.clone();
+        this.noWinnerRaces = noWinnerRaces;
+        this.simulations = simulations;
+    }
+
+    /** @return the estimated probability that the horse in the lane wins, @param lane the 0-based lane index */
+    public double getWinProbability(int lane) {
+        if (simulations == 0) return 0.0;
+        return winShareSum[lane] / simulations;
+    }
+
+    /** @return the lower end of the 95% interval for the lane, @param lane the 0-based lane index */
+    public double getLowerBound(int lane) {
+        return Math.max(0.0, getWinProbability(lane) - getMarginOfError(lane));
+    }
+
+    /** @return the upper end of the 95% interval for the lane, @param lane the 0-based lane index */
+    public double getUpperBound(int lane) {
+        return Math.min(1.0, getWinProbability(lane) + getMarginOfError(lane));
+    }
+
+    /**
+     * Half width of the 95% confidence interval of a lane's win probability.
+     *
+     * @param lane the 0-based lane index
+     * @return the margin of error of the estimate
+     */
+    public double getMarginOfError(int lane) {
+        if (simulations < 2) return 1.0;
+        double mean = getWinProbability(lane);
+        double variance = (winShareSquares[lane] - simulations * mean * mean) / (simulations - 1);
+        return Z_95 * Math.sqrt(Math.max(0.0, variance) / simulations);
+    }
+
+    /** @return the estimated probability that every horse falls */
+    public double getNoWinnerProbability() {
+        if (simulations == 0) return 0.0;
+        return (double) noWinnerRaces / simulations;
+    }
+
+    /** @return the number of races simulated */
+    public long getSimulations() { return simulations; }
+
+    /** @return the number of lanes in the field */
+    public int getLanes() { return winShareSum.length; }
+}
@@ -1,7 +1,8 @@
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 
 /**
  * A three-horse race, each horse running in its own lane
@@ -16,8 +17,54 @@ public class Race extends UserInput {
     private int raceLength;
     private String raceCondition = "Sunny";
 
-    static ArrayList<Horse> horses = new ArrayList<>();
-    static ArrayList<String> uniqueHorseNames = new ArrayList<>();
+    // Every race owns its field, so any number of races can run side by side
+    private final ArrayList<Horse> horses = new ArrayList<>();
+    private final ArrayList<String> uniqueHorseNames = new ArrayList<>();
+
+    // Prices bets from the exact odds of the field
+    private final ExactOddsSolver oddsSolver = new ExactOddsSolver();
+
+    private final RaceRandom raceRandom;   // Source of the seed of every race
+    private RandomGenerator random;        // Stream of the current race, drawn from its seed
+    private long raceSeed;                 // Seed of the current race, replays the race
+    private RaceJournal journal;           // Where finished races are journalled, null for none
+    private HorseRatings ratings;          // Rated from every finished race and shown when betting, null for none
+
+    /**
+     * Constructor for a race with a random master seed.
+     */
+    public Race() {
+        this(new RaceRandom());
+    }
+
+    /**
+     * Constructor for a race whose random decisions all come from the given source.
+     *
+     * @param raceRandom source of the seed of every race
+     */
+    public Race(RaceRandom raceRandom) {
+        this(raceRandom, new BettingSystem());
+    }
+
+    /**
+     * Constructor for a race with its own source of random decisions and its own wallet.
+     *
+     * @param raceRandom source of the seed of every race
+     * @param wallet the balance bets on this race are placed from
+     */
+    public Race(RaceRandom raceRandom, BettingSystem wallet) {
+        super(wallet);
+        this.raceRandom = raceRandom;
+        nextRaceStream();
+    }
+
+    /**
+     * Draws the seed of the next race and builds its random stream.
+     */
+    private void nextRaceStream() {
+        raceSeed = raceRandom.nextRaceSeed();
+        random = RaceRandom.streamFor(raceSeed);
+    }
 
     /**
      * Starts the race simulation.
@@ -42,31 +89,41 @@ public class Race extends UserInput {
         while (!finishedSimulation) {
             // Before Race;
             try {
-                System.out.print("\nRace will start soon...");
+                System.out.print("\nRace will start soon... (race seed "+raceSeed+")");
                 TimeUnit.MILLISECONDS.sleep(2000);
             } catch (InterruptedException e) {}
 
             // This is the Race
             long startTime = System.nanoTime(); // Start of race timer
+            RaceEngine engine = RaceEngine.forHorses(horses, raceLength);
+            engine.setRandom(random);
+            Leaderboard board = engine.getLeaderboard();
+            TerminalRenderer renderer = new TerminalRenderer(raceLength, horses.size(), 80);
             while (!finishedRace) {
-                moveAllHorses();
-                printRace();
-                finishedRace = raceFinished();
+                finishedRace = engine.tick();
+                renderer.render(horses, board);
 
                 // Wait bwtween horse moves
                 try {
                     TimeUnit.MILLISECONDS.sleep(100);
                 } catch (InterruptedException e) {}
             } // END RACE
+            renderer.finish();
 
             long endTime = System.nanoTime(); // End of race timer
             long raceDurationNano = endTime - startTime; 
             double raceDurationSeconds = raceDurationNano / 1_000_000_000.0; 
             raceDurationSeconds = Math.round(raceDurationSeconds*100.0)/100.0;
             System.out.println("The race was completed in "+raceDurationSeconds+" seconds.");
+            System.out.println(renderer.report());
 
             // End of race PROCEDURES
+            showFinishingOrder(board);
             showWinner();
+            RaceResult result = engine.getResult();
+            journalRace(result, true);
+            rateRace(result);
+            engine.detach(horses);
             resetHorsesPosition();
             showRaceDetails();
             removeAllBets();
@@ -79,10 +136,147 @@ public class Race extends UserInput {
                     changeRaceDetails();
                 }
                 System.out.println("\n\nA new race will begin...");
+                nextRaceStream();
                 raceConditions();
                 askToPlaceBet();
             }
         }
+        HorseDetailsFileHandling.flushRaceResults();
+    }
+
+    /**
+     * Puts a horse into a new lane after the last one, for races set up without prompts.
+     *
+     * @param horse the horse to add, its name must not be taken
+     * @throws IllegalArgumentException if the name is taken or the 8 lane limit is reached
+     */
+    public void addHorse(Horse horse) {
+        if (horses.size() >= 8) {
+            throw new IllegalArgumentException("8 lane limit reached");
+        }
+        if (uniqueHorseNames.contains(horse.getName())) {
+            throw new IllegalArgumentException("Horse name taken: "+horse.getName());
+        }
+        horses.add(horse);
+        uniqueHorseNames.add(horse.getName());
+        horse.setLaneNumber(horses.size());
+    }
+
+    /**
+     * Sets the length of the race, for races set up without prompts.
+     *
+     * @param raceLength the distance a horse must travel to win
+     * @throws IllegalArgumentException if the length is not positive
+     */
+    public void setRaceLength(int raceLength) {
+        if (raceLength <= 0) {
+            throw new IllegalArgumentException("Race length must be positive");
+        }
+        this.raceLength = raceLength;
+    }
+
+    /**
+     * Places a bet from this race's wallet on the horse in a lane,
+     * priced from the exact odds of the field.
+     *
+     * @param lane the lane number of the horse (1 to the number of lanes)
+     * @param bet the amount of money put on the horse
+     * @throws IllegalArgumentException if the lane is empty or the bet is not covered by the balance
+     */
+    public void betOn(int lane, double bet) {
+        Horse horse = horses.get(lane-1);
+        if (horse == null) {
+            throw new IllegalArgumentException("Lane "+lane+" is empty");
+        }
+        if (bet <= 0.0 || bet > getWallet().getBalance()) {
+            throw new IllegalArgumentException("Bet must be more than £0 and no more than the balance");
+        }
+        getWallet().removeLoss(bet);
+        ExactOdds odds = oddsSolver.solve(horses, raceLength);
+        horse.setWinnings(BettingSystem.calculateWinnings(odds, lane-1, bet));
+        horse.setBetPlacedOn(true);
+    }
+
+    /**
+     * Runs the next race with no printing, prompts or waiting between moves,
+     * jumping between events when the field is slow.
+     * Horses are settled as they are after a race on screen, except that their
+     * details are not written to the file, and bets are paid into this race's wallet.
+     *
+     * @return the outcome of the race
+     */
+    public RaceResult runSilently() {
+        resetHorsesPosition();
+        RaceEngine engine = RaceEngine.forHorses(horses, raceLength);
+        engine.setRandom(random);
+        engine.simulateFastest();
+        RaceResult result = engine.getResult();
+        for (Horse horse : horses) {
+            if (horse == null) continue;
+            settleHorse(horse);
+        }
+        journalRace(result, false);
+        rateRace(result);
+        engine.detach(horses);
+        resetHorsesPosition();
+        removeAllBets();
+        nextRaceStream();
+        return result;
+    }
+
+    /**
+     * Sets the journal every finished race of this race is written to.
+     *
+     * @param journal the journal, null to journal nothing
+     */
+    public void setJournal(RaceJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the ratings every finished race of this race updates, and bets are shown against.
+     *
+     * @param ratings the ratings, null to rate nothing
+     */
+    public void setRatings(HorseRatings ratings) {
+        this.ratings = ratings;
+    }
+
+    /**
+     * Updates the ratings of the field from a finished race, if there are ratings.
+     *
+     * @param result the outcome of the race
+     */
+    private void rateRace(RaceResult result) {
+        if (ratings != null) {
+            ratings.record(result, horses);
+        }
+    }
+
+    /**
+     * Queues a finished race whose horses have been settled for the journal, if there is one.
+     *
+     * @param result the outcome of the race
+     * @param saved true if the horses' stats were written to the file, false for a silent race
+     */
+    private void journalRace(RaceResult result, boolean saved) {
+        if (journal != null) {
+            journal.append(RaceJournal.Entry.of(result, horses, raceCondition, saved));
+        }
+    }
+
+    /**
+     * @return the horses in lane order, null entries are empty lanes
+     */
+    public List<Horse> getHorses() {
+        return new ArrayList<>(horses);
+    }
+
+    /**
+     * @return the seed of the next race, which replays it
+     */
+    public long getRaceSeed() {
+        return raceSeed;
     }
 
     /**
@@ -123,13 +317,22 @@ public class Race extends UserInput {
      * 
      */
     private void checkWinnings() {
-        System.out.println("The balance: "+BettingSystem.balance);
+        System.out.println("The balance: "+getWallet().getBalance());
         double usersBet = placeBet("How much money are you putting on this race: ");
         if (usersBet == 0.0) return;
-        for (Horse horse : horses) {
+        ExactOdds odds = oddsSolver.solve(horses, raceLength);
+        double[] form = ratings == null ? null : ratings.getWinProbabilities(horses);
+        for (int lane = 0; lane < horses.size(); lane++) {
+            Horse horse = horses.get(lane);
             if (horse == null) continue;
-            horse.setWinnings(BettingSystem.calculateWinnings(horse, usersBet));
+            horse.setWinnings(BettingSystem.calculateWinnings(odds, lane, usersBet));
             System.out.println("If "+horse.getName()+" wins then the payout will be £"+horse.getWinnings());
+            System.out.printf("    (chance of winning %.1f%%, of a top %d finish %.1f%%)%n", odds.getWinProbability(lane)*100, odds.getMaxPlaces(), odds.getPlaceProbability(lane, odds.getMaxPlaces())*100);
+            if (form != null) {
+                System.out.printf("    (rated %.1f ± %.1f over %d races, %.1f%% to win on form, which would pay £%.2f)%n",
+                    ratings.getRating(horse.getName()), ratings.getDeviation(horse.getName()), ratings.getRaces(horse.getName()),
+                    form[lane]*100, BettingSystem.calculateWinnings(form, lane, usersBet));
+            }
         }
         chooseHorseToPlaceBetOn();
     }
@@ -147,8 +350,6 @@ public class Race extends UserInput {
      * weather during race race conditions affects horse' confidence
      */
     private void raceConditions() {
-        Random random = new Random();
-
         String[] weatherConditions = {"Raining", "Wet", "Sunny", "Snow", "Muddy"};
         double[] weatherConditionsEffect = {0.75, 0.85, 1, 0.50, 0.50};
 
@@ -206,9 +407,10 @@ public class Race extends UserInput {
 
         int added = 0;
         while (added < numberOfRandomHorses && horses.size() < 8) {
-            Horse horse = generateRandomHorse();
-            horses.add(Horse.horseCounter-1, horse);
-            uniqueHorseNames.add(Horse.horseCounter-1, horse.getName());
+            int lane = horseLanes();
+            Horse horse = generateRandomHorse(lane+1);
+            horses.add(lane, horse);
+            uniqueHorseNames.add(lane, horse.getName());
             added++;
         }
         if (horses.size() == 8 && added != numberOfRandomHorses) {
@@ -219,15 +421,16 @@ public class Race extends UserInput {
 
     /**
      * Generates a random horse with a randomly generated name and character
+     * @param lane the lane number the horse will run in
      * @return A new Horse object with random attributes
      */
-    private Horse generateRandomHorse() {
+    private Horse generateRandomHorse(int lane) {
         String name = generateRandomHorseName();
         while (usedName(name)) {
             name = generateRandomHorseName();
         }
         char character = generateRandomAlphanumericChar();
-        Horse randomHorse = new Horse(name, 0.25, character, 0, 0, 0.0, Horse.horseCounter+1);
+        Horse randomHorse = new Horse(name, 0.25, character, 0, 0, 0.0, lane);
         System.out.println("\n\nRandom Horse: ");
         System.out.println("Horse Name: "+randomHorse.getName()+",\nHorse Symbol: "+randomHorse.getSymbol());
         
@@ -253,7 +456,6 @@ public class Race extends UserInput {
             "sun", "dream", "whisper", "shadow", "flash"
         };
         
-        Random random = new Random();
         String prefix = prefixes[random.nextInt(prefixes.length)];
         String suffix = suffixes[random.nextInt(suffixes.length)];
         
@@ -265,7 +467,6 @@ public class Race extends UserInput {
      * @return A random character
      */
     private char generateRandomAlphanumericChar() {
-        Random random = new Random();
         int choice = random.nextInt(3); // 0, 1, 2
 
         return (char) (switch (choice) {
@@ -294,37 +495,69 @@ public class Race extends UserInput {
     }
 
     /**
-     * Ask for a line in the file
+     * Ask for a line in the file, paging through the saved horses
      * Create a horse with those details
      * 
      * @throws IOException I/O Error
      */
     private void askUserToChooseHorseFromFile() throws IOException {
-        int numberOfSavedHorses = HorseDetailsFileHandling.countFileLines();
-        if (numberOfSavedHorses >=1 ) {
-            int input = inputNumber("\nEnter the row number of the horse you want to use: ");
-            if (input <= 0 || input > numberOfSavedHorses) {
-                System.out.println("\nInvalid choice of file rows.");
-                input = inputNumber("\nEnter the row number of the horse you want to use: ");
+        HorseTablePager table = HorseDetailsFileHandling.openTable();
+        int page = 0;
+        while (table.getRowCount() >= 1) {
+            String command = inputString("\nRow number of the horse to use, [n]ext / [p]revious page, [g <page>] go to page, [s <name>] search, [q] none: ").trim();
+            if (validateNumber(command)) {
+                int input = Integer.parseInt(command);
+                if (input <= 0 || input > table.getRowCount()) {
+                    System.out.println("\nInvalid choice of file rows.");
+                    continue;
+                }
+                int lane = horseLanes();
+                Horse horse = HorseDetailsFileHandling.loadHorse(input, lane+1);
+                horses.add(lane, horse);
+                uniqueHorseNames.add(lane, horse.getName());
+                System.out.println("\nThis horse will be added to lane "+(lane+1));
+                return;
+            }
+            String argument = command.length() > 1 ? command.substring(1).trim() : "";
+            switch (command.isEmpty() ? ' ' : Character.toLowerCase(command.charAt(0))) {
+                case 'n' -> page = table.printPage(page + 1);
+                case 'p' -> page = table.printPage(page - 1);
+                case 'g' -> {
+                    if (validateNumber(argument)) {
+                        page = table.printPage(Integer.parseInt(argument) - 1);
+                    } else {
+                        System.out.println("Pages are 1 to "+table.getPageCount()+".");
+                    }
+                }
+                case 's' -> table.printSearch(argument);
+                case 'q' -> { return; }
+                default -> System.out.println("Unknown command.");
             }
-            String[] horseDetails = HorseDetailsFileHandling.getHorseDetails(input);
-            Horse horse = new Horse(horseDetails[0], horseDetails[1], horseDetails[2], horseDetails[3], horseDetails[4], horseDetails[5], Horse.horseCounter+1);
-            horses.add(Horse.horseCounter-1, horse);
-            uniqueHorseNames.add(Horse.horseCounter-1, horse.getName());
-            System.out.println("\nThis horse will be added to lane "+Horse.horseCounter);
         }
     }
 
 
     /**
-     * Print the formated table for all the horses
-     * which are saved in files
+     * Print the first page of the formated table
+     * of the horses which are saved in files
      */
     private void showHorseDetailsFromFile() {
         System.out.println("\n\n\nSaved Horses: ");
         HorseDetailsFileHandling.printFormattedTable();
     }
 
+    /**
+     * Print the last page of saved horses,
+     * where a newly saved horse is shown
+     * 
+     * @throws IOException I/O Error
+     */
+    private void showLastSavedHorses() throws IOException {
+        System.out.println("\n\n\nSaved Horses: ");
+        HorseTablePager table = HorseDetailsFileHandling.openTable();
+        table.printPage(table.getPageCount() - 1);
+    }
+
     /*
      * Save a horse details
      * User choice which one to save
@@ -427,7 +660,6 @@ public class Race extends UserInput {
                 Horse horse = createHorse(input);
                 horses.set(input-1, horse);
                 uniqueHorseNames.set(input-1, horse.getName());
-                Horse.horseCounter++;
                 done = askYesNo("Stop adding horses yes [1], no [0]: "); 
             }
         }
@@ -458,7 +690,6 @@ public class Race extends UserInput {
             } else {
                 horses.set(input-1, null);
                 uniqueHorseNames.set(input-1, null);
-                Horse.horseCounter--;
                 done = askYesNo("\nStop removing horses yes [1], no [0]: ");
             }
         }
@@ -496,9 +727,6 @@ public class Race extends UserInput {
             if (input-1 > horses.size()) {
                 System.out.println("Invalid Choice of Lane");
             } else {
-                if (horses.get(input-1) != null) {
-                    Horse.horseCounter--;
-                }
                 uniqueHorseNames.remove(input-1);
                 horses.remove(input-1);
                 if (horses.size() == 2) {
@@ -534,7 +762,7 @@ public class Race extends UserInput {
         }
         while (askYesNo("\n\nWould you like to save any of the horse details yes [1], no [0]: ")) {
             saveHorse();
-            showHorseDetailsFromFile();
+            showLastSavedHorses();
         }
         if (askYesNo("\n\nWould you like to change the length of the race yes [1], no [0]: ")) {
              raceLength = chooseTrackLength("Length of Race [25m - 100m]: ");
@@ -547,11 +775,15 @@ public class Race extends UserInput {
     private void showRaceDetails() {
         System.out.println("\nCurrent length of the race: "+raceLength);
         System.out.println("Current number of lanes: "+horses.size());
-        System.out.println("Current number of horses: "+Horse.horseCounter+"\n\n");
+        System.out.println("Current number of horses: "+horseLanes()+"\n\n");
         for (Horse horse : horses) {
             if (horse == null) continue;
             System.out.print(horse.getName()+" is in lane "+horse.getLaneNumber());
-            System.out.println(", Confidence: "+horse.getConfidence());
+            System.out.print(", Confidence: "+horse.getConfidence());
+            if (ratings != null) {
+                System.out.printf(", Rating: %.1f ± %.1f", ratings.getRating(horse.getName()), ratings.getDeviation(horse.getName()));
+            }
+            System.out.println();
         }
         System.out.println("\n");
     }
@@ -582,7 +814,7 @@ public class Race extends UserInput {
             uniqueHorseNames.add(numberOfLanes, null);
         }
         int inputHorses = chooseNumberOfHorsesGivenNumberOfLanes("How many horses would you like: ", inputLanes);
-        inputHorses = inputHorses - Horse.horseCounter;
+        inputHorses = inputHorses - horseLanes();
         for (int numberOfHorses = 0; numberOfHorses < inputHorses; numberOfHorses++) {
             int lane = pickOneOfTheLanes("\nChoose a lane to add this horse to [1 - "+inputLanes+"]: ", inputLanes);
             while (horses.get(lane-1) != null) {
@@ -595,43 +827,68 @@ public class Race extends UserInput {
         }
     }
 
+    /**
+     * Displays the standing horses in the order they finished, read from the race's leaderboard.
+     *
+     * @param board the running order of the race that has just finished
+     */
+    private void showFinishingOrder(Leaderboard board) {
+        int[] order = new int[board.size()];
+        int standing = board.top(order.length, order);
+        if (standing == 0) {
+            System.out.println("\nAll horses fell, there is no finishing order.");
+            return;
+        }
+        System.out.println("\nFinishing order:");
+        for (int i = 0; i < standing; i++) {
+            Horse horse = horses.get(order[i]);
+            System.out.printf("  %-5s %s (lane %d, distance %d)%n", Leaderboard.ordinal(i + 1), horse.getName(), horse.getLaneNumber(), board.getDistance(order[i]));
+        }
+    }
+
     /**
      * Displays the winner of the race and adjusts the confidence of the horses.
      * And adjust the total races, total wins, and win rate of the horse
      * Updates the user balance if they have placed a bet on the race
+     * The new stats of saved horses are written to the file together, in one rewrite
      */
     private void showWinner() throws IOException {
         for (Horse horse : horses) {
             if (horse == null) continue;
-            horse.setTotalRaces(horse.getTotalRaces()+1);
-            if (raceWonBy(horse)) {
+            if (settleHorse(horse)) {
                 System.out.println("\n\n"+horse.getName()+" has won the Race!");
-                horse.setConfidence(horse.getConfidence()*1.1);
-                horse.setTotalWins(horse.getTotalWins()+1);
                 if (horse.isBetPlacedOn()) {
-                    BettingSystem.balance += horse.getWinnings();
-                    System.out.println("Current balance: "+BettingSystem.balance);
-                }
-            } else {
-                horse.setConfidence(horse.getConfidence()*0.9);
-                if (horse.isBetPlacedOn()) {
-                    System.out.println("The horse you placed the bet on has lost");
-                    System.out.println("Current balance: "+BettingSystem.balance);
+                    System.out.println("Current balance: "+getWallet().getBalance());
                 }
+            } else if (horse.isBetPlacedOn()) {
+                System.out.println("The horse you placed the bet on has lost");
+                System.out.println("Current balance: "+getWallet().getBalance());
             }
-            horse.setWinRate(horse.getTotalWins(), horse.getTotalRaces());
-            HorseDetailsFileHandling.updateHorseInFile(horse);
         }
+        HorseDetailsFileHandling.recordRaceResults(horses);
     }
 
     /**
-     * Moves all horses in the race forward.
+     * Adjusts the confidence, total races, total wins and win rate of a horse
+     * after a race, and pays out the bet on it if it won.
+     *
+     * @param horse the horse to settle
+     * @return true if the horse won the race
      */
-    private void moveAllHorses() {
-        for (Horse horse : horses) {
-            if (horse == null) continue;
-            moveHorse(horse);
+    private boolean settleHorse(Horse horse) {
+        horse.setTotalRaces(horse.getTotalRaces()+1);
+        boolean won = raceWonBy(horse);
+        if (won) {
+            horse.setConfidence(horse.getConfidence()*1.1);
+            horse.setTotalWins(horse.getTotalWins()+1);
+            if (horse.isBetPlacedOn()) {
+                getWallet().addWinnings(horse.getWinnings());
+            }
+        } else {
+            horse.setConfidence(horse.getConfidence()*0.9);
         }
+        horse.setWinRate(horse.getTotalWins(), horse.getTotalRaces());
+        return won;
     }
 
     /**
@@ -644,42 +901,6 @@ public class Race extends UserInput {
         }
     }
 
-    /**
-     * Checks if the race is finished.
-     * 
-     * @return true if a horse has won or all horses have fallen, false otherwise.
-     */
-    private boolean raceFinished() {
-        boolean allFell = true;
-        for (Horse horse : horses) {
-            if (horse == null) continue;
-            if (raceWonBy(horse)) {
-                return true;
-            }
-            if (!horse.hasFallen()) {
-                allFell = false;
-            }
-        }
-        return allFell;
-    }
-
-    /**
-     * Moves a horse forward or makes it fall based on its confidence.
-     * 
-     * @param theHorse the horse to be moved.
-     */
-    private void moveHorse(Horse theHorse) {
-        if (!theHorse.hasFallen()) {
-            if (Math.random() < theHorse.getConfidence()) {
-                theHorse.moveForward();
-            }
-
-            if (Math.random() < (0.1 * theHorse.getConfidence() * theHorse.getConfidence())) {
-                theHorse.fall();
-            }
-        }
-    }
-
     /**
      * Determines if a horse has won the race.
      * 
@@ -689,69 +910,4 @@ public class Race extends UserInput {
     private boolean raceWonBy(Horse theHorse) {
         return theHorse.getDistanceTravelled() == raceLength;
     }
-
-    /**
-     * Prints the current state of the race.
-     */
-    private void printRace() {
-        System.out.print('\u000C');
-        multiplePrint('=', raceLength + 3);
-        System.out.println();
-        printAllLanes();
-        multiplePrint('=', raceLength + 3);
-        System.out.println();    
-    }
-
-    /**
-     * Prints all lanes in the race.
-     */
-    private void printAllLanes() {
-        for (Horse horse : horses) {
-            printLane(horse);
-            System.out.println();
-        }
-    }
-
-    /**
-     * Prints a single lane with the horse's current position.
-     * 
-     * @param theHorse the horse in the lane to print.
-     */
-    private void printLane(Horse theHorse) {
-        if (theHorse == null) {
-            System.out.print('|');
-            multiplePrint(' ', raceLength+1);
-            System.out.print('|');
-            System.out.print(" Empty Lane");
-        } else {
-            int spacesBefore = theHorse.getDistanceTravelled();
-            int spacesAfter = raceLength - theHorse.getDistanceTravelled();
-
-            System.out.print('|');
-            multiplePrint(' ', spacesBefore);
-
-            if (theHorse.hasFallen()) {
-                System.out.print('\u2322');
-            } else {
-                System.out.print(theHorse.getSymbol());
-            }
-
-            multiplePrint(' ', spacesAfter);
-            System.out.print('|');
-            System.out.print(" Lane: "+theHorse.getLaneNumber());
-            System.out.print(", "+theHorse.getName()+" (Current Confidence "+theHorse.getConfidence()+")");
-        }
-    }
-
-    /**
-     * Prints a character multiple times.
-     * 
-     * @param aChar the character to print.
-     * @param times the number of times to print the character.
-     */
-    private void multiplePrint(char aChar, int times) {
-        for (int i = 0; i < times; i++) {
-            System.out.print(aChar);
-        }
-    }
-}
\ No newline at end of file
+}
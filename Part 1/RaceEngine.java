@@ -0,0 +1,391 @@
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Headless race simulation.
+ * Runs a field of horses down a straight track with no printing, no prompts and
+ * no waiting between moves, so a race runs as fast as the machine allows.
+ * Every lane lives in a RaceState, so a move runs over primitive arrays and the
+ * engine can be used for batch simulations without any Horse objects at all.
+ * The running order is kept in a Leaderboard built on the first call to
+ * getLeaderboard() and updated by every move after it, so batch simulations that
+ * never ask for positions do not pay for them.
+ * Lanes are 0-based indexes into the field, empty lanes are skipped.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class RaceEngine {
+    private final int raceLength;          // Distance a horse must travel to win
+    private final RaceState state;         // Position, confidence and fallen flag of every lane
+    private RandomGenerator random;        // Stream every move and fall of the race is drawn from
+    private int ticks;                     // Number of moves made so far
+    private boolean finished;              // True once a horse has won or all have fallen
+    private Leaderboard board;             // Running order of the standing horses, null until asked for
+
+    // Event-skipping simulation, allocated once per engine and reused by every race
+    private final int[] heap;              // Lanes with a pending event, a binary min-heap on nextEvent
+    private final long[] nextEvent;        // Move on which each lane next advances or falls
+    private final double[] waitScale;      // -1 / log of each lane's chance of a move without any event
+    private final double[] advanceOnly;    // Chance an event is an advance without a fall
+    private final double[] advance;        // Chance an event includes an advance
+
+    /**
+     * Constructor for a race over the given lanes.
+     *
+     * @param confidence confidence of the horse in each lane (0.0 to 1.0)
+     * @param occupied true for every lane that has a horse in it
+     * @param raceLength the distance a horse must travel to win
+     */
+    public RaceEngine(double[] confidence, boolean[] occupied, int raceLength) {
+        this(new RaceState(confidence, occupied), raceLength);
+    }
+
+    /**
+     * Constructor for a race over an existing race state.
+     *
+     * @param state the lanes of the race
+     * @param raceLength the distance a horse must travel to win
+     */
+    public RaceEngine(RaceState state, int raceLength) {
+        if (raceLength <= 0) {
+            throw new IllegalArgumentException("Race length must be positive");
+        }
+        this.raceLength = raceLength;
+        this.state = state;
+        this.random = new SplittableRandom();
+        int lanes = state.getLanes();
+        this.heap = new int[lanes];
+        this.nextEvent = new long[lanes];
+        this.waitScale = new double[lanes];
+        this.advanceOnly = new double[lanes];
+        this.advance = new double[lanes];
+    }
+
+    /**
+     * Creates an engine for a field of horses, null entries are empty lanes.
+     * Each horse is attached to its lane of the engine's race state,
+     * so its position can be read from the horse while the race runs.
+     *
+     * @param horses the horses in lane order
+     * @param raceLength the distance a horse must travel to win
+     * @return a new engine with every horse at the start
+     */
+    public static RaceEngine forHorses(List<Horse> horses, int raceLength) {
+        RaceState state = new RaceState(horses.size());
+        for (int lane = 0; lane < horses.size(); lane++) {
+            Horse horse = horses.get(lane);
+            if (horse == null) continue;
+            horse.attachTo(state, lane);
+        }
+        return new RaceEngine(state, raceLength);
+    }
+
+    /**
+     * Brings every horse back to the start so the same field can race again.
+     */
+    public void reset() {
+        state.reset();
+        ticks = 0;
+        finished = false;
+        if (board != null) fillBoard();
+    }
+
+    /**
+     * Moves every horse once.
+     *
+     * @return true if the race is finished after this move
+     */
+    public boolean tick() {
+        if (finished) return true;
+        double[] confidence = state.confidence;
+        int[] distance = state.distance;
+        long[] occupied = state.occupied;
+        long[] fallen = state.fallen;
+        boolean someoneWon = false;
+        for (int word = 0; word < occupied.length; word++) {
+            long running = occupied[word] & ~fallen[word];
+            while (running != 0) {
+                int bit = Long.numberOfTrailingZeros(running);
+                running &= running - 1;
+                int lane = (word << 6) + bit;
+                double laneConfidence = confidence[lane];
+                if (random.nextDouble() < laneConfidence) {
+                    if (++distance[lane] == raceLength) someoneWon = true;
+                    if (board != null) board.update(lane, distance[lane]);
+                }
+                if (random.nextDouble() < (0.1 * laneConfidence * laneConfidence)) {
+                    fallen[word] |= 1L << bit;
+                    if (board != null) board.remove(lane);
+                }
+            }
+        }
+        ticks++;
+        finished = someoneWon || !state.anyStanding();
+        return finished;
+    }
+
+    /**
+     * Runs the race from the start until it is finished.
+     * Does not allocate, use getResult() to read the outcome.
+     *
+     * @return the number of moves the race took
+     */
+    public int simulate() {
+        reset();
+        while (!tick()) {
+            // keep moving until a horse wins or all have fallen
+        }
+        return ticks;
+    }
+
+    /**
+     * Runs the race from the start until it is finished, jumping straight from one
+     * change of the race to the next instead of stepping through every move.
+     * On each move a standing horse advances with probability c and falls with
+     * probability f = 0.1 * c * c, so the wait until its next advance or fall is
+     * geometric with success probability q = 1 - (1 - c)(1 - f). The wait is sampled
+     * once per event and the lanes are kept in a heap ordered by their next event,
+     * so a slow horse costs one draw per step it takes rather than one per move.
+     * Every event on the finishing move is applied, so dead heats come out as they
+     * do from tick(). The outcome has the same distribution as simulate(), but the
+     * random stream is read differently, so a seed does not replay the same race.
+     * Does not allocate, use getResult() to read the outcome.
+     *
+     * @return the number of moves the race took
+     * @throws IllegalStateException if every standing horse has zero confidence, so the race can never end
+     */
+    public int simulateSkipping() {
+        reset();
+        double[] confidence = state.confidence;
+        int[] distance = state.distance;
+        int size = 0;
+        for (int lane = 0; lane < heap.length; lane++) {
+            if (!state.isOccupied(lane)) continue;
+            double c = confidence[lane];
+            double f = 0.1 * c * c;
+            double q = 1.0 - (1.0 - c) * (1.0 - f);
+            if (q <= 0.0) continue;
+            waitScale[lane] = -1.0 / Math.log1p(-q);
+            advanceOnly[lane] = c * (1.0 - f) / q;
+            advance[lane] = c / q;
+            nextEvent[lane] = nextWait(lane);
+            size = siftUp(size, lane);
+        }
+
+        boolean someoneWon = false;
+        long now = 0;
+        while (size > 0 && !someoneWon) {
+            now = nextEvent[heap[0]];
+            while (size > 0 && nextEvent[heap[0]] == now) {
+                int lane = heap[0];
+                // Given that something happens: advance only, advance and fall, or fall only
+                double outcome = random.nextDouble();
+                if (outcome < advance[lane]) {
+                    if (++distance[lane] == raceLength) someoneWon = true;
+                    if (board != null) board.update(lane, distance[lane]);
+                }
+                if (outcome < advanceOnly[lane]) {
+                    nextEvent[lane] = now + nextWait(lane);
+                    siftDown(size);
+                } else {
+                    state.fall(lane);
+                    if (board != null) board.remove(lane);
+                    heap[0] = heap[--size];
+                    siftDown(size);
+                }
+            }
+        }
+        if (!someoneWon && state.anyStanding()) {
+            throw new IllegalStateException("No standing horse can ever move, the race cannot finish");
+        }
+        ticks = (int) Math.min(now, Integer.MAX_VALUE);
+        finished = true;
+        return ticks;
+    }
+
+    /**
+     * Runs the race from the start until it is finished, by whichever of simulate()
+     * and simulateSkipping() is cheaper for the field. Jumping between events pays off
+     * when most moves change nothing, that is when the average confidence is below one half.
+     * Fields with a horse that can never move always jump: stepping them would never end
+     * once every other horse had fallen, where simulateSkipping() stops and throws.
+     * Does not allocate, use getResult() to read the outcome.
+     *
+     * @return the number of moves the race took
+     * @throws IllegalStateException if every standing horse has zero confidence, so the race can never end
+     */
+    public int simulateFastest() {
+        double total = 0.0;
+        int horses = 0;
+        for (int lane = 0; lane < state.getLanes(); lane++) {
+            if (!state.isOccupied(lane)) continue;
+            if (state.confidence[lane] <= 0.0) return simulateSkipping();
+            total += state.confidence[lane];
+            horses++;
+        }
+        return (horses > 0 && total / horses < 0.5) ? simulateSkipping() : simulate();
+    }
+
+    /**
+     * Samples the number of moves until the next event of a lane, at least one.
+     *
+     * @param lane the 0-based lane index
+     * @return the geometric wait until the lane next advances or falls
+     */
+    private long nextWait(int lane) {
+        // -log(U) of a uniform U is exponential, the generator's ziggurat saves taking the log
+        return 1L + (long) (random.nextExponential() * waitScale[lane]);
+    }
+
+    /**
+     * Adds a lane at the bottom of the event heap and moves it up to its place.
+     *
+     * @param size the number of lanes in the heap
+     * @param lane the 0-based lane index to add
+     * @return the new number of lanes in the heap
+     */
+    private int siftUp(int size, int lane) {
+        int i = size;
+        long key = nextEvent[lane];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (nextEvent[heap[parent]] <= key) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = lane;
+        return size + 1;
+    }
+
+    /**
+     * Moves the lane at the top of the event heap down to its place.
+     *
+     * @param size the number of lanes in the heap
+     */
+    private void siftDown(int size) {
+        if (size == 0) return;
+        int lane = heap[0];
+        long key = nextEvent[lane];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && nextEvent[heap[child + 1]] < nextEvent[heap[child]]) child++;
+            if (nextEvent[heap[child]] >= key) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = lane;
+    }
+
+    /**
+     * Runs the race from the start until it is finished.
+     *
+     * @return the outcome of the race
+     */
+    public RaceResult run() {
+        simulate();
+        return getResult();
+    }
+
+    /**
+     * Detaches the horses of a live race from the engine's race state,
+     * copying their final position back onto them.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     */
+    public void detach(List<Horse> horses) {
+        for (Horse horse : horses) {
+            if (horse == null) continue;
+            horse.detach();
+        }
+    }
+
+    /**
+     * Builds the outcome of the race in its current state.
+     *
+     * @return the result of the race
+     */
+    public RaceResult getResult() {
+        return new RaceResult(state, raceLength, ticks);
+    }
+
+    /**
+     * Sets the random stream the race draws its moves and falls from.
+     * A race run twice on streams built from the same seed plays out the same way.
+     *
+     * @param random the random stream of the race
+     */
+    public void setRandom(RandomGenerator random) {
+        this.random = random;
+    }
+
+    /**
+     * Updates the confidence of the horse in a lane.
+     *
+     * @param lane the 0-based lane index
+     * @param newConfidence the new confidence (0.0 to 1.0)
+     */
+    public void setConfidence(int lane, double newConfidence) {
+        state.setConfidence(lane, newConfidence);
+    }
+
+    /**
+     * Checks if the horse in a lane reached the finish line.
+     *
+     * @param lane the 0-based lane index
+     * @return true if the lane has a horse and it has travelled the full race length
+     */
+    public boolean isWinner(int lane) {
+        return state.distance[lane] == raceLength && state.isOccupied(lane);
+    }
+
+    /**
+     * Gets the running order of the standing horses. The board is built from the
+     * race as it is on the first call and kept up to date by every move after it.
+     *
+     * @return the leaderboard of the race
+     */
+    public Leaderboard getLeaderboard() {
+        if (board == null) {
+            board = new Leaderboard(state.getLanes());
+            fillBoard();
+        }
+        return board;
+    }
+
+    /**
+     * Puts every standing horse on the board at its distance.
+     */
+    private void fillBoard() {
+        board.clear();
+        for (int lane = 0; lane < state.getLanes(); lane++) {
+            if (state.isOccupied(lane) && !state.hasFallen(lane)) {
+                board.update(lane, state.distance[lane]);
+            }
+        }
+    }
+
+    /** @return the distance travelled by the horse in the lane, @param lane the 0-based lane index */
+    public int getDistance(int lane) { return state.getDistance(lane); }
+
+    /** @return true if the horse in the lane has fallen, @param lane the 0-based lane index */
+    public boolean hasFallen(int lane) { return state.hasFallen(lane); }
+
+    /** @return the lanes of the race */
+    public RaceState getState() { return state; }
+
+    /** @return the number of lanes in the race */
+    public int getLanes() { return state.getLanes(); }
+
+    /** @return the distance a horse must travel to win */
+    public int getRaceLength() { return raceLength; }
+
+    /** @return the number of moves made so far */
+    public int getTicks() { return ticks; }
+
+    /** @return true once a horse has won or all horses have fallen */
+    public boolean isFinished() { return finished; }
+}
@@ -0,0 +1,473 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of every race run, one line per race.
+ * Races are handed to a single writer thread, which takes everything queued
+ * since its last write and appends it with one write and, when the journal is
+ * durable, one force to disk (group commit). However many races finish at once,
+ * each pays for a line in memory, and the disk sees a few large sequential writes.
+ * The future returned for a race completes once its group is written.
+ * Lines are never changed once written; JournalCompactor folds them into the
+ * horse details file, and the whole history stays for anything that reads it.
+ * Opening the journal cuts off a last line torn by a crash, so appends always
+ * start a line of their own.
+ *
+ * A line holds, separated by tabs: time (epoch ms), track type, race length,
+ * weather, moves, saved (1 or 0), finish order and fallers (lanes, comma
+ * separated), and then one field per horse: lane, distance, fallen, confidence,
+ * symbol, wins, races, win rate and name, comma separated with the name last.
+ * The stats are those of the horse after the race. Only saved races count towards
+ * the saved horses; races run silently on copies of them, as every tournament
+ * meeting does, are journalled but never folded into the file.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class RaceJournal implements AutoCloseable {
+    public static final String FILE_NAME = "RaceJournal.log";
+
+    private final FileChannel channel;                    // The journal, opened for appending
+    private final boolean durable;                        // True to force every group to disk
+    private final Thread writer;                          // Appends every group
+    private StringBuilder queued = new StringBuilder();   // Lines waiting for the writer
+    private List<CompletableFuture<Void>> waiting = new ArrayList<>();   // Completed when the queued lines are written
+    private boolean closed;                               // Set once no more races are taken
+    private IOException failure;                          // First write that failed, the journal stops there
+
+    private long entries;                                 // Races written
+    private long commits;                                 // Writes made, a group each
+
+    /**
+     * Constructor for a journal appending to a file, creating it if needed.
+     * A last line cut short by a crash is cut off first, so the next race does not
+     * run on from it.
+     *
+     * @param path the journal file
+     * @param durable true to force every group to disk before its races count as written
+     * @throws IOException if the file cannot be opened
+     */
+    public RaceJournal(Path path, boolean durable) throws IOException {
+        repairTail(path);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.durable = durable;
+        this.writer = new Thread(this::writeGroups, "race-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Cuts a file back to the end of its last complete line. Lines are written whole,
+     * each with its line ending, so anything after the last one is a torn append.
+     *
+     * @param path the journal file
+     * @return the number of bytes cut off
+     * @throws IOException if the file cannot be read or cut
+     */
+    static long repairTail(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = file.size();
+            long keep = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            for (long end = size; end > 0 && keep == 0; ) {
+                int n = (int) Math.min(buffer.capacity(), end);
+                long start = end - n;
+                buffer.clear().limit(n);
+                while (buffer.hasRemaining() && file.read(buffer, start + buffer.position()) > 0) {
+                    // keep reading until the block is full
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        keep = start + i + 1;
+                        break;
+                    }
+                }
+                end = start;
+            }
+            if (keep == size) return 0;
+            file.truncate(keep);
+            file.force(true);
+            return size - keep;
+        }
+    }
+
+    /**
+     * Queues a race for the journal.
+     *
+     * @param entry the race
+     * @return completes when the race is written, or exceptionally if the write failed
+     * @throws IllegalStateException if the journal is closed
+     */
+    public CompletableFuture<Void> append(Entry entry) {
+        String line = entry.toLine();
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Race journal is closed");
+            if (failure != null) {
+                written.completeExceptionally(failure);
+                return written;
+            }
+            queued.append(line).append('\n');
+            waiting.add(written);
+            notifyAll();
+        }
+        return written;
+    }
+
+    /**
+     * Writes every queued race and closes the file.
+     *
+     * @throws IOException if a write failed or the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (this) {
+            if (failure != null) throw failure;
+        }
+    }
+
+    /**
+     * Writer loop, takes the whole queue as one group each time round.
+     */
+    private void writeGroups() {
+        while (true) {
+            StringBuilder group;
+            List<CompletableFuture<Void>> groupWaiting;
+            synchronized (this) {
+                while (queued.length() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queued.length() == 0) return;   // closed and drained
+                group = queued;
+                groupWaiting = waiting;
+                queued = new StringBuilder(group.capacity());
+                waiting = new ArrayList<>();
+            }
+            try {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(group.toString());
+                while (bytes.hasRemaining()) channel.write(bytes);
+                if (durable) channel.force(false);
+                synchronized (this) {
+                    entries += groupWaiting.size();
+                    commits++;
+                }
+                for (CompletableFuture<Void> written : groupWaiting) written.complete(null);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (failure == null) failure = e;
+                    groupWaiting.addAll(waiting);
+                    waiting.clear();
+                    queued.setLength(0);
+                }
+                for (CompletableFuture<Void> written : groupWaiting) written.completeExceptionally(e);
+            }
+        }
+    }
+
+    /** @return the number of races written */
+    public synchronized long getEntries() { return entries; }
+
+    /** @return the number of writes made, one per group */
+    public synchronized long getCommits() { return commits; }
+
+    /** @return a one line summary of the races written and how they were grouped */
+    public synchronized String report() {
+        return String.format("%d races journalled in %d writes (%.1f races per write%s)",
+            entries, commits, commits == 0 ? 0.0 : (double) entries / commits, durable ? ", forced to disk" : "");
+    }
+
+    /**
+     * Reads the journal from a byte offset, handing every complete line to the consumer.
+     * A line cut short at the end of the file, as a crash can leave one, is not read.
+     * Malformed lines are skipped.
+     *
+     * @param path the journal file
+     * @param from offset of the first line to read, the start of a line
+     * @param consumer takes each race in order
+     * @return the offset just after the last complete line read, where the next read starts
+     * @throws IOException if the file cannot be read
+     */
+    public static long read(Path path, long from, Consumer<Entry> consumer) throws IOException {
+        return read(path, from, consumer, line -> { });
+    }
+
+    /**
+     * Reads the journal from a byte offset, handing every complete line to the consumer.
+     * A line cut short at the end of the file, as a crash can leave one, is not read.
+     * Malformed lines, such as one a journal written before torn tails were cut ran on
+     * from, are handed to their own consumer and skipped, so they never stop a read.
+     *
+     * @param path the journal file
+     * @param from offset of the first line to read, the start of a line
+     * @param consumer takes each race in order
+     * @param malformed takes each line that is not a race
+     * @return the offset just after the last complete line read, where the next read starts
+     * @throws IOException if the file cannot be read
+     */
+    public static long read(Path path, long from, Consumer<Entry> consumer, Consumer<String> malformed) throws IOException {
+        if (!path.toFile().exists()) return from;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            long offset = from;                         // start of the first line not yet read
+            in.position(from);
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                int start = 0;
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if (buffer.get(i) != '\n') continue;
+                    String line = new String(buffer.array(), start, i - start, StandardCharsets.UTF_8);
+                    Entry entry;
+                    try {
+                        entry = Entry.parse(line);
+                    } catch (IllegalArgumentException e) {
+                        entry = null;
+                    }
+                    if (entry != null) consumer.accept(entry);
+                    else malformed.accept(line);
+                    offset += i + 1 - start;
+                    start = i + 1;
+                }
+                buffer.position(start);
+                buffer.compact();
+                if (!buffer.hasRemaining()) buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * One race in the journal.
+     */
+    public static class Entry {
+        private final long time;                  // When the race finished, epoch ms
+        private final String trackType;           // Shape of the track
+        private final int raceLength;             // Distance a horse had to travel to win
+        private final String weather;             // Weather the race was run in
+        private final int ticks;                  // Moves the race took
+        private final boolean saved;              // True if the race counts towards the saved horses
+        private final int[] finishOrder;          // Lanes ordered by distance travelled, furthest first
+        private final int[] fallers;              // Lanes of every horse that fell
+        private final List<Runner> runners;       // Every horse in the race, in lane order
+
+        /**
+         * Constructor for a race.
+         *
+         * @param time when the race finished, epoch ms
+         * @param trackType shape of the track
+         * @param raceLength distance a horse had to travel to win
+         * @param weather weather the race was run in
+         * @param ticks moves the race took
+         * @param saved true if the race counts towards the saved horses
+         * @param finishOrder lanes ordered by distance travelled, furthest first
+         * @param fallers lanes of every horse that fell
+         * @param runners every horse in the race
+         */
+        public Entry(long time, String trackType, int raceLength, String weather, int ticks, boolean saved, int[] finishOrder, int[] fallers, List<Runner> runners) {
+            this.time = time;
+            this.trackType = trackType;
+            this.raceLength = raceLength;
+            this.weather = weather;
+            this.ticks = ticks;
+            this.saved = saved;
+            this.finishOrder = finishOrder.clone();
+            this.fallers = fallers.clone();
+            this.runners = List.copyOf(runners);
+        }
+
+        /**
+         * Builds the entry of a finished race whose horses have been settled.
+         *
+         * @param result the outcome of the race
+         * @param horses the horses in lane order, null entries are empty lanes
+         * @param weather weather the race was run in
+         * @param saved true if the horses' stats were written to the file, false for copies of them
+         * @return the entry
+         */
+        public static Entry of(RaceResult result, List<Horse> horses, String weather, boolean saved) {
+            List<Runner> runners = new ArrayList<>();
+            for (int lane = 0; lane < horses.size(); lane++) {
+                Horse horse = horses.get(lane);
+                if (horse == null) continue;
+                runners.add(new Runner(lane, result.getDistance(lane), horse.hasFallen(), horse.getConfidence(),
+                    horse.getSymbol(), horse.getTotalWins(), horse.getTotalRaces(), horse.getWinRate(), horse.getName()));
+            }
+            return new Entry(System.currentTimeMillis(), "STRAIGHT", result.getRaceLength(), weather, result.getTicks(),
+                saved, result.getFinishOrder(), result.getFallers(), runners);
+        }
+
+        /** @return the entry as a line of the journal, without the line ending */
+        String toLine() {
+            StringBuilder line = new StringBuilder(64 + runners.size() * 48);
+            line.append(time).append('\t').append(trackType).append('\t').append(raceLength).append('\t')
+                .append(weather).append('\t').append(ticks).append('\t').append(saved ? 1 : 0).append('\t');
+            appendLanes(line, finishOrder).append('\t');
+            appendLanes(line, fallers);
+            for (Runner runner : runners) {
+                line.append('\t').append(runner.lane).append(',').append(runner.distance).append(',')
+                    .append(runner.fallen ? 1 : 0).append(',').append(runner.confidence).append(',')
+                    .append(runner.symbol).append(',').append(runner.wins).append(',').append(runner.races).append(',')
+                    .append(runner.winRate).append(',').append(runner.name);
+            }
+            return line.toString();
+        }
+
+        /**
+         * Reads an entry back from its line.
+         *
+         * @param line a line of the journal
+         * @return the entry
+         * @throws IllegalArgumentException if the line is malformed
+         */
+        static Entry parse(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 8) throw new IllegalArgumentException("Malformed journal line: "+line);
+            try {
+                List<Runner> runners = new ArrayList<>(fields.length - 8);
+                for (int i = 8; i < fields.length; i++) {
+                    String[] f = fields[i].split(",", 9);
+                    if (f.length != 9 || f[4].length() != 1) throw new IllegalArgumentException("Malformed journal line: "+line);
+                    runners.add(new Runner(Integer.parseInt(f[0]), Integer.parseInt(f[1]), f[2].equals("1"), Double.parseDouble(f[3]),
+                        f[4].charAt(0), Integer.parseInt(f[5]), Integer.parseInt(f[6]), Double.parseDouble(f[7]), f[8]));
+                }
+                return new Entry(Long.parseLong(fields[0]), fields[1], Integer.parseInt(fields[2]), fields[3],
+                    Integer.parseInt(fields[4]), fields[5].equals("1"), parseLanes(fields[6]), parseLanes(fields[7]), runners);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed journal line: "+line, e);
+            }
+        }
+
+        /** @return the line with the lanes added, comma separated, @param line the line @param lanes the lanes */
+        private static StringBuilder appendLanes(StringBuilder line, int[] lanes) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (i > 0) line.append(',');
+                line.append(lanes[i]);
+            }
+            return line;
+        }
+
+        /** @return the lanes in a comma separated field, @param field the field */
+        private static int[] parseLanes(String field) {
+            if (field.isEmpty()) return new int[0];
+            String[] parts = field.split(",");
+            int[] lanes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) lanes[i] = Integer.parseInt(parts[i]);
+            return lanes;
+        }
+
+        /** @return when the race finished, epoch ms */
+        public long getTime() { return time; }
+
+        /** @return the shape of the track */
+        public String getTrackType() { return trackType; }
+
+        /** @return the distance a horse had to travel to win */
+        public int getRaceLength() { return raceLength; }
+
+        /** @return the weather the race was run in */
+        public String getWeather() { return weather; }
+
+        /** @return the moves the race took */
+        public int getTicks() { return ticks; }
+
+        /** @return true if the race counts towards the saved horses, false if it was run on copies of them */
+        public boolean isSaved() { return saved; }
+
+        /** @return lanes ordered by distance travelled, furthest first */
+        public int[] getFinishOrder() { return finishOrder.clone(); }
+
+        /** @return lanes of every horse that fell */
+        public int[] getFallers() { return fallers.clone(); }
+
+        /** @return every horse in the race, in lane order */
+        public List<Runner> getRunners() { return runners; }
+    }
+
+    /**
+     * A horse in a journalled race, with its stats after the race.
+     */
+    public static class Runner {
+        private final int lane;                   // 0-based lane
+        private final int distance;               // Distance travelled
+        private final boolean fallen;             // True if the horse fell
+        private final double confidence;          // Confidence after the race
+        private final char symbol;                // Character the horse is drawn with
+        private final int wins;                   // Races won, this one included
+        private final int races;                  // Races run, this one included
+        private final double winRate;             // Races won out of races run
+        private final String name;                // Name of the horse
+
+        /**
+         * Constructor for a horse in a race.
+         *
+         * @param lane 0-based lane
+         * @param distance distance travelled
+         * @param fallen true if the horse fell
+         * @param confidence confidence after the race
+         * @param symbol character the horse is drawn with
+         * @param wins races won, this one included
+         * @param races races run, this one included
+         * @param winRate races won out of races run
+         * @param name name of the horse
+         */
+        public Runner(int lane, int distance, boolean fallen, double confidence, char symbol, int wins, int races, double winRate, String name) {
+            this.lane = lane;
+            this.distance = distance;
+            this.fallen = fallen;
+            this.confidence = confidence;
+            this.symbol = symbol;
+            this.wins = wins;
+            this.races = races;
+            this.winRate = winRate;
+            this.name = name;
+        }
+
+        /** @return the 0-based lane */
+        public int getLane() { return lane; }
+
+        /** @return the distance travelled */
+        public int getDistance() { return distance; }
+
+        /** @return true if the horse fell */
+        public boolean hasFallen() { return fallen; }
+
+        /** @return the confidence after the race */
+        public double getConfidence() { return confidence; }
+
+        /** @return the character the horse is drawn with */
+        public char getSymbol() { return symbol; }
+
+        /** @return the races won, this one included */
+        public int getWins() { return wins; }
+
+        /** @return the races run, this one included */
+        public int getRaces() { return races; }
+
+        /** @return the races won out of races run */
+        public double getWinRate() { return winRate; }
+
+        /** @return the name of the horse */
+        public String getName() { return name; }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Source of every random decision in the simulation.
+ * A master seed produces one seed per race, and each race draws its movement,
+ * falls, weather and random horses from its own stream built from that seed.
+ * Streams are never shared between threads, so races running in parallel do not
+ * contend on a single generator, and any race can be replayed from its seed.
+ *
+ * @author Peter Bojthe
+ * @version 22/04/25
+ */
+public class RaceRandom {
+    private final long masterSeed;          // Seed every race seed is drawn from
+    private final SplittableRandom master;  // Generator of race seeds and split streams
+
+    /**
+     * Constructor for a source with a random master seed.
+     */
+    public RaceRandom() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor for a source with a fixed master seed,
+     * the same seed always produces the same sequence of races.
+     *
+     * @param masterSeed the seed every race seed is drawn from
+     */
+    public RaceRandom(long masterSeed) {
+        this.masterSeed = masterSeed;
+        this.master = new SplittableRandom(masterSeed);
+    }
+
+    /**
+     * Draws the seed of the next race.
+     *
+     * @return a seed that replays the race when passed to streamFor
+     */
+    public synchronized long nextRaceSeed() {
+        return master.nextLong();
+    }
+
+    /**
+     * Splits off an independent stream, used to hand one stream to each parallel task.
+     *
+     * @return a new stream independent of every other stream from this source
+     */
+    public synchronized SplittableRandom split() {
+        return master.split();
+    }
+
+    /**
+     * Builds the stream of a race from its seed.
+     *
+     * @param raceSeed the seed of the race
+     * @return the random stream of the race
+     */
+    public static RandomGenerator streamFor(long raceSeed) {
+        return new SplittableRandom(raceSeed);
+    }
+
+    /** @return the seed every race seed is drawn from */
+    public long getMasterSeed() { return masterSeed; }
+}
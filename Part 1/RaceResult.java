@@ -0,0 +1,101 @@
+/**
+ * The outcome of a finished race.
+ * Holds the finishing order, the winners, the horses that fell
+ * and the number of moves the race took.
+ * Lanes are 0-based indexes into the field the race was run with.
+ *
+ * @author Peter Bojthe
+ * @version 19/04/25
+ */
+public class RaceResult {
+    private final int[] finishOrder;       // Lanes ordered by distance travelled, furthest first
+    private final int[] winners;           // Lanes of every horse that reached the finish line
+    private final int[] fallers;           // Lanes of every horse that fell
+    private final int[] distances;         // Distance travelled by the horse in each lane
+    private final int raceLength;          // Distance a horse had to travel to win
+    private final int ticks;               // Number of moves the race took
+
+    /**
+     * Constructor for the result of a race.
+     *
+     * @param state the lanes of the finished race
+     * @param raceLength the distance a horse had to travel to win
+     * @param ticks the number of moves the race took
+     */
+    public RaceResult(RaceState state, int raceLength, int ticks) {
+        int lanes = state.getLanes();
+        this.distances = new int[lanes];
+        this.raceLength = raceLength;
+        this.ticks = ticks;
+
+        int horses = 0;
+        int winnerCount = 0;
+        int fallerCount = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            distances[lane] = state.getDistance(lane);
+            if (!state.isOccupied(lane)) continue;
+            horses++;
+            if (distances[lane] == raceLength) winnerCount++;
+            if (state.hasFallen(lane)) fallerCount++;
+        }
+
+        this.finishOrder = new int[horses];
+        this.winners = new int[winnerCount];
+        this.fallers = new int[fallerCount];
+        int h = 0;
+        int w = 0;
+        int f = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (!state.isOccupied(lane)) continue;
+            finishOrder[h++] = lane;
+            if (distances[lane] == raceLength) winners[w++] = lane;
+            if (state.hasFallen(lane)) fallers[f++] = lane;
+        }
+
+        // Insertion sort, fields are small and lanes stay in order on a tie
+        for (int i = 1; i < finishOrder.length; i++) {
+            int lane = finishOrder[i];
+            int j = i - 1;
+            while (j >= 0 && distances[finishOrder[j]] < distances[lane]) {
+                finishOrder[j + 1] = finishOrder[j];
+                j--;
+            }
+            finishOrder[j + 1] = lane;
+        }
+    }
+
+    /** @return lanes ordered by distance travelled, furthest first */
+    public int[] getFinishOrder() { return finishOrder.clone(); }
+
+    /** @return lanes of every horse that reached the finish line */
+    public int[] getWinners() { return winners.clone(); }
+
+    /** @return lanes of every horse that fell */
+    public int[] getFallers() { return fallers.clone(); }
+
+    /** @return the number of moves the race took */
+    public int getTicks() { return ticks; }
+
+    /** @return the distance a horse had to travel to win */
+    public int getRaceLength() { return raceLength; }
+
+    /** @return the distance travelled by the horse in the lane, @param lane the 0-based lane index */
+    public int getDistance(int lane) { return distances[lane]; }
+
+    /** @return true if at least one horse reached the finish line */
+    public boolean hasWinner() { return winners.length > 0; }
+
+    /**
+     * Checks if the horse in a lane won the race.
+     * More than one horse can win if they cross the line on the same move.
+     *
+     * @param lane the 0-based lane index
+     * @return true if the horse in the lane reached the finish line
+     */
+    public boolean isWinner(int lane) {
+        for (int winner : winners) {
+            if (winner == lane) return true;
+        }
+        return false;
+    }
+}
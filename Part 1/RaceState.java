@@ -0,0 +1,114 @@
+/**
+ * Compact state of every lane in a race.
+ * Distances and confidences are kept in primitive arrays indexed by lane,
+ * and which lanes have a horse and which horses have fallen are kept as bitsets,
+ * so a whole move of the race runs over a few arrays without visiting any objects.
+ * Horses taking part in a live race are attached as views over their lane.
+ * Lanes are 0-based indexes into the field.
+ *
+ * @author Peter Bojthe
+ * @version 21/04/25
+ */
+public class RaceState {
+    final double[] confidence;      // Confidence of the horse in each lane
+    final int[] distance;           // Distance travelled by the horse in each lane
+    final long[] occupied;          // Bitset of lanes with a horse in them
+    final long[] fallen;            // Bitset of lanes whose horse has fallen
+
+    /**
+     * Constructor for a race with the given number of lanes, all empty.
+     *
+     * @param lanes the number of lanes
+     */
+    public RaceState(int lanes) {
+        if (lanes < 0) {
+            throw new IllegalArgumentException("Number of lanes cannot be negative");
+        }
+        this.confidence = new double[lanes];
+        this.distance = new int[lanes];
+        this.occupied = new long[(lanes + 63) >>> 6];
+        this.fallen = new long[(lanes + 63) >>> 6];
+    }
+
+    /**
+     * Constructor for a race over the given lanes.
+     *
+     * @param confidence confidence of the horse in each lane
+     * @param occupied true for every lane that has a horse in it
+     */
+    public RaceState(double[] confidence, boolean[] occupied) {
+        this(confidence.length);
+        if (confidence.length != occupied.length) {
+            throw new IllegalArgumentException("Confidence and lane arrays must be the same length");
+        }
+        for (int lane = 0; lane < occupied.length; lane++) {
+            if (occupied[lane]) {
+                putHorse(lane, confidence[lane]);
+            }
+        }
+    }
+
+    /**
+     * Puts a horse at the start of a lane.
+     *
+     * @param lane the 0-based lane index
+     * @param horseConfidence the confidence of the horse
+     */
+    public void putHorse(int lane, double horseConfidence) {
+        occupied[lane >>> 6] |= 1L << lane;
+        fallen[lane >>> 6] &= ~(1L << lane);
+        confidence[lane] = horseConfidence;
+        distance[lane] = 0;
+    }
+
+    /**
+     * Brings every horse back to the start, standing.
+     */
+    public void reset() {
+        for (int lane = 0; lane < distance.length; lane++) {
+            distance[lane] = 0;
+        }
+        for (int word = 0; word < fallen.length; word++) {
+            fallen[word] = 0L;
+        }
+    }
+
+    /**
+     * Checks if any horse is still on its feet.
+     *
+     * @return true if at least one lane has a horse that has not fallen
+     */
+    public boolean anyStanding() {
+        for (int word = 0; word < occupied.length; word++) {
+            if ((occupied[word] & ~fallen[word]) != 0) return true;
+        }
+        return false;
+    }
+
+    /** Marks the horse in the lane as fallen, @param lane the 0-based lane index */
+    public void fall(int lane) { fallen[lane >>> 6] |= 1L << lane; }
+
+    /** Marks the horse in the lane as standing, @param lane the 0-based lane index */
+    public void standUp(int lane) { fallen[lane >>> 6] &= ~(1L << lane); }
+
+    /** @return true if the horse in the lane has fallen, @param lane the 0-based lane index */
+    public boolean hasFallen(int lane) { return (fallen[lane >>> 6] & (1L << lane)) != 0; }
+
+    /** @return true if the lane has a horse in it, @param lane the 0-based lane index */
+    public boolean isOccupied(int lane) { return (occupied[lane >>> 6] & (1L << lane)) != 0; }
+
+    /** @return the distance travelled by the horse in the lane, @param lane the 0-based lane index */
+    public int getDistance(int lane) { return distance[lane]; }
+
+    /** Places the horse in the lane at a distance, @param lane the 0-based lane index @param newDistance the distance */
+    public void setDistance(int lane, int newDistance) { distance[lane] = newDistance; }
+
+    /** @return the confidence of the horse in the lane, @param lane the 0-based lane index */
+    public double getConfidence(int lane) { return confidence[lane]; }
+
+    /** Updates the confidence of the horse in the lane, @param lane the 0-based lane index @param newConfidence the confidence */
+    public void setConfidence(int lane, double newConfidence) { confidence[lane] = newConfidence; }
+
+    /** @return the number of lanes */
+    public int getLanes() { return distance.length; }
+}
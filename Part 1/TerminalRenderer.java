@@ -0,0 +1,259 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws a race in the terminal.
+ * Every frame is laid out in a reusable grid of characters and compared with the
+ * frame on screen, and only the runs of cells that changed are rewritten, each one
+ * after an ANSI cursor move. The whole frame goes to the terminal in a single write.
+ * Terminals without ANSI support (such as the BlueJ terminal) get the full frame
+ * after a form feed instead, still in a single write.
+ * Frames look the same as the race printed by Race before, with the place of each
+ * standing horse after its label when the race's leaderboard is passed in.
+ *
+ * @author Peter Bojthe
+ * @version 23/04/25
+ */
+public class TerminalRenderer {
+    private static final char FALLEN = '\u2322';     // Drawn in place of a fallen horse
+    private static final String ESC = "\u001B[";     // Start of an ANSI control sequence
+
+    private final OutputStream out;                  // Terminal the frames are written to
+    private final boolean ansi;                      // True to rewrite changed cells only
+    private final int raceLength;                    // Distance a horse must travel to win
+    private final int rows;                          // Lines in a frame, a lane each and the two rails
+    private final int columns;                       // Characters in the widest line of a frame
+    private final char[] onScreen;                   // The frame the terminal is showing
+    private final char[] next;                       // The frame being laid out
+    private final StringBuilder frame;               // Text of the frame being written
+    private final CharsetEncoder encoder;            // Turns the text into UTF-8 bytes
+    private ByteBuffer bytes;                        // Bytes of the frame being written
+    private boolean drawn;                           // True once the first frame is on screen
+
+    private long frames;                             // Frames written
+    private long bytesWritten;                       // Bytes written over every frame
+    private long renderNanos;                        // Time spent laying out and writing frames
+    private long firstFrameNanos;                    // When the first frame was written
+    private long lastFrameNanos;                     // When the latest frame was written
+
+    /**
+     * Constructor for a renderer writing to standard output, using ANSI cursor
+     * addressing when a terminal that supports it is attached.
+     *
+     * @param raceLength the distance a horse must travel to win
+     * @param lanes the number of lanes
+     * @param labelWidth room left for the label after each lane
+     */
+    public TerminalRenderer(int raceLength, int lanes, int labelWidth) {
+        this(new FileOutputStream(FileDescriptor.out), supportsAnsi(), raceLength, lanes, labelWidth);
+    }
+
+    /**
+     * Constructor for a renderer writing to the given stream.
+     *
+     * @param out the stream frames are written to
+     * @param ansi true to rewrite only the cells that changed
+     * @param raceLength the distance a horse must travel to win
+     * @param lanes the number of lanes
+     * @param labelWidth room left for the label after each lane
+     */
+    public TerminalRenderer(OutputStream out, boolean ansi, int raceLength, int lanes, int labelWidth) {
+        this.out = out;
+        this.ansi = ansi;
+        this.raceLength = raceLength;
+        this.rows = lanes + 2;
+        this.columns = raceLength + 3 + labelWidth;
+        this.onScreen = new char[rows * columns];
+        this.next = new char[rows * columns];
+        this.frame = new StringBuilder(rows * (columns + 16));
+        this.encoder = StandardCharsets.UTF_8.newEncoder();
+        this.bytes = ByteBuffer.allocate(rows * (columns + 16) * 3);
+    }
+
+    /**
+     * Checks if standard output is a terminal that understands ANSI control sequences.
+     *
+     * @return true if a console is attached and the terminal is not a dumb one
+     */
+    public static boolean supportsAnsi() {
+        String term = System.getenv("TERM");
+        return System.console() != null && term != null && !term.equals("dumb");
+    }
+
+    /**
+     * Draws the race as it is now.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     * @throws IOException if the frame cannot be written
+     */
+    public void render(List<Horse> horses) throws IOException {
+        render(horses, null);
+    }
+
+    /**
+     * Draws the race as it is now, with the place of every standing horse.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     * @param board the running order of the race, or null to leave places out
+     * @throws IOException if the frame cannot be written
+     */
+    public void render(List<Horse> horses, Leaderboard board) throws IOException {
+        long start = System.nanoTime();
+        if (!drawn) System.out.flush();   // anything printed before the race goes first
+        layOut(horses, board);
+        frame.setLength(0);
+        if (!ansi) {
+            writeWholeFrame();
+        } else if (!drawn) {
+            frame.append(ESC).append("?25l").append(ESC).append("2J");
+            writeWholeFrame();
+        } else {
+            writeChangedCells();
+        }
+        System.arraycopy(next, 0, onScreen, 0, next.length);
+        drawn = true;
+        write();
+
+        long end = System.nanoTime();
+        if (frames == 0) firstFrameNanos = end;
+        lastFrameNanos = end;
+        frames++;
+        renderNanos += end - start;
+    }
+
+    /**
+     * Moves the cursor below the race and shows it again, ready for normal printing.
+     *
+     * @throws IOException if the terminal cannot be written
+     */
+    public void finish() throws IOException {
+        if (!ansi || !drawn) return;
+        frame.setLength(0);
+        frame.append(ESC).append(rows + 1).append(";1H").append(ESC).append("?25h");
+        write();
+    }
+
+    /**
+     * Lays the race out in the next frame, one line per lane between two rails.
+     *
+     * @param horses the horses in lane order, null entries are empty lanes
+     * @param board the running order of the race, or null to leave places out
+     */
+    private void layOut(List<Horse> horses, Leaderboard board) {
+        Arrays.fill(next, ' ');
+        Arrays.fill(next, 0, raceLength + 3, '=');
+        Arrays.fill(next, (rows - 1) * columns, (rows - 1) * columns + raceLength + 3, '=');
+        for (int lane = 0; lane < rows - 2 && lane < horses.size(); lane++) {
+            int row = (lane + 1) * columns;
+            Horse horse = horses.get(lane);
+            next[row] = '|';
+            next[row + raceLength + 2] = '|';
+            if (horse == null) {
+                put(row + raceLength + 3, " Empty Lane");
+                continue;
+            }
+            int position = Math.min(horse.getDistanceTravelled(), raceLength);
+            next[row + 1 + position] = horse.hasFallen() ? FALLEN : horse.getSymbol();
+            int place = board == null ? -1 : board.getPosition(lane);
+            put(row + raceLength + 3, " Lane: "+horse.getLaneNumber()+", "+horse.getName()+" (Current Confidence "+horse.getConfidence()+")"
+                + (place > 0 ? " - "+Leaderboard.ordinal(place) : ""));
+        }
+    }
+
+    /**
+     * Copies text into the next frame, cut off at the end of the line.
+     *
+     * @param at index in the frame of the first character
+     * @param text the text to copy
+     */
+    private void put(int at, String text) {
+        int room = columns - at % columns;
+        text.getChars(0, Math.min(text.length(), room), next, at);
+    }
+
+    /**
+     * Adds the whole next frame to the text to write, from the top left corner.
+     */
+    private void writeWholeFrame() {
+        frame.append(ansi ? ESC + "H" : "\u000C");
+        for (int row = 0; row < rows; row++) {
+            int end = (row + 1) * columns;
+            while (end > row * columns && next[end - 1] == ' ') end--;   // no trailing spaces
+            frame.append(next, row * columns, end - row * columns);
+            if (ansi) frame.append(ESC).append('K');
+            frame.append('\n');
+        }
+    }
+
+    /**
+     * Adds every run of cells that differs from the frame on screen to the text to write,
+     * each run after a cursor move to its first cell.
+     */
+    private void writeChangedCells() {
+        for (int row = 0; row < rows; row++) {
+            int base = row * columns;
+            int column = 0;
+            while (column < columns) {
+                if (next[base + column] == onScreen[base + column]) { column++; continue; }
+                int end = column + 1;
+                // A gap of a few unchanged cells is cheaper to rewrite than a new cursor move
+                while (end < columns) {
+                    int gap = 0;
+                    while (end + gap < columns && gap < 8 && next[base + end + gap] == onScreen[base + end + gap]) gap++;
+                    if (end + gap == columns || gap == 8) break;
+                    end += gap + 1;
+                }
+                frame.append(ESC).append(row + 1).append(';').append(column + 1).append('H');
+                frame.append(next, base + column, end - column);
+                column = end;
+            }
+        }
+    }
+
+    /**
+     * Encodes the frame text and writes it to the terminal in one call.
+     *
+     * @throws IOException if the terminal cannot be written
+     */
+    private void write() throws IOException {
+        if (frame.length() == 0) return;
+        bytes.clear();
+        encoder.reset();
+        CharBuffer text = CharBuffer.wrap(frame);
+        while (encoder.encode(text, bytes, true).isOverflow()) {
+            bytes = ByteBuffer.allocate(bytes.capacity() * 2).put(bytes.flip());
+        }
+        encoder.flush(bytes);
+        out.write(bytes.array(), 0, bytes.position());
+        out.flush();
+        bytesWritten += bytes.position();
+    }
+
+    /** @return the number of frames written */
+    public long getFrames() { return frames; }
+
+    /** @return the average number of bytes written per frame */
+    public double getBytesPerFrame() { return frames == 0 ? 0.0 : (double) bytesWritten / frames; }
+
+    /** @return the frames written per second between the first and the latest frame */
+    public double getFramesPerSecond() {
+        return frames < 2 ? 0.0 : (frames - 1) * 1_000_000_000.0 / (lastFrameNanos - firstFrameNanos);
+    }
+
+    /** @return the average time in milliseconds to lay out and write a frame */
+    public double getMillisPerFrame() { return frames == 0 ? 0.0 : renderNanos / 1_000_000.0 / frames; }
+
+    /** @return a one line summary of the frames written */
+    public String report() {
+        return String.format("Rendered %d frames at %.1f fps, %.0f bytes and %.3f ms per frame (%s)",
+            frames, getFramesPerSecond(), getBytesPerFrame(), getMillisPerFrame(), ansi ? "changed cells only" : "full frames");
+    }
+}
@@ -1,4 +1,346 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test suites for the parts of the simulation that need no user input.
+ * Each suite is described on its own method and can be run alone by naming it first.
+ * Usage: java Test [suite] [races] [roundsPerRace] [threads] [kills]
+ * where suite is isolation, crash, commit or journal, or all to run every suite (the default).
+ *
+ * @author Peter Bojthe
+ * @version 25/04/25
+ */
 public class Test {
-    public static void main(String[] args) {
+    private static final List<String> SUITES = List.of("isolation", "crash", "commit", "journal");
+    private static final int CRASH_TEST_HORSES = 20_000;   // Rows in the file the crash test rewrites
+    private static final int COMMIT_TEST_HORSES = 5_000;   // Rows in the file the group commit test rewrites
+    private static final int COMMIT_TEST_THREADS = 4;      // Fewest threads the group commit test updates from
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--rewrite-forever")) {
+            rewriteForever(new File(args[1]));
+            return;
+        }
+        String suite = "all";
+        if (args.length > 0 && (args[0].equals("all") || SUITES.contains(args[0]))) {
+            suite = args[0];
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int races = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 4 * Runtime.getRuntime().availableProcessors();
+        int kills = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+
+        boolean passed = true;
+        if (runs(suite, "isolation")) passed &= raceIsolationTest(races, rounds, threads);
+        if (runs(suite, "crash")) passed &= crashTest(kills);
+        if (runs(suite, "commit")) passed &= groupCommitTest(threads);
+        if (runs(suite, "journal")) passed &= journalTailTest();
+        if (!passed) System.exit(1);
     }
-}
\ No newline at end of file
+
+    /** @return true if a suite is to be run, @param chosen the suite asked for or all @param suite the suite */
+    private static boolean runs(String chosen, String suite) {
+        return chosen.equals("all") || chosen.equals(suite);
+    }
+
+    /**
+     * Concurrency stress test for independent races.
+     * Runs hundreds of races side by side on a thread pool, every race with its own field,
+     * wallet and seed, then runs the same races again one after another on a single thread.
+     * The races share nothing, so both runs must end with exactly the same balances and
+     * horse records. Every race uses the same horse names to prove names are not shared either.
+     *
+     * @param races number of races
+     * @param rounds number of rounds each race runs
+     * @param threads threads the races run on side by side
+     * @return true if every race ended the same both times
+     * @throws Exception if a race fails
+     */
+    private static boolean raceIsolationTest(int races, int rounds, int threads) throws Exception {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<String>> running = new ArrayList<>();
+        for (int i = 0; i < races; i++) {
+            final long seed = i;
+            running.add(pool.submit(() -> runRace(seed, rounds)));
+        }
+        String[] concurrent = new String[races];
+        for (int i = 0; i < races; i++) {
+            concurrent[i] = running.get(i).get();
+        }
+        pool.shutdown();
+        double concurrentSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        int mismatches = 0;
+        for (int i = 0; i < races; i++) {
+            String serial = runRace(i, rounds);
+            if (!serial.equals(concurrent[i])) {
+                mismatches++;
+                System.out.println("Race "+i+" differs:\n  concurrent "+concurrent[i]+"\n  serial     "+serial);
+            }
+        }
+
+        System.out.printf("%d races x %d rounds on %d threads in %.2f s%n", races, rounds, threads, concurrentSeconds);
+        if (mismatches == 0) {
+            System.out.println("PASS: every race ended the same as when run alone");
+        } else {
+            System.out.println("FAIL: "+mismatches+" races were affected by other races");
+        }
+        return mismatches == 0;
+    }
+
+    /**
+     * Crash test for the horse details file.
+     * A child JVM rewrites a large horse file over and over, every rewrite giving the
+     * first horse the next number of races, and is killed at a random moment. Each time
+     * the file must still be whole, every horse intact: the old version or the new one.
+     *
+     * @param kills number of times the writer is killed
+     * @return true if the file was whole after every kill
+     * @throws Exception if the child cannot be run or the file cannot be read
+     */
+    private static boolean crashTest(int kills) throws Exception {
+        Path dir = Files.createTempDirectory("horse-crash");
+        File file = dir.resolve("SavingHorseDetails.csv").toFile();
+        List<String> lines = new ArrayList<>();
+        lines.add("Name,Confidence,Character,Total Wins,Total Races,Win Rate");
+        for (int i = 0; i < CRASH_TEST_HORSES; i++) lines.add(crashTestLine(i, 0));
+        Files.write(file.toPath(), lines);
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        SplittableRandom random = new SplittableRandom(17);
+        int torn = 0;
+        int duringRewrite = 0;
+        long lastVersion = 0;
+        int made = 0;
+        for (int kill = 0; kill < kills; kill++) {
+            Process writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Test", "--rewrite-forever", file.getPath())
+                .redirectErrorStream(true).start();
+            BufferedReader out = new BufferedReader(new InputStreamReader(writer.getInputStream()));
+            String ready = out.readLine();   // the writer has finished its first rewrite
+            if (!"ready".equals(ready)) throw new IllegalStateException("Writer did not start: "+ready);
+            TimeUnit.MICROSECONDS.sleep(random.nextInt(300_000));
+            if (new File(file.getPath() + ".tmp").exists()) duringRewrite++;
+            writer.destroyForcibly().waitFor();
+            made++;
+
+            long version = crashTestVersion(file);
+            if (version < 0 || version < lastVersion) {
+                torn++;
+                System.out.println("Kill "+kill+" left the file torn or rolled back");
+                break;   // the next writer cannot start from a torn file
+            } else {
+                lastVersion = version;
+            }
+        }
+        System.out.printf("%d kills of a writer rewriting %d horses, %d during a rewrite, reached version %d%n",
+            made, CRASH_TEST_HORSES, duringRewrite, lastVersion);
+        if (torn == 0) {
+            System.out.println("PASS: the horse file was always a whole old or new version");
+        } else {
+            System.out.println("FAIL: "+torn+" kills left a torn horse file");
+        }
+        for (File left : dir.toFile().listFiles()) left.delete();
+        Files.delete(dir);
+        return torn == 0;
+    }
+
+    /**
+     * Child side of the crash test, rewrites the file with the next version of the first horse until killed.
+     *
+     * @param file the horse file
+     * @throws IOException if the file cannot be written
+     */
+    private static void rewriteForever(File file) throws IOException {
+        HorseRegistry registry = new HorseRegistry(file);
+        long version = crashTestVersion(file);
+        boolean started = false;
+        while (true) {
+            version++;
+            registry.stage(1, crashTestLine(0, version));
+            registry.flush();
+            if (!started) {
+                System.out.println("ready");
+                System.out.flush();
+                started = true;
+            }
+        }
+    }
+
+    /**
+     * Group commit test for the horse details file.
+     * Threads update horses all at once, each update asking for the file to be written.
+     * The file is large enough that a rewrite outlasts staging an update, so while one
+     * thread rewrites, the others block on its pending flush and their updates must then
+     * go out together. With at least four threads that is at most one rewrite for every
+     * two updates, and every last update must reach the file.
+     *
+     * @param threads threads updating horses, at least COMMIT_TEST_THREADS are used
+     * @return true if the file holds every last update and updates were grouped
+     * @throws Exception if the file cannot be written
+     */
+    private static boolean groupCommitTest(int threads) throws Exception {
+        threads = Math.max(threads, COMMIT_TEST_THREADS);
+        Path dir = Files.createTempDirectory("horse-commit");
+        File file = dir.resolve("SavingHorseDetails.csv").toFile();
+        List<String> lines = new ArrayList<>();
+        lines.add("Name,Confidence,Character,Total Wins,Total Races,Win Rate");
+        for (int i = 0; i < Math.max(threads, COMMIT_TEST_HORSES); i++) lines.add(crashTestLine(i, 0));
+        Files.write(file.toPath(), lines);
+
+        int updatesPerThread = 50;
+        HorseRegistry registry = new HorseRegistry(file);
+        AtomicInteger rewrites = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int horse = t;
+            running.add(pool.submit(() -> {
+                for (int u = 1; u <= updatesPerThread; u++) {
+                    registry.stage(horse + 1, crashTestLine(horse, u));
+                    if (registry.flush() > 0) rewrites.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> update : running) update.get();
+        pool.shutdown();
+
+        List<String> written = Files.readAllLines(file.toPath());
+        boolean whole = written.size() == lines.size();
+        for (int i = 0; whole && i < threads; i++) whole = written.get(i + 1).equals(crashTestLine(i, updatesPerThread));
+        int updates = threads * updatesPerThread;
+        System.out.printf("%d updates from %d threads written in %d rewrites%n", updates, threads, rewrites.get());
+        boolean grouped = rewrites.get() <= updates / 2;
+        boolean passed = whole && grouped;
+        System.out.println(passed ? "PASS: concurrent updates shared rewrites and all reached the file"
+                                  : "FAIL: " + (whole ? "more than one rewrite for every two updates" : "updates were lost"));
+        for (File left : dir.toFile().listFiles()) left.delete();
+        Files.delete(dir);
+        return passed;
+    }
+
+    /**
+     * Torn tail test for the race journal.
+     * Races are journalled, the file is left with half a line as a crash mid-append
+     * leaves it, and the journal is opened again and more races appended. The torn line
+     * must be cut off rather than run on into the next race, so every race written whole
+     * is read back and the compactor folds to the end of the file. A malformed line
+     * left in the middle by an older journal must be skipped, not stop the fold.
+     * The horses are not saved ones, so the horse details file is not touched.
+     *
+     * @return true if every whole race was read and folded past
+     * @throws Exception if the journal cannot be written or read
+     */
+    private static boolean journalTailTest() throws Exception {
+        Path dir = Files.createTempDirectory("race-journal");
+        Path file = dir.resolve(RaceJournal.FILE_NAME);
+        appendJournalTestRaces(file, 3);
+        Files.write(file, "1714000000000\tSTRAI".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        appendJournalTestRaces(file, 2);
+        Files.write(file, "not a race\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        appendJournalTestRaces(file, 1);
+
+        long[] counts = new long[2];
+        long end = RaceJournal.read(file, 0, entry -> counts[0]++, line -> counts[1]++);
+        JournalCompactor compactor = new JournalCompactor(file, 0);
+        compactor.compact();
+        long checkpoint = Long.parseLong(Files.readString(dir.resolve(RaceJournal.FILE_NAME + ".checkpoint")).trim());
+        long size = Files.size(file);
+
+        System.out.printf("%d of 6 journalled races read back, %d malformed lines skipped, folded to %d of %d bytes%n",
+            counts[0], counts[1], checkpoint, size);
+        boolean passed = counts[0] == 6 && counts[1] == 1 && end == size && checkpoint == size;
+        System.out.println(passed ? "PASS: a torn journal tail was cut off and the fold reached the end"
+                                  : "FAIL: races were lost or the fold stopped early");
+        for (File left : dir.toFile().listFiles()) left.delete();
+        Files.delete(dir);
+        return passed;
+    }
+
+    /**
+     * Opens a journal, appends races of a horse that is not saved and closes it.
+     *
+     * @param file the journal file
+     * @param races number of races to append
+     * @throws IOException if the journal cannot be written
+     */
+    private static void appendJournalTestRaces(Path file, int races) throws IOException {
+        try (RaceJournal journal = new RaceJournal(file, true)) {
+            for (int i = 0; i < races; i++) {
+                List<RaceJournal.Runner> runners = List.of(new RaceJournal.Runner(0, 10, false, 0.5, 'J', 1, i + 1, 1.0, "Journal test horse"));
+                journal.append(new RaceJournal.Entry(1_714_000_000_000L + i, "STRAIGHT", 10, "Sunny", 12, true, new int[] {0}, new int[0], runners));
+            }
+        }
+    }
+
+    /** @return the line of a crash test horse at a version, @param horse the horse @param version races run */
+    private static String crashTestLine(int horse, long version) {
+        return "Horse "+horse+",0.50,H,0,"+version+",0.00";
+    }
+
+    /**
+     * Reads the version of a crash test file.
+     *
+     * @param file the horse file
+     * @return the races run of the first horse, or -1 if the file is torn
+     * @throws IOException if the file cannot be read
+     */
+    private static long crashTestVersion(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        if (lines.size() != CRASH_TEST_HORSES + 1) return -1;
+        String[] first = lines.get(1).split(",");
+        if (first.length != 6) return -1;
+        long version = Long.parseLong(first[4]);
+        if (!lines.get(1).equals(crashTestLine(0, version))) return -1;
+        for (int i = 1; i < CRASH_TEST_HORSES; i++) {
+            if (!lines.get(i + 1).equals(crashTestLine(i, 0))) return -1;
+        }
+        return version;
+    }
+
+    /**
+     * Runs one race with its own three horses and wallet for a number of rounds,
+     * betting on a different horse every round.
+     *
+     * @param seed master seed of the race
+     * @param rounds number of races to run
+     * @return the final balance and the record of every horse
+     */
+    private static String runRace(long seed, int rounds) {
+        Race race = new Race(new RaceRandom(seed), new BettingSystem());
+        race.setRaceLength(25 + (int) (seed % 76));
+        race.addHorse(new Horse("Thunder hoof", 0.5, 'T', 0, 0, 0.0, 1));
+        race.addHorse(new Horse("Silver mane", 0.4, 'S', 0, 0, 0.0, 2));
+        race.addHorse(new Horse("Wild storm", 0.3, 'W', 0, 0, 0.0, 3));
+
+        for (int round = 0; round < rounds; round++) {
+            if (race.getWallet().getBalance() >= 1.0) {
+                race.betOn(1 + round % 3, 1.0);
+            }
+            race.runSilently();
+        }
+
+        StringBuilder record = new StringBuilder(String.format("balance %.6f", race.getWallet().getBalance()));
+        for (Horse horse : race.getHorses()) {
+            record.append(String.format(", %s %d/%d %.6f", horse.getName(), horse.getTotalWins(), horse.getTotalRaces(), horse.getConfidence()));
+        }
+        return record.toString();
+    }
+}
@@ -0,0 +1,442 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a season of race meetings with no prompts.
+ * A meeting is a number of races over one field drawn from the saved horses,
+ * run on its own Race so it has its own horses, wallet and random stream. After
+ * every race the horses are settled the way showWinner settles them, and the race
+ * is added to the races and wins of the saved horses that ran in it. Those are
+ * written to the horse details file every so often and at the end of the season.
+ * Each meeting runs as a virtual thread where the Java runtime has them, and on a
+ * fixed pool of threads otherwise. A semaphore bounds how many meetings may be
+ * in flight, so a season of any size never queues more than that.
+ *
+ * @author Peter Bojthe
+ * @version 25/04/25
+ */
+public class TournamentRunner {
+    private static final long STATS_FLUSH_MILLIS = 1_000;   // Time between writes of the season's stats
+
+    private final List<Horse> stable;          // Saved horses every field is drawn from, never raced
+    private final RaceRandom random;           // Source of the seed of every meeting
+    private final int racesPerMeeting;         // Races run at each meeting
+    private final int maxInFlight;             // Most meetings running or waiting to run at once
+    private final int carriers;                // Threads the meetings are run on
+    private RaceJournal journal;               // Where every race is journalled, null for none
+    private HorseRatings ratings;              // Rated from every race of the season, null for none
+
+    /**
+     * Constructor for a runner over the given stable.
+     *
+     * @param stable saved horses, copied into every field drawn
+     * @param random source of the seed of every meeting
+     * @param racesPerMeeting races run at each meeting
+     * @param maxInFlight most meetings in flight at once
+     * @param carriers threads the meetings are run on
+     * @throws IllegalArgumentException if there are fewer than 2 horses or a limit is not positive
+     */
+    public TournamentRunner(List<Horse> stable, RaceRandom random, int racesPerMeeting, int maxInFlight, int carriers) {
+        if (stable.size() < 2) {
+            throw new IllegalArgumentException("At least 2 saved horses are needed for a meeting");
+        }
+        if (racesPerMeeting <= 0 || maxInFlight <= 0 || carriers <= 0) {
+            throw new IllegalArgumentException("Races, meetings in flight and threads must be positive");
+        }
+        this.stable = new ArrayList<>(stable);
+        this.random = random;
+        this.racesPerMeeting = racesPerMeeting;
+        this.maxInFlight = maxInFlight;
+        this.carriers = carriers;
+    }
+
+    /**
+     * Sets the journal every race of the season is written to. Races of every
+     * meeting share it, so its writer groups them into a few large appends.
+     * Meetings add their races to the horse details file as they run, so their
+     * races are journalled as unsaved and are never folded into it a second time.
+     *
+     * @param journal the journal, null to journal nothing
+     */
+    public void setJournal(RaceJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the ratings every race of the season updates. Races of every meeting share
+     * them, each race holding their lock only for its O(field size) update.
+     *
+     * @param ratings the ratings, null to rate nothing
+     */
+    public void setRatings(HorseRatings ratings) {
+        this.ratings = ratings;
+    }
+
+    /**
+     * Reads the saved horses from the horse details file, streaming it so a
+     * stable of any size loads without holding its lines.
+     *
+     * @return every saved horse
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Horse> loadStable() throws IOException {
+        return HorseDetailsFileHandling.loadHorses();
+    }
+
+    /**
+     * Runs a season of meetings and waits for all of them to finish.
+     *
+     * @param meetings number of meetings in the season
+     * @return the result of every meeting and the throughput of the season
+     * @throws InterruptedException if interrupted while waiting for a meeting slot
+     */
+    public Season run(int meetings) throws InterruptedException {
+        MeetingResult[] results = new MeetingResult[meetings];
+        Semaphore slots = new Semaphore(maxInFlight);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        boolean virtual = virtualThreadsAvailable();
+        long start = System.nanoTime();
+        ExecutorService executor = newExecutor(virtual);
+        try {
+            for (int meeting = 0; meeting < meetings; meeting++) {
+                slots.acquire();        // backpressure, wait for a meeting to finish
+                final int index = meeting;
+                final long seed = random.nextRaceSeed();
+                peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                executor.execute(() -> {
+                    try {
+                        results[index] = runMeeting(index, seed);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        System.err.println("Meeting "+index+" (seed "+seed+") failed: "+e.getMessage());
+                    } finally {
+                        inFlight.decrementAndGet();
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(maxInFlight);   // every meeting has finished
+            slots.release(maxInFlight);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            try {
+                HorseDetailsFileHandling.flushRaceResults();
+            } catch (IOException e) {
+                System.err.println("Error writing to file: "+e.getMessage());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Season(results, elapsed, virtual, carriers, peakInFlight.get(), failures.get());
+    }
+
+    /**
+     * Runs one meeting: draws a field and a race length from the meeting's seed and
+     * runs the meeting's races one after another.
+     *
+     * @param meeting index of the meeting in the season
+     * @param seed seed of the meeting, replays it
+     * @return the result of the meeting
+     */
+    private MeetingResult runMeeting(int meeting, long seed) {
+        long start = System.nanoTime();
+        SplittableRandom draw = new SplittableRandom(seed);
+        int fieldSize = 2 + draw.nextInt(Math.min(8, stable.size()) - 1);
+        int raceLength = 25 + draw.nextInt(76);
+
+        // Partial Fisher-Yates shuffle of the stable picks the field
+        int[] order = new int[stable.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Race race = new Race(new RaceRandom(draw.nextLong()));
+        race.setRaceLength(raceLength);
+        race.setJournal(journal);
+        race.setRatings(ratings);
+        for (int lane = 0; lane < fieldSize; lane++) {
+            int pick = lane + draw.nextInt(order.length - lane);
+            int chosen = order[pick];
+            order[pick] = order[lane];
+            order[lane] = chosen;
+            Horse saved = stable.get(chosen);
+            race.addHorse(new Horse(saved.getName(), saved.getConfidence(), saved.getSymbol(), saved.getTotalWins(),
+                saved.getTotalRaces(), saved.getWinRate(), lane+1));
+        }
+
+        int[] wins = new int[fieldSize];
+        int noWinnerRaces = 0;
+        long ticks = 0;
+        for (int r = 0; r < racesPerMeeting; r++) {
+            RaceResult result = race.runSilently();
+            recordStats(race, result);
+            ticks += result.getTicks();
+            if (!result.hasWinner()) noWinnerRaces++;
+            for (int lane = 0; lane < fieldSize; lane++) {
+                if (result.isWinner(lane)) wins[lane]++;
+            }
+        }
+        return new MeetingResult(meeting, seed, raceLength, race.getHorses(), wins, racesPerMeeting, noWinnerRaces, ticks, System.nanoTime() - start);
+    }
+
+    /**
+     * Adds a race to the saved stats of its horses. A failed write is reported and
+     * the stats stay recorded for the next flush, so the meeting carries on.
+     *
+     * @param race the race just run
+     * @param result the outcome of the race
+     */
+    private static void recordStats(Race race, RaceResult result) {
+        try {
+            HorseDetailsFileHandling.recordRaceResults(race.getHorses(), result);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: "+e.getMessage());
+        }
+    }
+
+    /**
+     * Checks if the Java runtime can run virtual threads (Java 21 and later).
+     *
+     * @return true if Executors has a virtual-thread-per-task executor
+     */
+    private static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the executor the meetings run on. Virtual threads are looked up by
+     * reflection so the simulation still compiles and runs on Java 17.
+     * Their carrier pool is bounded to the runner's thread count unless the
+     * scheduler parallelism has already been set.
+     *
+     * @param virtual true to run each meeting as a virtual thread
+     * @return a virtual-thread-per-task executor, or a fixed pool of platform threads
+     */
+    private ExecutorService newExecutor(boolean virtual) {
+        if (virtual) {
+            if (System.getProperty("jdk.virtualThreadScheduler.parallelism") == null) {
+                System.setProperty("jdk.virtualThreadScheduler.parallelism", String.valueOf(carriers));
+            }
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual threads unavailable, using a thread pool: "+e.getMessage());
+            }
+        }
+        return Executors.newFixedThreadPool(carriers);
+    }
+
+    /**
+     * Outcome of one meeting.
+     */
+    public static class MeetingResult {
+        private final int meeting;              // Index of the meeting in the season
+        private final long seed;                // Seed the meeting can be replayed from
+        private final int raceLength;           // Length of every race of the meeting
+        private final List<Horse> field;        // Horses of the meeting, settled after its last race
+        private final int[] wins;               // Races won by each lane, dead heats count for every winner
+        private final int races;                // Races run
+        private final int noWinnerRaces;        // Races in which every horse fell
+        private final long ticks;               // Moves made over all races
+        private final long nanos;               // Time the meeting took
+
+        MeetingResult(int meeting, long seed, int raceLength, List<Horse> field, int[] wins, int races, int noWinnerRaces, long ticks, long nanos) {
+            this.meeting = meeting;
+            this.seed = seed;
+            this.raceLength = raceLength;
+            this.field = field;
+            this.wins = wins;
+            this.races = races;
+            this.noWinnerRaces = noWinnerRaces;
+            this.ticks = ticks;
+            this.nanos = nanos;
+        }
+
+        /** @return the index of the meeting in the season */
+        public int getMeeting() { return meeting; }
+
+        /** @return the seed the meeting can be replayed from */
+        public long getSeed() { return seed; }
+
+        /** @return the length of every race of the meeting */
+        public int getRaceLength() { return raceLength; }
+
+        /** @return the horses of the meeting in lane order, settled after its last race */
+        public List<Horse> getField() { return new ArrayList<>(field); }
+
+        /** @return races won by the horse in the lane, @param lane the 0-based lane index */
+        public int getWins(int lane) { return wins[lane]; }
+
+        /** @return the number of races run */
+        public int getRaces() { return races; }
+
+        /** @return races in which every horse fell */
+        public int getNoWinnerRaces() { return noWinnerRaces; }
+
+        /** @return moves made over all races of the meeting */
+        public long getTicks() { return ticks; }
+
+        /** @return the time the meeting took in nanoseconds */
+        public long getNanos() { return nanos; }
+
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder(String.format("Meeting %d (seed %d, %dm):", meeting, seed, raceLength));
+            for (int lane = 0; lane < field.size(); lane++) {
+                line.append(String.format(" %s %d", field.get(lane).getName(), wins[lane]));
+            }
+            return line.append(String.format(", no winner %d", noWinnerRaces)).toString();
+        }
+    }
+
+    /**
+     * Outcome and throughput of a whole season.
+     */
+    public static class Season {
+        private final MeetingResult[] meetings;   // Result of every meeting, null for a failed meeting
+        private final long nanos;                  // Wall time of the season
+        private final boolean virtualThreads;      // True if meetings ran as virtual threads
+        private final int carriers;                // Threads the meetings ran on
+        private final int peakInFlight;            // Most meetings in flight at once
+        private final int failures;                // Meetings that failed
+
+        Season(MeetingResult[] meetings, long nanos, boolean virtualThreads, int carriers, int peakInFlight, int failures) {
+            this.meetings = meetings;
+            this.nanos = nanos;
+            this.virtualThreads = virtualThreads;
+            this.carriers = carriers;
+            this.peakInFlight = peakInFlight;
+            this.failures = failures;
+        }
+
+        /** @return the result of every meeting, null entries are failed meetings */
+        public MeetingResult[] getMeetings() { return meetings.clone(); }
+
+        /** @return the number of races run over the season */
+        public long getRaces() {
+            long races = 0;
+            for (MeetingResult meeting : meetings) { if (meeting != null) races += meeting.getRaces(); }
+            return races;
+        }
+
+        /** @return the number of moves made over the season */
+        public long getTicks() {
+            long ticks = 0;
+            for (MeetingResult meeting : meetings) { if (meeting != null) ticks += meeting.getTicks(); }
+            return ticks;
+        }
+
+        /** @return races won by every horse over the season, by name */
+        public Map<String, Integer> getWinsByHorse() {
+            Map<String, Integer> wins = new LinkedHashMap<>();
+            for (MeetingResult meeting : meetings) {
+                if (meeting == null) continue;
+                for (int lane = 0; lane < meeting.field.size(); lane++) {
+                    wins.merge(meeting.field.get(lane).getName(), meeting.wins[lane], Integer::sum);
+                }
+            }
+            return wins;
+        }
+
+        /**
+         * Meeting time at a quantile of all meetings.
+         *
+         * @param quantile the quantile (0.0 to 1.0)
+         * @return the meeting time in milliseconds
+         */
+        public double getMeetingMillis(double quantile) {
+            long[] times = Arrays.stream(meetings).filter(m -> m != null).mapToLong(MeetingResult::getNanos).sorted().toArray();
+            if (times.length == 0) return 0.0;
+            int index = (int) Math.min(times.length - 1, Math.round(quantile * (times.length - 1)));
+            return times[index] / 1_000_000.0;
+        }
+
+        /** @return the wall time of the season in seconds */
+        public double getSeconds() { return nanos / 1_000_000_000.0; }
+
+        /** @return true if meetings ran as virtual threads */
+        public boolean usedVirtualThreads() { return virtualThreads; }
+
+        /** @return the most meetings in flight at once */
+        public int getPeakInFlight() { return peakInFlight; }
+
+        /** @return the number of meetings that failed */
+        public int getFailures() { return failures; }
+
+        /** @return a summary of the season's throughput */
+        public String report() {
+            double seconds = Math.max(getSeconds(), 1e-9);
+            return String.format("%d meetings, %d races, %d moves in %.2f s on %s (%d threads, peak %d in flight, %d failed)%n"
+                + "Throughput: %.0f races/s, %.0f meetings/s, %.2f M moves/s%n"
+                + "Meeting time: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms",
+                meetings.length - failures, getRaces(), getTicks(), getSeconds(), virtualThreads ? "virtual threads" : "a thread pool",
+                carriers, peakInFlight, failures, getRaces() / seconds, (meetings.length - failures) / seconds, getTicks() / seconds / 1e6,
+                getMeetingMillis(0.50), getMeetingMillis(0.95), getMeetingMillis(0.99), getMeetingMillis(1.0));
+        }
+    }
+
+    /**
+     * Runs a season over the saved horses and prints its throughput.
+     * Usage: java TournamentRunner [meetings] [racesPerMeeting] [maxInFlight] [threads] [seed] [journal]
+     *
+     * @param args optional season size, limits, master seed and a journal file for every race
+     * @throws IOException if the saved horses cannot be read
+     * @throws InterruptedException if interrupted while the season runs
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int meetings = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int races = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int maxInFlight = (args.length > 2) ? Integer.parseInt(args[2]) : 1_000;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        RaceRandom random = (args.length > 4) ? new RaceRandom(Long.parseLong(args[4])) : new RaceRandom();
+
+        TournamentRunner runner = new TournamentRunner(loadStable(), random, races, maxInFlight, threads);
+        RaceJournal journal = (args.length > 5) ? new RaceJournal(Paths.get(args[5]), true) : null;
+        runner.setJournal(journal);
+        HorseRatings ratings = HorseDetailsFileHandling.getRatings();
+        runner.setRatings(ratings);
+        HorseStatsWriter stats = HorseDetailsFileHandling.setFlushPolicy(0, STATS_FLUSH_MILLIS);
+        Season season = runner.run(meetings);
+        stats.close();
+        System.out.println(stats.report());
+        if (journal != null) {
+            journal.close();
+            System.out.println(journal.report());
+        }
+        ratings.save();
+        MeetingResult[] results = season.getMeetings();
+        for (int i = 0; i < Math.min(5, results.length); i++) {
+            if (results[i] != null) System.out.println(results[i]);
+        }
+        System.out.println("\nSeason wins:");
+        season.getWinsByHorse().entrySet().stream()
+            .sorted((a, b) -> b.getValue() - a.getValue())
+            .forEach(e -> System.out.println("  "+e.getKey()+": "+e.getValue()));
+        System.out.println("\nTop rated horses:");
+        season.getWinsByHorse().keySet().stream()
+            .sorted((a, b) -> Double.compare(ratings.getConservativeRating(b), ratings.getConservativeRating(a)))
+            .limit(10)
+            .forEach(name -> System.out.printf("  %s: %.1f ± %.1f%n", name, ratings.getRating(name), ratings.getDeviation(name)));
+        System.out.println(ratings.report());
+        System.out.println("\n"+season.report());
+        System.out.println("Master seed "+random.getMasterSeed());
+    }
+}
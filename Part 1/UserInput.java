@@ -9,6 +9,30 @@ import java.util.Scanner;
  */
 
 public class UserInput implements UserOptionInterface, UserInputInterface {
+    private final BettingSystem wallet;    // Balance the user places bets from
+
+    /**
+     * Constructor for user input with a new wallet.
+     */
+    public UserInput() {
+        this(new BettingSystem());
+    }
+
+    /**
+     * Constructor for user input that places bets from the given wallet.
+     *
+     * @param wallet the balance the user places bets from
+     */
+    public UserInput(BettingSystem wallet) {
+        this.wallet = wallet;
+    }
+
+    /**
+     * @return the balance the user places bets from
+     */
+    public BettingSystem getWallet() {
+        return wallet;
+    }
 
     /**
      * Prompts the user for a number input and validates it.
@@ -257,21 +281,21 @@ public class UserInput implements UserOptionInterface, UserInputInterface {
      */
     @Override
     public double placeBet(String statement) {
-        if (BettingSystem.balance == 0.0) {
+        if (wallet.getBalance() == 0.0) {
             System.out.println("Balance is £0. Cannot place Bets.");
             return 0.0;
         }
 
         double bet = inputDouble(statement);
-        while (bet <= 0.0 || bet > BettingSystem.balance) {
+        while (bet <= 0.0 || bet > wallet.getBalance()) {
             if (bet <= 0.0) System.out.println("Bet cannot be less than £0.");
-            if (bet > BettingSystem.balance) System.out.println("Not eneough money to place bet.");
+            if (bet > wallet.getBalance()) System.out.println("Not eneough money to place bet.");
             System.out.println("Try again.");
             bet = inputDouble(statement);
         }
         System.out.println("Bet has been placed.");
-        BettingSystem.removeLoss(bet);
-        System.out.println("Current Balance: "+BettingSystem.balance+"\n");
+        wallet.removeLoss(bet);
+        System.out.println("Current Balance: "+wallet.getBalance()+"\n");
         return bet;
     }
 }
\ No newline at end of file
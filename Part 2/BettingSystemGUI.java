@@ -2,14 +2,17 @@
  * Simple Betting System for the GUI veraion of the simulation
  * 
  * @author Peter Bojthe
- * @version 1.0.1
+ * @version 1.0.2
 */
 public class BettingSystemGUI {
     // Starting balance
     public static double balance = 100.0;
 
-    /** @return the amount of money a horse can win, @param horse is the horse, @param bet amount of money placed by the user */
-    public static double calculateWinnings(HorseGUI horse, double bet) { return ((Math.round((horse.getConfidence()+horse.getWinRate()+horse.getAverageSpeed()+1.1)*bet)+bet)*100)/100.0; }
+    /** @return the fair payout (stake included) of the horse in the lane, a horse that can never win is priced at one in a million, @param odds the exact odds of the race, @param lane the lane index, @param bet amount of money placed by the user */
+    public static double calculateWinnings(ExactOddsGUI odds, int lane, double bet) {
+        double winProbability = Math.max(odds.getWinProbability(lane), 1e-6);
+        return Math.round(bet / winProbability * 100) / 100.0;
+    }
 
     /** add money won to the user balannce, @param wonMoney is how much the user won */
     public static void addWinnings(double wonMoney) { balance = balance + wonMoney; }
@@ -0,0 +1,37 @@
+/**
+ * Exact win probabilities for every horse in a GUI race, as computed by the ExactOddsSolverGUI.
+ * Lanes are 0-based indexes into the list of horses.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class ExactOddsGUI {
+    private final double[] win;                // Probability each lane wins
+    private final double noWinner;             // Probability that every horse falls
+    private final double unresolved;           // Probability mass left after the last move solved for
+
+    /**
+     * Constructor for a solved field
+     *
+     * @param win          // Probability each lane wins
+     * @param noWinner     // Probability that every horse falls
+     * @param unresolved   // Probability left over because the solver stopped early
+     */
+    public ExactOddsGUI(double[] win, double noWinner, double unresolved) {
+        this.win = win.clone();
+        this.noWinner = noWinner;
+        this.unresolved = unresolved;
+    }
+
+    /** @return the probability the horse in the lane wins, @param lane the lane index */
+    public double getWinProbability(int lane) { return win[lane]; }
+
+    /** @return the probability that every horse falls */
+    public double getNoWinnerProbability() { return noWinner; }
+
+    /** @return the probability left unassigned because the solver stopped after its last move */
+    public double getUnresolvedProbability() { return unresolved; }
+
+    /** @return the number of lanes */
+    public int getLanes() { return win.length; }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the win probabilities of a GUI race exactly instead of sampling races.
+ * Each horse's chance of first finishing on each move is solved by dynamic programming
+ * over its distance, then the horses are combined move by move. A horse finishes when it
+ * reaches the finish without falling on that move, and when several horses finish on the
+ * same move the race goes to the first of them in lane order, as it does in RaceEngineGUI.
+ * Lanes are 0-based indexes into the list of horses.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class ExactOddsSolverGUI {
+    private static final double EPSILON = 1e-12;   // Probability mass small enough to stop solving
+
+    private final int maxTicks;                    // Most moves solved for one horse
+
+    /** Constructor for a solver of up to a million moves */
+    public ExactOddsSolverGUI() { this(1_000_000); }
+
+    /** Constructor for a solver with the given move limit @param maxTicks most moves solved for one horse */
+    public ExactOddsSolverGUI(int maxTicks) {
+        if (maxTicks <= 0) { throw new IllegalArgumentException("Move limit must be positive"); }
+        this.maxTicks = maxTicks;
+    }
+
+    /** @return the exact odds of the horses in list order, @param horses the field, @param trackLength length of the track, @param trackType STRAIGHT or OVAL */
+    public ExactOddsGUI solve(List<HorseGUI> horses, int trackLength, String trackType) {
+        double[] confidence = new double[horses.size()];
+        for (int i = 0; i < horses.size(); i++) { confidence[i] = horses.get(i).getConfidence(); }
+        return solve(confidence, trackType.equals("OVAL") ? trackLength * 2 : trackLength);
+    }
+
+    /**
+     * Solves the odds of every lane
+     *
+     * @param confidence       // Confidence of the horse in each lane
+     * @param finishDistance   // Distance a horse must travel to finish
+     * @return the exact odds of the field
+     */
+    public ExactOddsGUI solve(double[] confidence, int finishDistance) {
+        if (finishDistance <= 0) { throw new IllegalArgumentException("Finish distance must be positive"); }
+        int lanes = confidence.length;
+        double[][] passage = new double[lanes][];
+        double noWinner = 1.0;
+        int horizon = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            double[] remaining = new double[1];
+            passage[lane] = firstPassage(confidence[lane], finishDistance, remaining);
+            double finished = 0.0;
+            for (double p : passage[lane]) { finished += p; }
+            noWinner *= Math.max(0.0, 1.0 - finished - remaining[0]);
+            horizon = Math.max(horizon, passage[lane].length);
+        }
+
+        double[] win = new double[lanes];
+        double[] notBefore = new double[lanes];    // P(T > t-1), the horse has not finished before move t
+        double[] notAfter = new double[lanes];     // P(T > t), the horse has not finished by move t
+        double[] laterNotBefore = new double[lanes + 1];
+        Arrays.fill(notBefore, 1.0);
+        for (int t = 1; t <= horizon; t++) {
+            for (int lane = 0; lane < lanes; lane++) { notAfter[lane] = notBefore[lane] - probabilityAt(passage[lane], t); }
+
+            // A lane wins on move t if every earlier lane is still running after t
+            // and every later lane is still running at the start of t
+            laterNotBefore[lanes] = 1.0;
+            for (int lane = lanes - 1; lane >= 0; lane--) { laterNotBefore[lane] = laterNotBefore[lane + 1] * notBefore[lane]; }
+            double earlierNotAfter = 1.0;
+            for (int lane = 0; lane < lanes; lane++) {
+                win[lane] += probabilityAt(passage[lane], t) * earlierNotAfter * laterNotBefore[lane + 1];
+                earlierNotAfter *= notAfter[lane];
+            }
+            System.arraycopy(notAfter, 0, notBefore, 0, lanes);
+        }
+
+        if (lanes == 0) noWinner = 1.0;
+        double resolved = noWinner;
+        for (double p : win) { resolved += p; }
+        return new ExactOddsGUI(win, noWinner, Math.max(0.0, 1.0 - resolved));
+    }
+
+    /**
+     * Solves the first-passage distribution of a single horse
+     *
+     * @param confidence       // Confidence of the horse
+     * @param finishDistance   // Distance the horse must travel
+     * @param remaining        // Element 0 receives the probability still running after the last move solved
+     * @return element t-1 is the probability the horse first finishes on move t
+     */
+    private double[] firstPassage(double confidence, int finishDistance, double[] remaining) {
+        if (confidence <= 0.0) { remaining[0] = 0.0; return new double[0]; }
+        double fall = 0.1 * confidence * confidence;
+        double stay = (1.0 - confidence) * (1.0 - fall);
+        double advance = confidence * (1.0 - fall);
+
+        double[] standing = new double[finishDistance];
+        standing[0] = 1.0;
+        double[] passage = new double[Math.min(maxTicks, 4 * finishDistance + 16)];
+        double mass = 1.0;
+        int t = 0;
+        while (mass > EPSILON && t < maxTicks) {
+            if (t == passage.length) { passage = Arrays.copyOf(passage, (int) Math.min(maxTicks, 2L * passage.length)); }
+            // Only a horse that stays on its feet on the finishing move finishes
+            passage[t] = standing[finishDistance - 1] * advance;
+            int furthest = Math.min(t + 1, finishDistance - 1);
+            mass = 0.0;
+            for (int d = furthest; d >= 1; d--) {
+                standing[d] = standing[d] * stay + standing[d - 1] * advance;
+                mass += standing[d];
+            }
+            standing[0] *= stay;
+            mass += standing[0];
+            t++;
+        }
+        remaining[0] = mass;
+        return Arrays.copyOf(passage, t);
+    }
+
+    /** @return the probability of first finishing on move t, zero past the end of the distribution, @param passage the distribution, @param t the move (1-based) */
+    private static double probabilityAt(double[] passage, int t) { return t > passage.length ? 0.0 : passage[t - 1]; }
+}
@@ -2,7 +2,7 @@
  * Represents a horse participating in the race.
  * 
  * @author Peter Bojthe
- * @version 1.0.5
+ * @version 1.0.6
  */
 public class HorseGUI {
     // final variables
@@ -32,6 +32,10 @@ public class HorseGUI {
     private String saddle;                 // Saddle on the horse
     private String shoes;                  // Shoes the horse has
 
+    // Live race the horse is a view over
+    private RaceStateGUI raceState;        // State of the race the horse is running in, null when not racing
+    private int raceLane;                  // Lane index of the horse in raceState
+
     /**
      * Constructor to make a horse
      * 
@@ -79,14 +83,34 @@ public class HorseGUI {
         return Math.round(wins*100.0) / (100.0*races);
     }
 
+    /** Attaches the horse to a lane of a running race, its position, fall and confidence are then read from the race @param state the race @param lane the lane index */
+    public void attachTo(RaceStateGUI state, int lane) {
+        detach();
+        state.setConfidence(lane, confidence);
+        state.setDistance(lane, distance);
+        if (fallen) { state.fall(lane); } else { state.standUp(lane); }
+        this.raceState = state;
+        this.raceLane = lane;
+    }
+
+    /** Detaches the horse from its race, keeping its final position, fall, laps and confidence */
+    public void detach() {
+        if (raceState == null) return;
+        distance = raceState.getDistance(raceLane);
+        fallen = raceState.hasFallen(raceLane);
+        lapsCompleted = raceState.getLapsCompleted(raceLane);
+        confidence = raceState.getConfidence(raceLane);
+        raceState = null;
+    }
+
     /** Advances the horse forward by 1 unit. */
-    public void moveForward() { distance++; }
+    public void moveForward() { setDistance(getDistance() + 1); }
 
     /** Marks a lap completed (for oval tracks). */
     public void completeLap() { lapsCompleted++; }
 
     /** Marks the horse as fallen. */
-    public void fall() { fallen = true; }
+    public void fall() { if (raceState != null) { raceState.fall(raceLane); } else { fallen = true; } }
 
     /** @return the horse's name */
     public String getName() { return name; }
@@ -95,31 +119,34 @@ public class HorseGUI {
     public String getSymbol() { return symbol; }
 
     /** @return the confidence level (0.0–1.0) */
-    public double getConfidence() { return confidence; }
+    public double getConfidence() { return raceState != null ? raceState.getConfidence(raceLane) : confidence; }
 
     /** set the confidence of the horse @param newConfidence is the new confidence */
-    public void setConfidence(double newConfidence) { this.confidence = newConfidence; }
+    public void setConfidence(double newConfidence) { this.confidence = newConfidence; if (raceState != null) raceState.setConfidence(raceLane, newConfidence); }
 
     /** @return the assigned track lane */
     public int getLane() { return lane; }
 
     /** @return how far the horse has traveled */
-    public int getDistance() { return distance; }
+    public int getDistance() { return raceState != null ? raceState.getDistance(raceLane) : distance; }
+
+    /** place the horse at a distance along the track @param distance how far the horse has traveled */
+    public void setDistance(int distance) { if (raceState != null) { raceState.setDistance(raceLane, distance); } else { this.distance = distance; } }
 
     /** reset horse distance */
-    public void resetDistance() { this.distance = 0; }
+    public void resetDistance() { setDistance(0); }
 
     /** reset number of laps */
-    public void resetLaps() { this.lapsCompleted = 0; }
+    public void resetLaps() { this.lapsCompleted = 0; if (raceState != null) raceState.setDistance(raceLane, 0); }
 
     /** reset if the horse has fell */
-    public void resetFall() { this.fallen = false; }
+    public void resetFall() { this.fallen = false; if (raceState != null) raceState.standUp(raceLane); }
 
     /** @return true if the horse has fallen */
-    public boolean hasFallen() { return fallen; }
+    public boolean hasFallen() { return raceState != null ? raceState.hasFallen(raceLane) : fallen; }
 
     /** @return number of laps completed (for oval tracks) */
-    public int getLapsCompleted() { return lapsCompleted; }
+    public int getLapsCompleted() { return raceState != null ? raceState.getLapsCompleted(raceLane) : lapsCompleted; }
 
     /** @return breed of the horse */
     public String getBreed() { return breed; }
@@ -1,19 +1,27 @@
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.random.RandomGenerator;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 
 /**
  * GUI-based horse race simulator with straight and oval tracks.
+ * Horses and track times are kept between sessions in a StableStoreGUI, which loads
+ * and writes on its own thread; closing a window flushes it to disk.
  * 
  * @author Peter Bojthe
- * @version 1.0.8
+ * @version 1.0.10
  */
 public class HorseRaceClassGUI {
     TrackType straight = new TrackType("STRAIGHT");
@@ -22,6 +30,7 @@ public class HorseRaceClassGUI {
 
     private final String[] weatherTypeChoice = {"SUNNY", "RAINING", "WET", "MUDDY", "SNOW", "ICY"};
     private final List<HorseGUI> horses = new ArrayList<>();
+    private LaneIndexGUI laneIndex;              // Horses by lane, rebuilt whenever the horses are configured
 
     private String trackType = "STRAIGHT";
     private String weatherType = "SUNNY";
@@ -32,16 +41,68 @@ public class HorseRaceClassGUI {
     private boolean raceFinished = false;
 
     private JFrame frame;
-    private JTextArea raceDisplay;
-    private Timer raceTimer;
-
-    private final RaceTimerGUI raceTimerUtil = new RaceTimerGUI();
+    private RaceCanvasGUI raceCanvas;
+    private Timer raceTimer;                     // Repaints the race on the EDT at 60 frames per second
+    private RaceEngineGUI raceEngine;
+    private RaceSimulationGUI raceSimulation;    // Moves the race on its own thread
+    private int shownTick = -1;                  // Move of the snapshot last drawn
+
+    private static final int[] STATISTICS_COLUMN_WIDTHS = {120, 50, 100, 80, 100, 100, 100, 50, 50, 85, 200};  // Widths of the statistics tables columns
+    private static final long TICK_MILLIS = 100;         // Time between moves, and the simulated time a move stands for
+    private RaceTimerGUI raceTimerUtil;          // Counts the moves of the current race, one per race
+    private final RaceRandomGUI raceRandom;      // Source of the seed of every race
+    private RandomGenerator random;              // Stream of the current race, drawn from its seed
+    private long raceSeed;                       // Seed of the current race, replays the race
+    private final ExactOddsSolverGUI oddsSolver = new ExactOddsSolverGUI();
+    private final StableStoreGUI stable;         // Saved horses and track times, written off the EDT
+    private StableStoreGUI.Snapshot saved;       // The stable as loaded, null until the store has read it
 
     public static void main(String[] args) {
-        HorseRaceClassGUI race = new HorseRaceClassGUI();
+        HorseRaceClassGUI race = new HorseRaceClassGUI(args.length > 0 ? new RaceRandomGUI(Long.parseLong(args[0])) : new RaceRandomGUI(), StableStoreGUI.openDefault());
         race.startRaceGUI();
     }
 
+    /**
+     * Constructor, the saved stable is taken in once the store has loaded it
+     *
+     * @param raceRandom   // Source of the seed of every race, a fixed master seed replays a session
+     * @param stable       // Saved horses and track times, shared by every session of the program
+     */
+    public HorseRaceClassGUI(RaceRandomGUI raceRandom, StableStoreGUI stable) {
+        this.raceRandom = raceRandom;
+        this.stable = stable;
+        nextRaceStream();
+        stable.snapshot().thenAccept(snapshot -> SwingUtilities.invokeLater(() -> useSnapshot(snapshot)));
+    }
+
+    /** Takes in the saved stable, once, merging its track times into this session's @param snapshot the stable as loaded */
+    private void useSnapshot(StableStoreGUI.Snapshot snapshot) {
+        if (saved != null) return;
+        saved = snapshot;
+        straight.merge(snapshot.getTrack(straight.getType()));
+        oval.merge(snapshot.getTrack(oval.getType()));
+    }
+
+    /** @return the saved horse with the name, or null, waiting for the stable if it is still loading @param name the name of the horse */
+    private StableStoreGUI.SavedHorse savedHorse(String name) {
+        if (saved == null) useSnapshot(stable.snapshot().join());
+        return saved.getHorse(name);
+    }
+
+    /** Flushes the stable to disk when the window is closed, before the program exits @param window the window */
+    private void closeStableOnExit(JFrame window) {
+        window.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) { stable.close(); }
+        });
+    }
+
+    /** Draws the seed of the next race and builds its random stream */
+    private void nextRaceStream() {
+        raceSeed = raceRandom.nextRaceSeed();
+        random = RaceRandomGUI.streamFor(raceSeed);
+    }
+
     /**
      * Launches the configuration dialog to set up a new race.
      */
@@ -58,6 +119,7 @@ public class HorseRaceClassGUI {
     private void showConfigurationDialog() {
         frame = new JFrame("Horse Race Configuration");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        closeStableOnExit(frame);
         frame.setLayout(new BorderLayout(10, 10));
 
         JPanel settingsPanel = new JPanel(new GridLayout(4, 2, 10, 10));
@@ -105,6 +167,7 @@ public class HorseRaceClassGUI {
             // Validate lane assignments
             Set<Integer> takenLanes = new HashSet<>();
             horses.clear();
+            nextRaceStream();
 
             for (int i = 0; i < numberOfHorses; i++) {
                 String name = nameFields.get(i).getText().trim();
@@ -121,13 +184,16 @@ public class HorseRaceClassGUI {
                 String coatColour = (String) coatBoxes.get(i).getSelectedItem();
                 String saddle = (String) saddleBoxes.get(i).getSelectedItem();
                 String horseShoe = (String) horseShoeBoxes.get(i).getSelectedItem();
-                weatherType = weatherTypeChoice[(int)(Math.random() * weatherTypeChoice.length)];
+                weatherType = weatherTypeChoice[random.nextInt(weatherTypeChoice.length)];
                 double finalConfidence = calculateFinalConfidence(breed, coatColour, saddle, horseShoe, weatherType);
 
                 takenLanes.add(lane);
-                horses.add(new HorseGUI(name, symbol, finalConfidence, lane, breed, coatColour, saddle, horseShoe, 0, 0, 0)); 
+                StableStoreGUI.SavedHorse record = savedHorse(name);    // a saved horse keeps its record
+                horses.add(record == null ? new HorseGUI(name, symbol, finalConfidence, lane, breed, coatColour, saddle, horseShoe, 0, 0, 0)
+                                          : new HorseGUI(name, symbol, finalConfidence, lane, breed, coatColour, saddle, horseShoe, record.getWins(), record.getRaces(), record.getAverageSpeed()));
             }
 
+            laneIndex = new LaneIndexGUI(horses, numberOfLanes);
             frame.dispose();
             createBettingWindow(horses);
             createRaceWindow();
@@ -187,7 +253,7 @@ public class HorseRaceClassGUI {
     
                 BettingSystemGUI.removePayment(bet);
                 JOptionPane.showMessageDialog(null,"Bet placed: £" + String.format("%.2f", bet) + "\nNew balance: £" + String.format("%.2f", BettingSystemGUI.balance),"Bet Confirmed",JOptionPane.INFORMATION_MESSAGE);
-                showWinningsWindow(horses, bet);
+                showWinningsWindow(horses, oddsSolver.solve(horses, trackLength, trackType), bet);
                 HorseGUI selectedHorse = promptHorseSelection(horses);
                 if (selectedHorse == null) { return; }
                 selectedHorse.setBetPlaced(true);
@@ -223,18 +289,20 @@ public class HorseRaceClassGUI {
      * Show user how much each horse could earn
      * if the horse wins with the bet on it
      * @param horses all the horses
+     * @param odds exact odds of the horses
      * @param bet betting amount
      */
-    private static void showWinningsWindow(List<HorseGUI> horses, double bet) {
-        String[] columnNames = {"Horse Name", "Potential Winnings (£)"};
-        Object[][] data = new Object[horses.size()][2];
+    private static void showWinningsWindow(List<HorseGUI> horses, ExactOddsGUI odds, double bet) {
+        String[] columnNames = {"Horse Name", "Win Chance (%)", "Potential Winnings (£)"};
+        Object[][] data = new Object[horses.size()][3];
     
         for (int i = 0; i < horses.size(); i++) {
             HorseGUI horse = horses.get(i);
-            double winnings = BettingSystemGUI.calculateWinnings(horse, bet);
+            double winnings = BettingSystemGUI.calculateWinnings(odds, i, bet);
             horse.setWinnings(winnings);
             data[i][0] = horse.getName();
-            data[i][1] = String.format("%.2f", winnings);
+            data[i][1] = String.format("%.2f", odds.getWinProbability(i) * 100);
+            data[i][2] = String.format("%.2f", winnings);
         }
     
         JTable table = new JTable(new DefaultTableModel(data, columnNames));
@@ -323,14 +391,14 @@ public class HorseRaceClassGUI {
             }
 
             randomButton.addActionListener(e -> {
-                String randomName = prefixes[(int)(Math.random() * prefixes.length)]+" "+suffixes[(int)(Math.random() * suffixes.length)];
+                String randomName = prefixes[random.nextInt(prefixes.length)]+" "+suffixes[random.nextInt(suffixes.length)];
                 nameField.setText(randomName);
-                emojiBox.setSelectedIndex((int)(Math.random() * emojiOptions.length));
-                laneBox.setSelectedIndex((int)(Math.random() * laneBox.getItemCount()));
-                breedBox.setSelectedIndex((int)(Math.random() * breeds.length));
-                coatBox.setSelectedIndex((int)(Math.random() * coats.length));
-                saddleDropdown.setSelectedIndex((int)(Math.random() * saddles.length));
-                horseshoeDropdown.setSelectedIndex((int)(Math.random() * horseShoes.length));
+                emojiBox.setSelectedIndex(random.nextInt(emojiOptions.length));
+                laneBox.setSelectedIndex(random.nextInt(laneBox.getItemCount()));
+                breedBox.setSelectedIndex(random.nextInt(breeds.length));
+                coatBox.setSelectedIndex(random.nextInt(coats.length));
+                saddleDropdown.setSelectedIndex(random.nextInt(saddles.length));
+                horseshoeDropdown.setSelectedIndex(random.nextInt(horseShoes.length));
             });
 
             row.add(new JLabel("Name:"));
@@ -423,14 +491,13 @@ public class HorseRaceClassGUI {
      */
     @SuppressWarnings("unused")
     private void createRaceWindow() {
-        frame = new JFrame("Horse Race");
+        frame = new JFrame("Horse Race (race seed " + raceSeed + ")");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        closeStableOnExit(frame);
 
-        raceDisplay = new JTextArea();
-        raceDisplay.setFont(new Font("Monospaced", Font.PLAIN, 14));
-        raceDisplay.setEditable(false);
+        raceCanvas = new RaceCanvasGUI(laneIndex, trackLength, trackType, weatherType);
 
-        JScrollPane scrollPane = new JScrollPane(raceDisplay);
+        JScrollPane scrollPane = new JScrollPane(raceCanvas);
         frame.add(scrollPane, BorderLayout.CENTER);
 
         JButton restartButton = new JButton("Restart");
@@ -440,13 +507,15 @@ public class HorseRaceClassGUI {
         
 
         restartButton.addActionListener(e -> {
+            stopRace();
             frame.dispose();
             resetHorseAfterRace(horses);
             resetHorseBets(horses);
-            new HorseRaceClassGUI().startRaceGUI();
+            new HorseRaceClassGUI(raceRandom, stable).startRaceGUI();
         });
 
         replayButton.addActionListener(e -> {
+            stopRace();
             frame.dispose();
             resetHorseAfterRace(horses);
             replayRaceWithSameHorses();
@@ -462,18 +531,9 @@ public class HorseRaceClassGUI {
         buttonPanel.add(trackStatsButton);
         frame.add(buttonPanel, BorderLayout.SOUTH);
 
-        // Resize window based on track length and lanes
+        // Size the window to the track and lanes
         SwingUtilities.invokeLater(() -> {
-            FontMetrics fm = raceDisplay.getFontMetrics(raceDisplay.getFont());
-
-            int maxLineLength = trackLength + 50; 
-            int charWidth = fm.charWidth('M');  
-            int charHeight = fm.getHeight();     
-
-            int width = charWidth * (maxLineLength + 4);
-            int height = charHeight * (numberOfLanes + 16);
-            frame.setSize(width, height);
-
+            frame.pack();
             frame.setResizable(false);
             frame.setLocationRelativeTo(null);
             frame.setVisible(true);
@@ -481,94 +541,103 @@ public class HorseRaceClassGUI {
     }
 
     /**
-     * Show track times for each track
+     * Show a summary and a histogram of the times of each track
      */
     private void showTrackStatistics() {
-        StringBuilder stats = new StringBuilder();
-    
-        if (straight.getTrackTimes().isEmpty() && oval.getTrackTimes().isEmpty()) {
+        if (straight.getCount() == 0 && oval.getCount() == 0) {
             JOptionPane.showMessageDialog(frame, "No track times recorded yet.", "Track Statistics", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
-    
-        if (!straight.getTrackTimes().isEmpty()) {
-            stats.append("STRAIGHT Track Times (seconds):\n");
-            for (int i = 0; i < straight.getTrackTimes().size(); i++) {
-                double time = straight.getTrackTimes().get(i);
-                stats.append(String.format("Race %d: %.2f seconds\n", i + 1, time));
-            }
-            stats.append("\n");
-        }
-    
-        if (!oval.getTrackTimes().isEmpty()) {
-            stats.append("OVAL Track Times (seconds):\n");
-            for (int i = 0; i < oval.getTrackTimes().size(); i++) {
-                double time = oval.getTrackTimes().get(i);
-                stats.append(String.format("Race %d: %.2f seconds\n", i + 1, time));
-            }
+
+        StringBuilder stats = new StringBuilder();
+        appendTrackStatistics(stats, straight);
+        appendTrackStatistics(stats, oval);
+
+        JTextArea text = new JTextArea(stats.toString());
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        text.setEditable(false);
+        JOptionPane.showMessageDialog(frame, text, "Track Statistics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Adds the summary and histogram of one track's times to the statistics text
+     * @param stats the text being built
+     * @param track the track, skipped if it has no times
+     */
+    private static void appendTrackStatistics(StringBuilder stats, TrackType track) {
+        if (track.getCount() == 0) return;
+        final int bins = 10;
+        final int barWidth = 40;
+
+        stats.append(String.format("%s Track Times (seconds), %d races%n", track.getType(), track.getCount()));
+        stats.append(String.format("Mean %.2f   Std dev %.2f   Fastest %.2f   Slowest %.2f%n",
+            track.getMean(), track.getStandardDeviation(), track.getMin(), track.getMax()));
+        stats.append(String.format("p50 %.2f   p95 %.2f   p99 %.2f%n%n",
+            track.getQuantile(0.50), track.getQuantile(0.95), track.getQuantile(0.99)));
+
+        long[] histogram = track.getHistogram(bins);
+        long tallest = Arrays.stream(histogram).max().orElse(1);
+        double width = (track.getMax() - track.getMin()) / bins;
+        for (int i = 0; i < bins; i++) {
+            int bar = (int) Math.round(histogram[i] * (double) barWidth / tallest);
+            stats.append(String.format("%7.2f - %7.2f | %-" + barWidth + "s %d%n",
+                track.getMin() + i * width, track.getMin() + (i + 1) * width, "#".repeat(bar), histogram[i]));
+            if (width == 0) break;      // every time is the same, one bin holds them all
         }
-    
-        JOptionPane.showMessageDialog(frame, stats.toString(), "Track Statistics", JOptionPane.INFORMATION_MESSAGE);
+        stats.append("\n");
     }
 
     /**
-     * Displays a window with statistics for all horses in the race using a table
-     * The window size is fixed based on the content.
+     * Displays a window with statistics for the horses in the race, followed by every other saved horse.
+     * The table pulls rows from HorseStatsModelGUI as they scroll into view, so it opens at once
+     * however big the stable is. The saved horses are added when the stable's writer has caught up,
+     * and clicking a column or typing a name sorts or filters the rows off the EDT.
      */
     @SuppressWarnings("unused")
     private void showRaceStatistics() {
         JDialog statsDialog = new JDialog(frame, "Race Statistics", true);
         statsDialog.setLayout(new BorderLayout());
-        
-        // Column names
-        String[] columnNames = {
-            "Name", "Symbol", "Breed", "Coat", "Saddle", 
-            "Shoes", "Confidence (%)", "Wins", "Races", "Win Rate (%)", "Average Speed (unit/sec)"
-        };
-    
-        // Create data for the table
-        Object[][] data = new Object[horses.size()][columnNames.length];
-        for (int i = 0; i < horses.size(); i++) {
-            HorseGUI horse = horses.get(i);
-            data[i][0] = horse.getName();
-            data[i][1] = horse.getSymbol();
-            data[i][2] = horse.getBreed();
-            data[i][3] = horse.getCoatColour();
-            data[i][4] = horse.getSaddle();
-            data[i][5] = horse.getShoes();
-            data[i][6] = String.format("%.0f%%", horse.getConfidence() * 100);
-            data[i][7] = horse.getWins();
-            data[i][8] = horse.getRaces();
-            data[i][9] = String.format("%.0f%%", horse.getWinRate() * 100);
-            data[i][10] = String.format("%.2f", horse.getAverageSpeed());
-        }
-    
-        JTable table = new JTable(data, columnNames) {
+
+        HorseStatsModelGUI model = new HorseStatsModelGUI(horses);
+        stable.snapshot().thenAccept(snapshot -> SwingUtilities.invokeLater(() -> model.setStable(snapshot)));
+
+        JTable table = createStatisticsTable(model);
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
             @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
+            public void mouseClicked(MouseEvent e) {
+                int column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+                if (column < 0) return;
+                model.sortBy(column);
+                for (int i = 0; i < HorseStatsModelGUI.COLUMNS.length; i++) {
+                    String arrow = i != model.getSortColumn() ? "" : model.isAscending() ? " ▲" : " ▼";
+                    table.getColumnModel().getColumn(table.convertColumnIndexToView(i)).setHeaderValue(HorseStatsModelGUI.COLUMNS[i] + arrow);
+                }
+                table.getTableHeader().repaint();
             }
-        };
-        
-        table.setAutoCreateRowSorter(true);
-        table.setFillsViewportHeight(true);
-        table.setRowHeight(30);
-    
-        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
-        centerRenderer.setHorizontalAlignment(JLabel.CENTER);
-        for (int i = 6; i <= 10; i++) {
-            table.getColumnModel().getColumn(i).setCellRenderer(centerRenderer);
-        }
-    
-        int[] colWidths = {120, 50, 100, 80, 100, 100, 100, 50, 50, 85, 200};
-        for (int i = 0; i < colWidths.length; i++) {
-            table.getColumnModel().getColumn(i).setPreferredWidth(colWidths[i]);
-        }
-    
+        });
+
+        int expectedRows = horses.size() + (saved == null ? 0 : saved.size());
         JScrollPane scrollPane = new JScrollPane(table);
-        scrollPane.setPreferredSize(new Dimension(Arrays.stream(colWidths).sum() + 30, Math.min(600, 50 + (horses.size() * table.getRowHeight()))));
-    
+        scrollPane.setPreferredSize(new Dimension(Arrays.stream(STATISTICS_COLUMN_WIDTHS).sum() + 30, Math.min(600, 50 + (expectedRows * table.getRowHeight()))));
         statsDialog.add(scrollPane, BorderLayout.CENTER);
+
+        // Find a horse by name and see how many are shown
+        JTextField findField = new JTextField(20);
+        JLabel countLabel = new JLabel();
+        Runnable showCount = () -> countLabel.setText(model.getRowCount() + " of " + model.getTotalRows() + " horses, the race's " + model.getRaceRows() + " first");
+        showCount.run();
+        model.addTableModelListener(e -> showCount.run());
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { model.setFilter(findField.getText()); }
+            @Override public void removeUpdate(DocumentEvent e) { model.setFilter(findField.getText()); }
+            @Override public void changedUpdate(DocumentEvent e) { model.setFilter(findField.getText()); }
+        });
+        JPanel findPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        findPanel.add(new JLabel("Find name:"));
+        findPanel.add(findField);
+        findPanel.add(countLabel);
+        statsDialog.add(findPanel, BorderLayout.NORTH);
         
         // Buttons
         JButton closeButton = new JButton("Close");
@@ -576,12 +645,19 @@ public class HorseRaceClassGUI {
         
         JButton compareButton = new JButton("Compare Two Horses");
         compareButton.addActionListener(e -> {
-            if (horses.size() < 2) {
+            // Two rows picked in the table are compared straight away
+            int[] selected = table.getSelectedRows();
+            if (selected.length == 2) {
+                showTwoHorseStatistics(model.subset(model.getSourceRow(selected[0]), model.getSourceRow(selected[1])));
+                return;
+            }
+            if (model.getRaceRows() < 2) {
                 JOptionPane.showMessageDialog(statsDialog, "Not enough horses to compare.", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
             
-            String[] horseNames = horses.stream().map(HorseGUI::getName).toArray(String[]::new);
+            String[] horseNames = new String[model.getRaceRows()];
+            for (int i = 0; i < horseNames.length; i++) { horseNames[i] = model.getName(i); }
             
             JComboBox<String> horseBox1 = new JComboBox<>(horseNames);
             JComboBox<String> horseBox2 = new JComboBox<>(horseNames);
@@ -595,15 +671,16 @@ public class HorseRaceClassGUI {
             int result = JOptionPane.showConfirmDialog(statsDialog, panel, "Choose Two Horses", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
             
             if (result == JOptionPane.OK_OPTION) {
-                String selectedHorse1 = (String) horseBox1.getSelectedItem();
-                String selectedHorse2 = (String) horseBox2.getSelectedItem();
+                int selectedHorse1 = horseBox1.getSelectedIndex();
+                int selectedHorse2 = horseBox2.getSelectedIndex();
                 
-                if (selectedHorse1.equals(selectedHorse2)) {
+                if (selectedHorse1 == selectedHorse2) {
                     JOptionPane.showMessageDialog(statsDialog, "Please select two different horses.", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 
-                showTwoHorseStatistics(selectedHorse1, selectedHorse2);
+                // Race horses are the first rows of the model, in race order
+                showTwoHorseStatistics(model.subset(selectedHorse1, selectedHorse2));
             }
         });
         
@@ -613,7 +690,7 @@ public class HorseRaceClassGUI {
         statsDialog.add(buttonPanel, BorderLayout.SOUTH);
     
         int width = scrollPane.getPreferredSize().width + 20;
-        int height = scrollPane.getPreferredSize().height + buttonPanel.getPreferredSize().height + 20;
+        int height = scrollPane.getPreferredSize().height + findPanel.getPreferredSize().height + buttonPanel.getPreferredSize().height + 20;
         statsDialog.setSize(width, height);
         
         statsDialog.setResizable(false);
@@ -623,61 +700,18 @@ public class HorseRaceClassGUI {
     
     /**
      * Displays a dialog showing statistics for two selected horses.
+     * @param pair the two horses, as rows of their own
      */
     @SuppressWarnings("unused")
-    private void showTwoHorseStatistics(String horseName1, String horseName2) {
+    private void showTwoHorseStatistics(HorseStatsModelGUI pair) {
         JDialog compareDialog = new JDialog(frame, "Compare Horses", true);
         compareDialog.setLayout(new BorderLayout());
         
-        String[] columnNames = {
-            "Name", "Symbol", "Breed", "Coat", "Saddle", 
-            "Shoes", "Confidence (%)", "Wins", "Races", "Win Rate (%)", "Average Speed (unit/sec)"
-        };
-        
-        List<HorseGUI> selectedHorses = horses.stream()
-                .filter(h -> h.getName().equals(horseName1) || h.getName().equals(horseName2))
-                .toList();
-        
-        Object[][] data = new Object[2][columnNames.length];
-        for (int i = 0; i < selectedHorses.size(); i++) {
-            HorseGUI horse = selectedHorses.get(i);
-            data[i][0] = horse.getName();
-            data[i][1] = horse.getSymbol();
-            data[i][2] = horse.getBreed();
-            data[i][3] = horse.getCoatColour();
-            data[i][4] = horse.getSaddle();
-            data[i][5] = horse.getShoes();
-            data[i][6] = String.format("%.0f%%", horse.getConfidence() * 100);
-            data[i][7] = horse.getWins();
-            data[i][8] = horse.getRaces();
-            data[i][9] = String.format("%.0f%%", horse.getWinRate() * 100);
-            data[i][10] = String.format("%.2f", horse.getAverageSpeed());
-        }
-        
-        JTable compareTable = new JTable(data, columnNames) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        
-        compareTable.setAutoCreateRowSorter(true);
-        compareTable.setFillsViewportHeight(true);
-        compareTable.setRowHeight(30);
-        
-        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
-        centerRenderer.setHorizontalAlignment(JLabel.CENTER);
-        for (int i = 6; i <= 10; i++) {
-            compareTable.getColumnModel().getColumn(i).setCellRenderer(centerRenderer);
-        }
-        
-        int[] colWidths = {120, 50, 100, 80, 100, 100, 100, 50, 50, 85, 200};
-        for (int i = 0; i < colWidths.length; i++) {
-            compareTable.getColumnModel().getColumn(i).setPreferredWidth(colWidths[i]);
-        }
+        JTable compareTable = createStatisticsTable(pair);
+        compareTable.setAutoCreateRowSorter(true);      // two rows, sorting them on the EDT costs nothing
         
         JScrollPane scrollPane = new JScrollPane(compareTable);
-        scrollPane.setPreferredSize(new Dimension(Arrays.stream(colWidths).sum() + 30, Math.min(200, 50 + (compareTable.getRowHeight() * 2))));
+        scrollPane.setPreferredSize(new Dimension(Arrays.stream(STATISTICS_COLUMN_WIDTHS).sum() + 30, Math.min(200, 50 + (compareTable.getRowHeight() * 2))));
         
         compareDialog.add(scrollPane, BorderLayout.CENTER);
         
@@ -695,6 +729,32 @@ public class HorseRaceClassGUI {
         compareDialog.setLocationRelativeTo(frame);
         compareDialog.setVisible(true);
     }
+
+    /**
+     * Creates a read-only table of horse statistics, numbers centred and columns sized to fit
+     * @param model the horses to show
+     * @return the table
+     */
+    private static JTable createStatisticsTable(HorseStatsModelGUI model) {
+        JTable table = new JTable(model) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        table.setFillsViewportHeight(true);
+        table.setRowHeight(30);
+
+        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
+        centerRenderer.setHorizontalAlignment(JLabel.CENTER);
+        for (int i = 6; i <= 10; i++) {
+            table.getColumnModel().getColumn(i).setCellRenderer(centerRenderer);
+        }
+        for (int i = 0; i < STATISTICS_COLUMN_WIDTHS.length; i++) {
+            table.getColumnModel().getColumn(i).setPreferredWidth(STATISTICS_COLUMN_WIDTHS[i]);
+        }
+        return table;
+    }
     
 
     /**
@@ -702,13 +762,15 @@ public class HorseRaceClassGUI {
      */
     private void replayRaceWithSameHorses() {
         List<HorseGUI> previousHorses = new ArrayList<>(horses);
-        weatherType = weatherTypeChoice[(int)(Math.random() * weatherTypeChoice.length)];
+        nextRaceStream();
+        weatherType = weatherTypeChoice[random.nextInt(weatherTypeChoice.length)];
         horses.clear();
 
         for (HorseGUI oldHorse : previousHorses) {
             double finalConfidence = calculateFinalConfidence(oldHorse.getBreed(), oldHorse.getCoatColour(), oldHorse.getSaddle(), oldHorse.getShoes(), weatherType);
             horses.add(new HorseGUI(oldHorse.getName(),oldHorse.getSymbol(),finalConfidence,oldHorse.getLane(),oldHorse.getBreed(),oldHorse.getCoatColour(),oldHorse.getSaddle(),oldHorse.getShoes(), oldHorse.getWins(), oldHorse.getRaces(), oldHorse.getAverageSpeed()));
         }
+        laneIndex = new LaneIndexGUI(horses, numberOfLanes);
 
         resetHorseBets(horses);
         createBettingWindow(horses);
@@ -719,134 +781,60 @@ public class HorseRaceClassGUI {
     }
 
     /**
-     * Starts the race timer and handles horse movement and falling.
+     * Starts the race on its own thread, moving every 100 ms,
+     * and a 60 fps timer on the EDT that draws the latest move.
      */
     @SuppressWarnings("unused")
     private void startRace() {
-        raceTimerUtil.start();
-        raceTimer = new Timer(100, e -> {
+        raceEngine = RaceEngineGUI.forHorses(horses, trackLength, trackType);
+        raceEngine.setRandom(random);
+        raceTimerUtil = new RaceTimerGUI(TICK_MILLIS);
+        raceSimulation = new RaceSimulationGUI(raceEngine, TICK_MILLIS, raceTimerUtil);
+        shownTick = -1;
+        raceTimer = new Timer(16, e -> {
             if (raceFinished) return;
-            for (HorseGUI horse : horses) {
-                if (!horse.hasFallen()) {
-                    if (Math.random() < horse.getConfidence()) horse.moveForward();
-                    if (trackType.equals("OVAL")) {
-                        int lapLength = trackLength * 2;
-                        if (horse.getDistance() > 0 && horse.getDistance() % lapLength == 0)
-                            horse.completeLap();
-                    }
-                    if (Math.random() < 0.1 * horse.getConfidence() * horse.getConfidence()) horse.fall();
-                }
-            }
-            updateDisplay();
-            checkRaceCompletion();
+            RaceSnapshotGUI snapshot = raceSimulation.getLatest();
+            updateDisplay(snapshot);
+            checkRaceCompletion(snapshot);
         });
+        raceSimulation.start();
         raceTimer.start();
     }
 
     /**
-     * Updates the race display in the GUI.
-     */
-    private void updateDisplay() {
-        StringBuilder sb = new StringBuilder();
-
-        String weatherSymbol = switch(weatherType.toUpperCase()) {
-            case "SUNNY" -> "☀️";
-            case "RAINING" -> "🌧️";
-            case "WET" -> "💧";
-            case "MUDDY" -> "🌧️💧";
-            case "SNOW" -> "❄️";
-            case "ICY" -> "❄️";
-            default -> "🌤️";
-        };
-
-        String weatherDeatils = "|Current Weather: "+weatherSymbol+" "+weatherType+" |";
-        sb.append("┌").append("─".repeat(weatherDeatils.length()+2)).append("┐\n");
-        sb.append(weatherDeatils).append("\n");
-        sb.append("└").append("─".repeat(weatherDeatils.length()+2)).append("┘\n");
-
-        if (trackType.equals("STRAIGHT")) {
-            sb.append("=".repeat(trackLength + 3)).append("\n");
-            for (int lane = 1; lane <= numberOfLanes; lane++) {
-                HorseGUI horse = getHorseInLane(lane);
-                sb.append("|");
-                if (horse != null) {
-                    int pos = Math.min(horse.getDistance(), trackLength);
-                    sb.append(" ".repeat(pos)).append(horse.hasFallen() ? "\u274C" : horse.getSymbol()).append(" ".repeat(trackLength - pos));
-                } else {
-                    sb.append(" ".repeat(trackLength+2));
-                }
-                sb.append("| ");
-                if (horse != null) {
-                    sb.append("Lane ").append(horse.getLane()).append(": ").append(horse.getName()).append(" (Confidence: ").append((int)(horse.getConfidence() * 100)).append("%)");
-                } else {
-                    sb.append("Empty Lane");
-                }
-                sb.append("\n");
-            }
-            sb.append("=".repeat(trackLength + 3)).append("\n");
-        } else {
-            // Oval track display
-            sb.append(" ").append("=".repeat(trackLength + 3)).append("\n");
-            for (int lane = 1; lane <= numberOfLanes; lane++) {
-                HorseGUI horse = getHorseInLane(lane);
-                sb.append("(");
-                if (horse != null) {
-                    int lapProgress = horse.getDistance() % (trackLength * 2);
-                    boolean goingRight = lapProgress < trackLength;
-                    int displayPos = goingRight ? lapProgress : (trackLength * 2 - lapProgress);
-                    sb.append(" ".repeat(displayPos)).append(horse.hasFallen() ? "\u274C" : horse.getSymbol()).append(" ".repeat(trackLength - displayPos));
-                } else {
-                    sb.append(" ".repeat(trackLength + 2));
-                }
-                sb.append(") ");
-                if (horse != null) {
-                    sb.append("Lane ").append(horse.getLane()).append(": ").append(horse.getName()).append(" (Confidence: ").append((int)(horse.getConfidence() * 100)).append("%)");
-                } else {
-                    sb.append("Empty Lane");
-                }
-                sb.append("\n");
-            }
-            sb.append(" ").append("=".repeat(trackLength + 3)).append("\n");
-        }
-        raceDisplay.setText(sb.toString());
-    }
-
-    /**
-     * Finds a horse assigned to a specific lane.
-     * @param lane the lane number
-     * @return the horse assigned to the lane (or null)
+     * Updates the race display in the GUI, only the horses that moved are repainted.
+     * @param snapshot the race after its latest move
      */
-    private HorseGUI getHorseInLane(int lane) {
-        return horses.stream().filter(h -> h.getLane() == lane).findFirst().orElse(null);
+    private void updateDisplay(RaceSnapshotGUI snapshot) {
+        if (snapshot.getTick() == shownTick) return;
+        shownTick = snapshot.getTick();
+        raceCanvas.refresh(snapshot);
     }
 
     /**
      * Checks if the race is over and a winner exists.
+     * The simulation thread has stopped once it publishes a finished snapshot,
+     * so the horses can be detached from the race on the EDT.
+     * @param snapshot the race after its latest move
      */
-    private void checkRaceCompletion() {
-        boolean someoneFinished = false;
-        boolean allFallen = true;
-    
-        for (HorseGUI horse : horses) {
-            if (!horse.hasFallen()) {
-                allFallen = false;
-    
-                if (trackType.equals("STRAIGHT")&& horse.getDistance() >= trackLength) {
-                    someoneFinished = true;
-                    break;
-                } else if (trackType.equals("OVAL") && horse.getLapsCompleted() >= 1) {
-                    someoneFinished = true;
-                    break;
-                }
-            }
-        }
-    
-        if (someoneFinished || allFallen) {
+    private void checkRaceCompletion(RaceSnapshotGUI snapshot) {
+        if (snapshot.isFinished()) {
             raceFinished = true;
             raceTimer.stop();
+            raceEngine.detach(horses);
             announceWinner();
         }
     }
+
+    /**
+     * Abandons the race in progress, if any, when its window is closed.
+     * Its thread has stopped and the horses are detached from it on return,
+     * so they can be reset and raced again.
+     */
+    private void stopRace() {
+        if (raceTimer != null) raceTimer.stop();
+        if (raceSimulation != null) raceSimulation.stop(horses);
+    }
     
     /**
      * Displays a message announcing the race winner or no winner if all horses fell.
@@ -866,10 +854,12 @@ public class HorseRaceClassGUI {
             h.setAverageSpeed(h.getDistance()/raceLengthTime);
         }
 
-        HorseGUI winner = horses.stream().filter(h -> !h.hasFallen()).filter(h -> trackType.equals("STRAIGHT") ? h.getDistance() >= trackLength : h.getLapsCompleted() >= 1).findFirst().orElse(null);
+        HorseGUI winner = laneIndex.getHorseAt(raceEngine.getWinner());
         String message = (winner != null) ? "🏆 Winner: " + winner.getName() + "! 🏆\n⏱ Average Speed: " + String.format("%.2f", winner.getAverageSpeed()) +" units per second!" : "All horses fell! No winner.";
         HorseGUI betHorse = horses.stream().filter(HorseGUI::isBetPlaced).findFirst().orElse(null);
-        message += "\n\n⏱ Race Time: " + raceLengthTime;
+        message += "\n\n⏱ Race Time: " + raceTimerUtil.getFormattedTime() + " (" + raceTimerUtil.getTicks() + " moves of " + TICK_MILLIS + " ms)";
+        message += "\n⏱ Move timing: " + raceSimulation.getJitterReport();
+        message += "\n⏱ Frames: " + raceCanvas.getPaintLatency().getCount() + " painted in " + raceCanvas.getPaintLatency().report();
 
         // If user placed a bet
         if (betHorse != null) {
@@ -897,34 +887,36 @@ public class HorseRaceClassGUI {
             h.setConfidence(h.getConfidence()*0.9);
         }
 
+        // Queue the new stats and time for the stable's writer
+        for (HorseGUI h : horses) { stable.saveHorse(h); }
+        stable.saveTrackTime(trackType, raceLengthTime);
+
         JOptionPane.showMessageDialog(frame, message);
         showLeaderboard();
     }
 
     /**
-     * Show a leader board to the user when race is over
+     * Show a leader board to the user when race is over,
+     * in the running order the race engine kept as the horses moved
      */
     private void showLeaderboard() {
-        List<HorseGUI> standingHorses = horses.stream().filter(h -> !h.hasFallen()).sorted((h1, h2) -> {
-                double d1 = trackType.equals("STRAIGHT") ? h1.getDistance() : h1.getLapsCompleted() * 1000 + h1.getDistance();
-                double d2 = trackType.equals("STRAIGHT") ? h2.getDistance() : h2.getLapsCompleted() * 1000 + h2.getDistance();
-                return Double.compare(d2, d1); // descending
-            }).collect(Collectors.toList());
+        LeaderboardGUI board = raceEngine.getLeaderboard();
+        int[] order = new int[board.size()];
+        int standing = board.top(order.length, order);
 
-        if (standingHorses.isEmpty()) {
+        if (standing == 0) {
             JOptionPane.showMessageDialog(frame, "🏁 No horses standing to display a leaderboard.", "Leaderboard", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
 
         String[] columns = {"Rank", "Horse", "Distance", "Average Speed"};
-        Object[][] data = new Object[standingHorses.size()][4];
+        Object[][] data = new Object[standing][4];
 
-        for (int i = 0; i < standingHorses.size(); i++) {
-            HorseGUI h = standingHorses.get(i);
-            double distance = trackType.equals("STRAIGHT") ? h.getDistance() : h.getLapsCompleted() * h.getDistance();
+        for (int i = 0; i < standing; i++) {
+            HorseGUI h = laneIndex.getHorseAt(order[i]);
             data[i][0] = (i + 1);
             data[i][1] = h.getName();
-            data[i][2] = String.format("%.2f", distance);
+            data[i][2] = String.format("%.2f", (double) board.getProgress(order[i]));
             data[i][3] = String.format("%.2f", h.getAverageSpeed());
         }
 
@@ -0,0 +1,261 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table of horse statistics, the horses of the race first and then every other saved horse.
+ * The table opens on immutable copies of the few race horses, taken on the EDT, and the saved
+ * horses are added from a stable snapshot on a pool thread, so opening it costs the same at any
+ * stable size. A cell is formatted the first time its row is painted and the whole row is kept
+ * in a small cache, so only rows that scroll into view are ever built. Sorting and filtering
+ * work out a new order of the rows on a pool thread, from the raw numbers rather than the text,
+ * and the order is swapped in on the EDT; an order that was overtaken by a later request is
+ * dropped. The table never needs a RowSorter.
+ * Rows of the table are "view rows", rows of the horses behind it are "source rows".
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class HorseStatsModelGUI extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final String[] COLUMNS = {
+        "Name", "Symbol", "Breed", "Coat", "Saddle",
+        "Shoes", "Confidence (%)", "Wins", "Races", "Win Rate (%)", "Average Speed (unit/sec)"
+    };
+    private static final int CACHE_ROWS = 256;                               // Formatted rows kept, far more than fit on screen
+
+    private transient Rows rows;                                             // Every horse the table can show
+    private transient CompletableFuture<Rows> next;                          // Rows of the latest request for an order, shown once it is ready
+    private int[] view;                                                      // Source row of each view row
+    private final Object[][] cache = new Object[CACHE_ROWS][];               // Formatted cells of recently shown rows
+    private final int[] cachedRow = new int[CACHE_ROWS];                     // Source row held by each cache slot, -1 for none
+    private int sortColumn = -1;                                             // Column the rows are sorted on, -1 for source order
+    private boolean ascending = true;
+    private String filter = "";                                              // Names must contain it, ignoring case
+    private int generation;                                                  // Counts requests for a new order, the latest one wins
+
+    /**
+     * Constructor for a table of the race's horses, in race order, the stable is added by setStable
+     *
+     * @param raceHorses   // Horses of the race, copied now on the EDT
+     */
+    public HorseStatsModelGUI(List<HorseGUI> raceHorses) {
+        this(Rows.of(raceHorses));
+    }
+
+    /** Constructor for a table over some rows, in source order @param rows the rows */
+    private HorseStatsModelGUI(Rows rows) {
+        this.rows = rows;
+        this.next = CompletableFuture.completedFuture(rows);
+        this.view = identity(rows.size());
+        Arrays.fill(cachedRow, -1);
+    }
+
+    /** @return a table of some source rows of this one, in the order given @param sourceRows the rows to keep */
+    public HorseStatsModelGUI subset(int... sourceRows) { return new HorseStatsModelGUI(rows.subset(sourceRows)); }
+
+    /** Shows the race horses with a newer stable, once its rows are built and put in order off the EDT @param stable the saved horses */
+    public void setStable(StableStoreGUI.Snapshot stable) { reorder(next.thenApplyAsync(rows -> rows.withStable(stable))); }
+
+    /** Sorts on a column, ascending first and the other way on a second call @param column the model column */
+    public void sortBy(int column) {
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        reorder(next);
+    }
+
+    /** Only shows horses whose name contains the text, ignoring case @param text the text, empty for every horse */
+    public void setFilter(String text) {
+        filter = text.trim().toLowerCase(Locale.ROOT);
+        reorder(next);
+    }
+
+    /** Works out the order of the rows on a pool thread and swaps it in on the EDT, unless a newer order was asked for @param target the rows to order, once they are built */
+    private void reorder(CompletableFuture<Rows> target) {
+        int requested = ++generation;
+        next = target;
+        String text = filter;
+        int column = sortColumn;
+        boolean up = ascending;
+        target.thenAcceptAsync(ordered -> {
+            int[] order = order(ordered, text, column, up);
+            SwingUtilities.invokeLater(() -> {
+                if (requested != generation) return;
+                if (ordered != rows) {
+                    rows = ordered;
+                    Arrays.fill(cachedRow, -1);
+                }
+                view = order;
+                fireTableDataChanged();
+            });
+        });
+    }
+
+    /** @return the source rows whose name contains the text, sorted on a column @param rows the rows @param text lower case text, empty for all @param column the column, -1 for source order @param ascending direction of the sort */
+    private static int[] order(Rows rows, String text, int column, boolean ascending) {
+        int[] kept = new int[rows.size()];
+        int count = 0;
+        for (int row = 0; row < rows.size(); row++) {
+            if (text.isEmpty() || rows.names[row].toLowerCase(Locale.ROOT).contains(text)) kept[count++] = row;
+        }
+        if (column < 0) return Arrays.copyOf(kept, count);
+        Integer[] sorted = new Integer[count];
+        for (int i = 0; i < count; i++) { sorted[i] = kept[i]; }
+        Comparator<Integer> comparator = rows.comparator(column);
+        Arrays.sort(sorted, ascending ? comparator : comparator.reversed());
+        for (int i = 0; i < count; i++) { kept[i] = sorted[i]; }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /** @return 0, 1, 2 up to n - 1 @param n the number of rows */
+    private static int[] identity(int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) { order[i] = i; }
+        return order;
+    }
+
+    @Override
+    public int getRowCount() { return view.length; }
+
+    @Override
+    public int getColumnCount() { return COLUMNS.length; }
+
+    @Override
+    public String getColumnName(int column) { return COLUMNS[column]; }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int source = view[row];
+        int slot = source % CACHE_ROWS;
+        if (cachedRow[slot] != source) {
+            cache[slot] = rows.format(source);
+            cachedRow[slot] = source;
+        }
+        return cache[slot][column];
+    }
+
+    /** @return the source row shown in a view row @param row the view row */
+    public int getSourceRow(int row) { return view[row]; }
+
+    /** @return the number of horses, shown or filtered out */
+    public int getTotalRows() { return rows.size(); }
+
+    /** @return the number of race horses, source rows 0 up to it in race order */
+    public int getRaceRows() { return rows.raceRows; }
+
+    /** @return the name of the horse in a source row @param sourceRow the source row */
+    public String getName(int sourceRow) { return rows.names[sourceRow]; }
+
+    /** @return the column the rows are sorted on, -1 for source order */
+    public int getSortColumn() { return sortColumn; }
+
+    /** @return true if the rows are sorted low to high */
+    public boolean isAscending() { return ascending; }
+
+    /**
+     * Immutable horses behind the table, safe to read on any thread
+     */
+    private static final class Rows {
+        private final String[] names;                            // Name of each horse
+        private final StableStoreGUI.SavedHorse[] stats;         // Stats and accessories of each horse
+        private final double[] confidence;                       // Confidence of each race horse, NaN for a saved horse
+        private final int raceRows;                              // Race horses, at the front
+
+        /** Constructor for rows of arrays that are not copied */
+        private Rows(String[] names, StableStoreGUI.SavedHorse[] stats, double[] confidence, int raceRows) {
+            this.names = names;
+            this.stats = stats;
+            this.confidence = confidence;
+            this.raceRows = raceRows;
+        }
+
+        /** @return the race horses, copied now @param raceHorses read on the calling thread */
+        static Rows of(List<HorseGUI> raceHorses) {
+            int race = raceHorses.size();
+            String[] names = new String[race];
+            StableStoreGUI.SavedHorse[] stats = new StableStoreGUI.SavedHorse[race];
+            double[] confidence = new double[race];
+            for (int i = 0; i < race; i++) {
+                HorseGUI horse = raceHorses.get(i);
+                names[i] = horse.getName();
+                stats[i] = StableStoreGUI.SavedHorse.of(horse);
+                confidence[i] = horse.getConfidence();
+            }
+            return new Rows(names, stats, confidence, race);
+        }
+
+        /** @return the race horses of these rows followed by the saved horses not among them @param stable the saved horses */
+        Rows withStable(StableStoreGUI.Snapshot stable) {
+            String[] saved = stable.getNames();
+            Set<String> inRace = new HashSet<>(Arrays.asList(names).subList(0, raceRows));
+            String[] allNames = Arrays.copyOf(names, raceRows + saved.length);
+            StableStoreGUI.SavedHorse[] allStats = Arrays.copyOf(stats, allNames.length);
+            double[] allConfidence = Arrays.copyOf(confidence, allNames.length);
+            int count = raceRows;
+            for (String name : saved) {
+                if (inRace.contains(name)) continue;
+                allNames[count] = name;
+                allStats[count] = stable.getHorse(name);
+                allConfidence[count] = Double.NaN;
+                count++;
+            }
+            return new Rows(Arrays.copyOf(allNames, count), Arrays.copyOf(allStats, count), Arrays.copyOf(allConfidence, count), raceRows);
+        }
+
+        /** @return the source rows given, as rows of their own @param sourceRows the rows to keep */
+        Rows subset(int[] sourceRows) {
+            String[] keptNames = new String[sourceRows.length];
+            StableStoreGUI.SavedHorse[] keptStats = new StableStoreGUI.SavedHorse[sourceRows.length];
+            double[] keptConfidence = new double[sourceRows.length];
+            int race = 0;
+            for (int i = 0; i < sourceRows.length; i++) {
+                keptNames[i] = names[sourceRows[i]];
+                keptStats[i] = stats[sourceRows[i]];
+                keptConfidence[i] = confidence[sourceRows[i]];
+                if (sourceRows[i] < raceRows) race++;
+            }
+            return new Rows(keptNames, keptStats, keptConfidence, race);
+        }
+
+        /** @return the number of horses */
+        int size() { return names.length; }
+
+        /** @return the win rate of a horse, 0 before its first race @param row the source row */
+        double winRate(int row) { return stats[row].getRaces() == 0 ? 0.0 : (double) stats[row].getWins() / stats[row].getRaces(); }
+
+        /** @return the cells of a row as the table shows them @param row the source row */
+        Object[] format(int row) {
+            StableStoreGUI.SavedHorse horse = stats[row];
+            return new Object[] {
+                names[row], horse.getSymbol(), horse.getBreed(), horse.getCoatColour(), horse.getSaddle(), horse.getShoes(),
+                Double.isNaN(confidence[row]) ? "" : String.format("%.0f%%", confidence[row] * 100),
+                horse.getWins(), horse.getRaces(),
+                String.format("%.0f%%", winRate(row) * 100),
+                String.format("%.2f", horse.getAverageSpeed())
+            };
+        }
+
+        /** @return an order of source rows on the raw value of a column, a saved horse's missing confidence counts as highest @param column the model column */
+        Comparator<Integer> comparator(int column) {
+            return switch (column) {
+                case 0 -> Comparator.comparing(row -> names[row], String.CASE_INSENSITIVE_ORDER);
+                case 1 -> Comparator.comparing(row -> stats[row].getSymbol());
+                case 2 -> Comparator.comparing(row -> stats[row].getBreed());
+                case 3 -> Comparator.comparing(row -> stats[row].getCoatColour());
+                case 4 -> Comparator.comparing(row -> stats[row].getSaddle());
+                case 5 -> Comparator.comparing(row -> stats[row].getShoes());
+                case 6 -> Comparator.comparingDouble(row -> confidence[row]);
+                case 7 -> Comparator.comparingInt(row -> stats[row].getWins());
+                case 8 -> Comparator.comparingInt(row -> stats[row].getRaces());
+                case 9 -> Comparator.comparingDouble(this::winRate);
+                default -> Comparator.comparingDouble(row -> stats[row].getAverageSpeed());
+            };
+        }
+    }
+}
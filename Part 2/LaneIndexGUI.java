@@ -0,0 +1,49 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lane-indexed view of the horses in a race, built once when the horses are configured.
+ * Finding the horse in a lane, or the position of that horse in the race, is an array read
+ * instead of a scan over the horses, so the canvas, the winner check and the leaderboard
+ * can all look lanes up every frame without allocating.
+ * Lanes are 1-based like HorseGUI.getLane(), index 0 is unused.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public final class LaneIndexGUI {
+    private final List<HorseGUI> horses;      // Horses in race order, as the engine and snapshots index them
+    private final HorseGUI[] horseInLane;     // Horse of each lane, null for an empty lane
+    private final int[] raceIndex;            // Index of each lane's horse in the race, -1 for an empty lane
+
+    /**
+     * Constructor for the index of a race's lanes
+     *
+     * @param horses   // Horses in the race, not copied, rebuild the index when the list changes
+     * @param lanes    // Number of lanes
+     */
+    public LaneIndexGUI(List<HorseGUI> horses, int lanes) {
+        this.horses = horses;
+        this.horseInLane = new HorseGUI[lanes + 1];
+        this.raceIndex = new int[lanes + 1];
+        Arrays.fill(raceIndex, -1);
+        for (int i = 0; i < horses.size(); i++) {
+            HorseGUI horse = horses.get(i);
+            if (horse.getLane() < 1 || horse.getLane() > lanes) continue;
+            horseInLane[horse.getLane()] = horse;
+            raceIndex[horse.getLane()] = i;
+        }
+    }
+
+    /** @return the number of lanes */
+    public int getLanes() { return horseInLane.length - 1; }
+
+    /** @return the horse in the lane, null for an empty lane, @param lane the 1-based lane */
+    public HorseGUI getHorse(int lane) { return horseInLane[lane]; }
+
+    /** @return the index of the lane's horse in the race, -1 for an empty lane, @param lane the 1-based lane */
+    public int getRaceIndex(int lane) { return raceIndex[lane]; }
+
+    /** @return the horse at an index of the race such as RaceEngineGUI.getWinner(), null for -1 @param index the race index */
+    public HorseGUI getHorseAt(int index) { return index < 0 ? null : horses.get(index); }
+}
@@ -0,0 +1,73 @@
+/**
+ * Histogram of latencies in nanoseconds, measured with System.nanoTime().
+ * Buckets are log-linear: every power of two is split into 16 equal buckets, so a
+ * latency is known to within 1/16 of itself from 1 ns up to centuries, in one fixed
+ * array. Recording a latency is an index computation and an increment, with no
+ * allocation, so it can be done on every move and every frame. Only one thread may
+ * record into a histogram; others may read it once that thread has handed it over.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class LatencyHistogramGUI {
+    private static final int SUB_BITS = 4;                                  // 2^SUB_BITS buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[64 << SUB_BITS];                 // Latencies recorded in each bucket
+    private long count;                                                     // Latencies recorded
+    private long total;                                                     // Sum of the latencies
+    private long max;                                                       // Longest latency
+
+    /** Records a latency, negative ones count as 0 @param nanos the latency */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[indexOf(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    /** @return the bucket of a latency @param nanos the latency, not negative */
+    private static int indexOf(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    /** @return the longest latency a bucket holds @param index the bucket */
+    private static long highestIn(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int block = index >>> SUB_BITS;
+        long lowest = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << (block - 1);
+        return lowest + (1L << (block - 1)) - 1;
+    }
+
+    /** @return the number of latencies recorded */
+    public long getCount() { return count; }
+
+    /** @return the mean latency in nanoseconds, 0 if none are recorded */
+    public double getMean() { return count == 0 ? 0.0 : (double) total / count; }
+
+    /** @return the longest latency in nanoseconds */
+    public long getMax() { return max; }
+
+    /** @return the latency no more than a share of the latencies exceed, in nanoseconds @param quantile the share, 0 to 1 */
+    public long getQuantile(double quantile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, highestIn(i));
+        }
+        return max;
+    }
+
+    /** @return a one line summary of the latencies in milliseconds */
+    public String report() {
+        if (count == 0) return "none recorded";
+        return String.format("mean %.2f ms, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+            getMean() / 1e6, getQuantile(0.50) / 1e6, getQuantile(0.99) / 1e6, getQuantile(0.999) / 1e6, max / 1e6);
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/**
+ * Running order of a GUI race, kept up to date one move at a time.
+ * Every horse on the board has a key packing its progress above its lane, so keys are
+ * unique, a higher key is further ahead and horses level on progress are ordered by lane.
+ * The keys live in a treap held in plain arrays indexed by lane: a binary search tree on
+ * the key that is also a heap on a fixed priority per lane, so its depth is O(log n) for
+ * any order of moves. Moving a horse, finding its position and reading the top k are
+ * O(log n), O(log n) and O(log n + k), with no allocation, however large the field.
+ * Fallen horses are taken off the board. Lanes are 0-based indexes into the race.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class LeaderboardGUI {
+    private static final int NONE = 0;                    // Node of an empty tree, a lane is node lane + 1
+
+    private final long[] key;                             // Packed progress and lane of each node
+    private final int[] priority;                         // Heap priority of each node, fixed by its lane
+    private final int[] left;                             // Subtree of lower keys
+    private final int[] right;                            // Subtree of higher keys
+    private final int[] size;                             // Nodes in the subtree of each node, 0 for NONE
+    private final boolean[] onBoard;                      // True for each node in the tree
+    private final int[] stack;                            // Path of an in-order walk, reused by every walk
+    private int root = NONE;
+    private int splitLow;                                 // Lower half of the latest split
+    private int splitHigh;                                // Higher half of the latest split
+
+    /** Constructor for an empty board @param lanes the number of lanes in the race */
+    public LeaderboardGUI(int lanes) {
+        this.key = new long[lanes + 1];
+        this.priority = new int[lanes + 1];
+        this.left = new int[lanes + 1];
+        this.right = new int[lanes + 1];
+        this.size = new int[lanes + 1];
+        this.onBoard = new boolean[lanes + 1];
+        this.stack = new int[lanes + 1];
+        for (int node = 1; node <= lanes; node++) { priority[node] = mix(node); }
+    }
+
+    /** @return the key of a lane at some progress, @param progress distance travelled, not negative @param lane the lane index */
+    public static long pack(int progress, int lane) { return ((long) progress << 32) | (Integer.MAX_VALUE - lane); }
+
+    /** @return the progress packed in a key @param packed the key */
+    public static int progressOf(long packed) { return (int) (packed >>> 32); }
+
+    /** @return the lane packed in a key @param packed the key */
+    public static int laneOf(long packed) { return Integer.MAX_VALUE - (int) packed; }
+
+    /** @return a position as shown in the race, such as 1st or 22nd @param position the 1-based position */
+    public static String ordinal(int position) {
+        int lastTwo = position % 100;
+        if (lastTwo >= 11 && lastTwo <= 13) return position + "th";
+        return switch (position % 10) {
+            case 1 -> position + "st";
+            case 2 -> position + "nd";
+            case 3 -> position + "rd";
+            default -> position + "th";
+        };
+    }
+
+    /** Puts a lane on the board at some progress, or moves it there if it is on already @param lane the lane index @param progress distance travelled */
+    public void update(int lane, int progress) {
+        int node = lane + 1;
+        long packed = pack(progress, lane);
+        if (onBoard[node]) {
+            if (key[node] == packed) return;
+            root = erase(root, key[node]);
+        }
+        key[node] = packed;
+        left[node] = NONE;
+        right[node] = NONE;
+        size[node] = 1;
+        onBoard[node] = true;
+        root = insert(root, node);
+    }
+
+    /** Takes a lane off the board, if it is on @param lane the lane index */
+    public void remove(int lane) {
+        int node = lane + 1;
+        if (!onBoard[node]) return;
+        root = erase(root, key[node]);
+        onBoard[node] = false;
+    }
+
+    /** Takes every lane off the board */
+    public void clear() {
+        Arrays.fill(onBoard, false);
+        root = NONE;
+    }
+
+    /** @return true if the lane is on the board @param lane the lane index */
+    public boolean contains(int lane) { return onBoard[lane + 1]; }
+
+    /** @return progress of the lane on the board, -1 if it is not on it @param lane the lane index */
+    public int getProgress(int lane) { return onBoard[lane + 1] ? progressOf(key[lane + 1]) : -1; }
+
+    /** @return the number of lanes on the board */
+    public int size() { return size[root]; }
+
+    /** @return 1-based position of the lane, -1 if it is not on the board @param lane the lane index */
+    public int getPosition(int lane) {
+        int node = lane + 1;
+        if (!onBoard[node]) return -1;
+        long target = key[node];
+        int ahead = 0;
+        int t = root;
+        while (t != NONE) {
+            if (key[t] > target) {
+                ahead += 1 + size[right[t]];
+                t = left[t];
+            } else {
+                if (key[t] == target) return ahead + size[right[t]] + 1;
+                t = right[t];
+            }
+        }
+        return -1;
+    }
+
+    /** Fills in the leading lanes, first place first @param k lanes wanted @param out receives the lane indexes @return the number of lanes filled in, at most k */
+    public int top(int k, int[] out) {
+        int filled = 0;
+        int depth = 0;
+        int t = root;
+        k = Math.min(k, out.length);
+        while (filled < k && (t != NONE || depth > 0)) {
+            if (t != NONE) {
+                stack[depth++] = t;
+                t = right[t];
+            } else {
+                t = stack[--depth];
+                out[filled++] = t - 1;
+                t = left[t];
+            }
+        }
+        return filled;
+    }
+
+    /** Fills in the 1-based position of every lane, 0 for lanes off the board, in O(n) @param positions receives a position per lane */
+    public void fillPositions(int[] positions) {
+        Arrays.fill(positions, 0);
+        int position = 0;
+        int depth = 0;
+        int t = root;
+        while (t != NONE || depth > 0) {
+            if (t != NONE) {
+                stack[depth++] = t;
+                t = right[t];
+            } else {
+                t = stack[--depth];
+                if (t - 1 < positions.length) positions[t - 1] = ++position;
+                t = left[t];
+            }
+        }
+    }
+
+    /** @return the tree with a node added @param t the tree @param node the node, not in the tree */
+    private int insert(int t, int node) {
+        if (t == NONE) return node;
+        if (priority[node] > priority[t]) {
+            split(t, key[node]);
+            left[node] = splitLow;
+            right[node] = splitHigh;
+            resize(node);
+            return node;
+        }
+        if (key[node] < key[t]) left[t] = insert(left[t], node);
+        else right[t] = insert(right[t], node);
+        resize(t);
+        return t;
+    }
+
+    /** @return the tree without the node of a key @param t the tree @param target the key, in the tree */
+    private int erase(int t, long target) {
+        if (t == NONE) return NONE;
+        if (key[t] == target) return merge(left[t], right[t]);
+        if (target < key[t]) left[t] = erase(left[t], target);
+        else right[t] = erase(right[t], target);
+        resize(t);
+        return t;
+    }
+
+    /** Splits a tree into the keys below a key and the rest, left in splitLow and splitHigh @param t the tree @param at the key to split at */
+    private void split(int t, long at) {
+        if (t == NONE) {
+            splitLow = NONE;
+            splitHigh = NONE;
+        } else if (key[t] < at) {
+            split(right[t], at);
+            right[t] = splitLow;
+            resize(t);
+            splitLow = t;
+        } else {
+            split(left[t], at);
+            left[t] = splitHigh;
+            resize(t);
+            splitHigh = t;
+        }
+    }
+
+    /** @return one tree of two, every key of low below every key of high @param low the lower tree @param high the higher tree */
+    private int merge(int low, int high) {
+        if (low == NONE) return high;
+        if (high == NONE) return low;
+        if (priority[low] > priority[high]) {
+            right[low] = merge(right[low], high);
+            resize(low);
+            return low;
+        }
+        left[high] = merge(low, left[high]);
+        resize(high);
+        return high;
+    }
+
+    /** Works out the size of a node from its subtrees @param node the node */
+    private void resize(int node) { size[node] = 1 + size[left[node]] + size[right[node]]; }
+
+    /** @return a well spread priority for a node, so the tree is balanced for any order of keys @param node the node */
+    private static int mix(int node) {
+        int h = node * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,215 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.JComponent;
+
+/**
+ * Swing component that draws a race on a character grid, laid out like the old text display.
+ * Everything that does not move during a race (weather box, rails, lane borders and labels)
+ * is drawn once into a cached image. Each move only the cells of horses that moved or fell,
+ * and the position column of lanes whose place changed, are marked dirty, so Swing repaints
+ * those rectangles and nothing else.
+ * Positions come from RaceSnapshotGUI, so the canvas never reads a horse while its race runs.
+ * Lanes are looked up in the race's LaneIndexGUI and dirty cells are passed to Swing as plain
+ * coordinates, so refreshing and painting a frame allocate nothing however many lanes there are.
+ * Lanes are 1-based like HorseGUI.getLane().
+ *
+ * @author Peter Bojthe
+ * @version 1.0.1
+ */
+public class RaceCanvasGUI extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final String FALLEN = "❌";        // Drawn in place of a fallen horse
+    private static final int HEADER_ROWS = 4;             // Weather box and top rail above the first lane
+    private static final int POSITION_COLUMNS = 7;        // Room for the position after each lane, such as 1st
+    private static final int LABEL_COLUMNS = 50;          // Room for the label after the position
+
+    private final int trackLength;                        // Length of the track
+    private final boolean oval;                           // True for an oval track
+    private final int lanes;                              // Number of lanes
+    private final String weatherType;                     // Weather shown above the track
+    private final LaneIndexGUI laneIndex;                 // Horse of each lane and its index in the race
+    private final String[] labels;                        // Text after each lane, index 0 is unused
+    private final int[] shownColumn;                      // Track cell each horse was last painted in
+    private final boolean[] shownFallen;                  // True if the horse was last painted fallen
+    private final int[] shownPosition;                    // Place each lane was last painted in, 0 for none
+    private final String[] ordinals;                      // Text of every place, 1st first, index 0 is empty
+    private final int cellWidth;                          // Width of a character cell
+    private final int cellHeight;                         // Height of a character cell
+    private final int ascent;                             // Baseline offset inside a cell
+    private final Rectangle clip = new Rectangle();       // Area being painted, reused every paint
+    private transient BufferedImage background;           // Cached drawing of everything that does not move
+
+    private final LatencyHistogramGUI paintLatency = new LatencyHistogramGUI();   // Time of every paintComponent call, on the EDT
+
+    /**
+     * Constructor for the canvas of a race
+     *
+     * @param laneIndex     // Horses in the race by lane
+     * @param trackLength   // Length of the track
+     * @param trackType     // STRAIGHT or OVAL
+     * @param weatherType   // Weather shown above the track
+     */
+    public RaceCanvasGUI(LaneIndexGUI laneIndex, int trackLength, String trackType, String weatherType) {
+        this.trackLength = trackLength;
+        this.oval = trackType.equals("OVAL");
+        this.lanes = laneIndex.getLanes();
+        this.weatherType = weatherType;
+        this.laneIndex = laneIndex;
+        this.labels = new String[lanes + 1];
+        this.shownColumn = new int[lanes + 1];
+        this.shownFallen = new boolean[lanes + 1];
+        this.shownPosition = new int[lanes + 1];
+        this.ordinals = new String[lanes + 1];
+        ordinals[0] = "";
+        for (int lane = 1; lane <= lanes; lane++) {
+            ordinals[lane] = LeaderboardGUI.ordinal(lane);
+            HorseGUI horse = laneIndex.getHorse(lane);
+            labels[lane] = horse == null ? "Empty Lane"
+                : "Lane " + horse.getLane() + ": " + horse.getName() + " (Confidence: " + (int) (horse.getConfidence() * 100) + "%)";
+        }
+
+        setFont(new Font("Monospaced", Font.PLAIN, 14));
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        FontMetrics fm = getFontMetrics(getFont());
+        this.cellWidth = fm.charWidth('M');
+        this.cellHeight = fm.getHeight();
+        this.ascent = fm.getAscent();
+        setPreferredSize(new Dimension(cellWidth * (trackLength + 4 + POSITION_COLUMNS + LABEL_COLUMNS), cellHeight * (HEADER_ROWS + lanes + 2)));
+
+        for (int lane = 1; lane <= lanes; lane++) {
+            HorseGUI horse = laneIndex.getHorse(lane);
+            if (horse == null) continue;
+            shownColumn[lane] = columnOf(horse.getDistance());
+            shownFallen[lane] = horse.hasFallen();
+        }
+    }
+
+    /** Marks the cells of every horse that moved or fell, and of every place that changed, since they were last painted as dirty @param snapshot the race after its latest move */
+    public void refresh(RaceSnapshotGUI snapshot) {
+        for (int lane = 1; lane <= lanes; lane++) {
+            int index = laneIndex.getRaceIndex(lane);
+            if (index < 0) continue;
+            int position = Math.min(snapshot.getPosition(index), lanes);
+            if (position != shownPosition[lane]) {
+                shownPosition[lane] = position;
+                repaint(positionColumn() * cellWidth, (HEADER_ROWS + lane - 1) * cellHeight, cellWidth * POSITION_COLUMNS, cellHeight);
+            }
+            int column = columnOf(snapshot.getDistance(index));
+            boolean fallen = snapshot.hasFallen(index);
+            if (column == shownColumn[lane] && fallen == shownFallen[lane]) continue;
+            repaintGlyph(lane, shownColumn[lane]);
+            shownColumn[lane] = column;
+            shownFallen[lane] = fallen;
+            repaintGlyph(lane, column);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        if (background == null) background = drawBackground();
+        clip.setBounds(0, 0, getWidth(), getHeight());
+        g.getClipBounds(clip);
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.drawImage(background, 0, 0, null);
+
+        g.setFont(getFont());
+        g.setColor(Color.BLACK);
+        for (int lane = 1; lane <= lanes; lane++) {
+            HorseGUI horse = laneIndex.getHorse(lane);
+            if (horse == null || !inClip(lane, shownColumn[lane])) continue;
+            drawCell(g, shownFallen[lane] ? FALLEN : horse.getSymbol(), 1 + shownColumn[lane], HEADER_ROWS + lane - 1);
+        }
+        int positionX = positionColumn() * cellWidth;
+        if (positionX < clip.x + clip.width && clip.x < positionX + cellWidth * POSITION_COLUMNS) {
+            for (int lane = 1; lane <= lanes; lane++) {
+                int y = (HEADER_ROWS + lane - 1) * cellHeight;
+                if (shownPosition[lane] == 0 || y >= clip.y + clip.height || clip.y >= y + cellHeight) continue;
+                drawCell(g, ordinals[shownPosition[lane]], positionColumn(), HEADER_ROWS + lane - 1);
+            }
+        }
+        paintLatency.record(System.nanoTime() - start);
+    }
+
+    /** @return the cached image of the weather box, rails, lane borders and labels */
+    private BufferedImage drawBackground() {
+        Dimension size = getPreferredSize();
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(getBackground());
+        g.fillRect(0, 0, size.width, size.height);
+        g.setFont(getFont());
+        g.setColor(Color.BLACK);
+
+        String weather = "|Current Weather: " + weatherSymbol() + " " + weatherType + " |";
+        drawCell(g, "┌" + "─".repeat(weather.length() + 2) + "┐", 0, 0);
+        drawCell(g, weather, 0, 1);
+        drawCell(g, "└" + "─".repeat(weather.length() + 2) + "┘", 0, 2);
+
+        int railStart = oval ? 1 : 0;
+        for (int column = 0; column < trackLength + 3; column++) {
+            drawCell(g, "=", railStart + column, HEADER_ROWS - 1);
+            drawCell(g, "=", railStart + column, HEADER_ROWS + lanes);
+        }
+        for (int lane = 1; lane <= lanes; lane++) {
+            int row = HEADER_ROWS + lane - 1;
+            drawCell(g, oval ? "(" : "|", 0, row);
+            drawCell(g, oval ? ")" : "|", trackLength + 2, row);
+            drawCell(g, labels[lane], positionColumn() + POSITION_COLUMNS, row);
+        }
+        g.dispose();
+        return image;
+    }
+
+    /** Draws text starting at a cell of the grid @param g the graphics @param text the text @param column the column @param row the row */
+    private void drawCell(Graphics g, String text, int column, int row) {
+        g.drawString(text, column * cellWidth, row * cellHeight + ascent);
+    }
+
+    /** @return the column the position of each lane is drawn from, just after the track */
+    private int positionColumn() { return trackLength + 4; }
+
+    /** @return the track cell a horse is drawn in, an oval lap runs out and back, @param distance distance travelled by the horse */
+    private int columnOf(int distance) {
+        if (!oval) return Math.min(distance, trackLength);
+        int lapProgress = distance % (trackLength * 2);
+        return lapProgress < trackLength ? lapProgress : trackLength * 2 - lapProgress;
+    }
+
+    /** Marks the area a horse's glyph covers as dirty, with room for glyphs wider than a cell @param lane the lane @param column the track cell */
+    private void repaintGlyph(int lane, int column) {
+        repaint(column * cellWidth, (HEADER_ROWS + lane - 1) * cellHeight, cellWidth * 3, cellHeight);
+    }
+
+    /** @return true if the area a horse's glyph covers overlaps the area being painted, @param lane the lane @param column the track cell */
+    private boolean inClip(int lane, int column) {
+        int x = column * cellWidth;
+        int y = (HEADER_ROWS + lane - 1) * cellHeight;
+        return x < clip.x + clip.width && clip.x < x + cellWidth * 3 && y < clip.y + clip.height && clip.y < y + cellHeight;
+    }
+
+    /** @return the symbol shown for the weather */
+    private String weatherSymbol() {
+        return switch (weatherType.toUpperCase()) {
+            case "SUNNY" -> "☀️";
+            case "RAINING" -> "🌧️";
+            case "WET" -> "💧";
+            case "MUDDY" -> "🌧️💧";
+            case "SNOW" -> "❄️";
+            case "ICY" -> "❄️";
+            default -> "🌤️";
+        };
+    }
+
+    /** @return the number of times the canvas has been painted */
+    public long getPaints() { return paintLatency.getCount(); }
+
+    /** @return the average time in milliseconds the canvas took to paint */
+    public double getAveragePaintMillis() { return paintLatency.getMean() / 1_000_000.0; }
+
+    /** @return how long every paint took, read on the EDT */
+    public LatencyHistogramGUI getPaintLatency() { return paintLatency; }
+}
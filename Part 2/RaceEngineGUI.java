@@ -0,0 +1,157 @@
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Headless race simulation for the GUI version of the simulation.
+ * Moves a field of horses round a straight or oval track without touching Swing,
+ * so a race can be run without waiting for the display.
+ * Every lane lives in a RaceStateGUI so a move runs over primitive arrays.
+ * The running order is kept in a LeaderboardGUI built on the first call to
+ * getLeaderboard() and updated by every move after it, so races that never ask
+ * for positions, like the odds simulations, do not pay for them.
+ * Lanes are 0-based indexes into the list of horses.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.3
+ */
+public class RaceEngineGUI {
+    private final int finishDistance;      // Distance a horse must travel to finish
+    private final RaceStateGUI state;      // Position, confidence and fallen flag of every lane
+    private RandomGenerator random;        // Stream every move and fall of the race is drawn from
+    private int ticks;                     // Number of moves made so far
+    private boolean finished;              // True once a horse has finished or all have fallen
+    private LeaderboardGUI board;          // Running order of the standing horses, null until asked for
+
+    /**
+     * Constructor for a race over the given lanes
+     *
+     * @param confidence   // Confidence of the horse in each lane
+     * @param trackLength  // Length of the track
+     * @param oval         // True for an oval track, a lap is twice the track length
+     */
+    public RaceEngineGUI(double[] confidence, int trackLength, boolean oval) {
+        if (trackLength <= 0) { throw new IllegalArgumentException("Track length must be positive"); }
+        this.finishDistance = oval ? trackLength * 2 : trackLength;
+        this.state = new RaceStateGUI(confidence, oval ? trackLength * 2 : 0);
+        this.random = new SplittableRandom();
+    }
+
+    /** @return an engine for the horses in list order, each horse attached as a view over its lane, @param horses the field, @param trackLength length of the track, @param trackType STRAIGHT or OVAL */
+    public static RaceEngineGUI forHorses(List<HorseGUI> horses, int trackLength, String trackType) {
+        double[] confidence = new double[horses.size()];
+        for (int i = 0; i < horses.size(); i++) { confidence[i] = horses.get(i).getConfidence(); }
+        RaceEngineGUI engine = new RaceEngineGUI(confidence, trackLength, trackType.equals("OVAL"));
+        for (int i = 0; i < horses.size(); i++) { horses.get(i).attachTo(engine.state, i); }
+        return engine;
+    }
+
+    /** Brings every horse back to the start */
+    public void reset() {
+        state.reset();
+        ticks = 0;
+        finished = false;
+        if (board != null) fillBoard();
+    }
+
+    /** Moves every horse once @return true if the race is finished after this move */
+    public boolean tick() {
+        if (finished) return true;
+        double[] confidence = state.confidence;
+        int[] distance = state.distance;
+        long[] fallen = state.fallen;
+        int lanes = distance.length;
+        boolean someoneFinished = false;
+        for (int lane = 0; lane < lanes; lane++) {
+            int word = lane >>> 6;
+            long bit = 1L << lane;
+            if ((fallen[word] & bit) != 0) continue;
+            double c = confidence[lane];
+            boolean moved = random.nextDouble() < c;
+            if (moved) distance[lane]++;
+            if (random.nextDouble() < 0.1 * c * c) {
+                fallen[word] |= bit;
+                if (board != null) board.remove(lane);
+            } else {
+                if (moved && board != null) board.update(lane, distance[lane]);
+                if (distance[lane] >= finishDistance) someoneFinished = true;
+            }
+        }
+        ticks++;
+        finished = someoneFinished || !state.anyStanding();
+        return finished;
+    }
+
+    /** Runs the race from the start until it is finished @return the number of moves the race took */
+    public int simulate() {
+        reset();
+        while (!tick()) { /* keep moving until a horse finishes or all have fallen */ }
+        return ticks;
+    }
+
+    /** Runs the race from the start until it is finished @return the outcome of the race */
+    public RaceResultGUI run() {
+        simulate();
+        return getResult();
+    }
+
+    /** sets the stream the race draws its moves and falls from, the same seed replays the same race @param random the race's stream */
+    public void setRandom(RandomGenerator random) { this.random = random; }
+
+    /** Detaches the horses from the race, keeping their final positions @param horses the horses in list order */
+    public void detach(List<HorseGUI> horses) {
+        for (HorseGUI horse : horses) { horse.detach(); }
+    }
+
+    /** @return the outcome of the race in its current state */
+    public RaceResultGUI getResult() { return new RaceResultGUI(state, getWinner(), ticks); }
+
+    /** @return the lane of the first standing horse to finish, -1 if no horse has finished */
+    public int getWinner() {
+        for (int lane = 0; lane < state.getLanes(); lane++) {
+            if (!state.hasFallen(lane) && state.distance[lane] >= finishDistance) return lane;
+        }
+        return -1;
+    }
+
+    /** @return the running order of the standing horses, built from the race as it is on the first call and kept up to date by every move after it */
+    public LeaderboardGUI getLeaderboard() {
+        if (board == null) {
+            board = new LeaderboardGUI(state.getLanes());
+            fillBoard();
+        }
+        return board;
+    }
+
+    /** Puts every standing horse on the board at its distance */
+    private void fillBoard() {
+        board.clear();
+        for (int lane = 0; lane < state.getLanes(); lane++) {
+            if (!state.hasFallen(lane)) board.update(lane, state.distance[lane]);
+        }
+    }
+
+    /** @return laps completed by the horse in the lane (always 0 on a straight track), @param lane the lane index */
+    public int getLapsCompleted(int lane) { return state.getLapsCompleted(lane); }
+
+    /** @return distance travelled in the lane, @param lane the lane index */
+    public int getDistance(int lane) { return state.getDistance(lane); }
+
+    /** @return true if the horse in the lane has fallen, @param lane the lane index */
+    public boolean hasFallen(int lane) { return state.hasFallen(lane); }
+
+    /** @return the lanes of the race */
+    public RaceStateGUI getState() { return state; }
+
+    /** @return the distance a horse must travel to finish */
+    public int getFinishDistance() { return finishDistance; }
+
+    /** @return the number of lanes */
+    public int getLanes() { return state.getLanes(); }
+
+    /** @return the number of moves made so far */
+    public int getTicks() { return ticks; }
+
+    /** @return true once a horse has finished or all have fallen */
+    public boolean isFinished() { return finished; }
+}
@@ -0,0 +1,36 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Source of every random decision in the GUI version of the simulation.
+ * A master seed produces one seed per race and each race draws from its own stream,
+ * so parallel simulations never share a generator and any race can be replayed from its seed.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class RaceRandomGUI {
+    private final long masterSeed;          // Seed every race seed is drawn from
+    private final SplittableRandom master;  // Generator of race seeds and split streams
+
+    /** Constructor for a source with a random master seed */
+    public RaceRandomGUI() { this(new SplittableRandom().nextLong()); }
+
+    /** Constructor for a source with a fixed master seed @param masterSeed seed every race seed is drawn from */
+    public RaceRandomGUI(long masterSeed) {
+        this.masterSeed = masterSeed;
+        this.master = new SplittableRandom(masterSeed);
+    }
+
+    /** @return the seed of the next race */
+    public synchronized long nextRaceSeed() { return master.nextLong(); }
+
+    /** @return a new stream independent of every other stream from this source, one per parallel task */
+    public synchronized SplittableRandom split() { return master.split(); }
+
+    /** @return the random stream of a race @param raceSeed the seed of the race */
+    public static RandomGenerator streamFor(long raceSeed) { return new SplittableRandom(raceSeed); }
+
+    /** @return the seed every race seed is drawn from */
+    public long getMasterSeed() { return masterSeed; }
+}
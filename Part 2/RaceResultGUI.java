@@ -0,0 +1,65 @@
+/**
+ * The outcome of a finished race in the GUI version of the simulation.
+ * Lanes are 0-based indexes into the list of horses the race was run with.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class RaceResultGUI {
+    private final int[] finishOrder;       // Lanes ordered by distance travelled, furthest first
+    private final int[] fallers;           // Lanes of every horse that fell
+    private final int[] distances;         // Distance travelled in each lane
+    private final int winner;              // Lane of the winner, -1 if all horses fell
+    private final int ticks;               // Number of moves the race took
+
+    /**
+     * Constructor for the result of a race
+     *
+     * @param state      // The lanes of the finished race
+     * @param winner     // Lane of the winner, -1 if there is no winner
+     * @param ticks      // Number of moves the race took
+     */
+    public RaceResultGUI(RaceStateGUI state, int winner, int ticks) {
+        int lanes = state.getLanes();
+        this.distances = new int[lanes];
+        this.winner = winner;
+        this.ticks = ticks;
+
+        int fallerCount = 0;
+        for (int lane = 0; lane < lanes; lane++) { if (state.hasFallen(lane)) fallerCount++; }
+        this.fallers = new int[fallerCount];
+        this.finishOrder = new int[lanes];
+        int f = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            distances[lane] = state.getDistance(lane);
+            finishOrder[lane] = lane;
+            if (state.hasFallen(lane)) fallers[f++] = lane;
+        }
+
+        // Insertion sort, fields are small and lanes stay in order on a tie
+        for (int i = 1; i < finishOrder.length; i++) {
+            int lane = finishOrder[i];
+            int j = i - 1;
+            while (j >= 0 && distances[finishOrder[j]] < distances[lane]) { finishOrder[j + 1] = finishOrder[j]; j--; }
+            finishOrder[j + 1] = lane;
+        }
+    }
+
+    /** @return lanes ordered by distance travelled, furthest first */
+    public int[] getFinishOrder() { return finishOrder.clone(); }
+
+    /** @return lanes of every horse that fell */
+    public int[] getFallers() { return fallers.clone(); }
+
+    /** @return the lane of the winner, -1 if every horse fell */
+    public int getWinner() { return winner; }
+
+    /** @return true if a horse finished the race */
+    public boolean hasWinner() { return winner >= 0; }
+
+    /** @return the number of moves the race took */
+    public int getTicks() { return ticks; }
+
+    /** @return the distance travelled in the lane, @param lane the lane index */
+    public int getDistance(int lane) { return distances[lane]; }
+}
@@ -0,0 +1,100 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a GUI race on its own thread at a fixed tick rate, away from the Event Dispatch Thread.
+ * After every move the thread publishes an immutable RaceSnapshotGUI through an AtomicReference.
+ * It is the only writer, so publishing is a single volatile store with no locks, and the
+ * display reads the latest snapshot at its own frame rate. A dialog or table on the EDT
+ * therefore never holds up the race.
+ * Moves are scheduled on absolute deadlines. How late each move starts (its jitter) and
+ * how long it takes to compute and snapshot are recorded with System.nanoTime() into
+ * histograms, while the race timer counts moves, so race times do not depend on either.
+ * The histograms are written only by the simulation thread before it publishes each
+ * snapshot, so they are safe to read once a finished snapshot has been seen.
+ * Stopping a race waits for its thread, so the horses can be detached from it at once.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.2
+ */
+public class RaceSimulationGUI {
+    private final RaceEngineGUI engine;                                     // The race, only touched by the simulation thread
+    private final long tickNanos;                                           // Time between moves
+    private final RaceTimerGUI timer;                                       // Counts the moves from first to last
+    private final AtomicReference<RaceSnapshotGUI> latest = new AtomicReference<>();
+    private final Thread thread;                                            // Thread the race runs on
+    private volatile boolean stopped;                                       // Set to abandon the race
+
+    private final LatencyHistogramGUI jitter = new LatencyHistogramGUI();   // How late each move started
+    private final LatencyHistogramGUI compute = new LatencyHistogramGUI();  // How long each move and its snapshot took
+
+    /**
+     * Constructor for a race that is not yet running
+     *
+     * @param engine       // The race to run, the EDT must not touch it until the race is finished
+     * @param tickMillis   // Time between moves
+     * @param timer        // Started before the first move, ticked by every move and stopped after the last
+     */
+    public RaceSimulationGUI(RaceEngineGUI engine, long tickMillis, RaceTimerGUI timer) {
+        this.engine = engine;
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.timer = timer;
+        this.latest.set(new RaceSnapshotGUI(engine, System.nanoTime()));
+        this.thread = new Thread(this::run, "race-simulation");
+        this.thread.setDaemon(true);
+    }
+
+    /** Starts the race on its own thread */
+    public void start() { thread.start(); }
+
+    /** Abandons the race, waits for the thread to stop before its next move and detaches the horses from the race @param horses the field in list order */
+    public void stop(List<HorseGUI> horses) {
+        stopped = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try { thread.join(); } catch (InterruptedException e) { interrupted = true; }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        engine.detach(horses);
+    }
+
+    /** @return the snapshot published after the latest move */
+    public RaceSnapshotGUI getLatest() { return latest.get(); }
+
+    /** Moves the race on every deadline until it is finished or stopped */
+    private void run() {
+        timer.start();
+        long deadline = System.nanoTime();
+        while (!stopped) {
+            deadline += tickNanos;
+            long wait;
+            while (!stopped && (wait = deadline - System.nanoTime()) > 0) { LockSupport.parkNanos(wait); }
+            if (stopped) return;
+
+            long now = System.nanoTime();
+            jitter.record(now - deadline);
+            boolean finished = engine.tick();
+            timer.tick();
+            if (finished) timer.stop();
+            RaceSnapshotGUI snapshot = new RaceSnapshotGUI(engine, now);
+            compute.record(System.nanoTime() - now);
+            latest.set(snapshot);
+            if (finished) return;
+        }
+    }
+
+    /** @return how late the moves started, read once the race is finished */
+    public LatencyHistogramGUI getJitter() { return jitter; }
+
+    /** @return how long the moves took to compute and snapshot, read once the race is finished */
+    public LatencyHistogramGUI getComputeLatency() { return compute; }
+
+    /** @return a summary of how late the moves started and how long they took, read once the race is finished */
+    public String getJitterReport() {
+        if (jitter.getCount() == 0) return "No moves made";
+        return String.format("%d moves every %d ms%n  late by %s%n  computed in %s",
+            jitter.getCount(), tickNanos / 1_000_000, jitter.report(), compute.report());
+    }
+}
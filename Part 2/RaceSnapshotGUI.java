@@ -0,0 +1,63 @@
+/**
+ * Immutable picture of a GUI race after one move, handed from the simulation thread to the display.
+ * Positions are copied from the engine's leaderboard in one walk of its running order.
+ * Lanes are 0-based indexes into the list of horses.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.1
+ */
+public final class RaceSnapshotGUI {
+    private final int tick;                // Number of moves made when the snapshot was taken
+    private final long nanos;              // System.nanoTime() of the move
+    private final int[] distance;          // Distance travelled in each lane
+    private final boolean[] fallen;        // True for each lane whose horse has fallen
+    private final int[] position;          // Place of each lane in the running order, 0 once its horse has fallen
+    private final boolean finished;        // True once a horse has finished or all have fallen
+    private final int winner;              // Lane of the winner, -1 if there is none yet
+
+    /**
+     * Constructor for a snapshot of the race as it is now
+     *
+     * @param engine   // The race, read on the thread that moves it
+     * @param nanos    // System.nanoTime() of the move
+     */
+    public RaceSnapshotGUI(RaceEngineGUI engine, long nanos) {
+        int lanes = engine.getLanes();
+        this.tick = engine.getTicks();
+        this.nanos = nanos;
+        this.distance = new int[lanes];
+        this.fallen = new boolean[lanes];
+        this.position = new int[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            distance[lane] = engine.getDistance(lane);
+            fallen[lane] = engine.hasFallen(lane);
+        }
+        engine.getLeaderboard().fillPositions(position);
+        this.finished = engine.isFinished();
+        this.winner = engine.getWinner();
+    }
+
+    /** @return the number of moves made when the snapshot was taken */
+    public int getTick() { return tick; }
+
+    /** @return System.nanoTime() of the move */
+    public long getNanos() { return nanos; }
+
+    /** @return distance travelled in the lane, @param lane the lane index */
+    public int getDistance(int lane) { return distance[lane]; }
+
+    /** @return true if the horse in the lane has fallen, @param lane the lane index */
+    public boolean hasFallen(int lane) { return fallen[lane]; }
+
+    /** @return 1-based place of the lane in the running order, 0 if its horse has fallen, @param lane the lane index */
+    public int getPosition(int lane) { return position[lane]; }
+
+    /** @return true once a horse has finished or all have fallen */
+    public boolean isFinished() { return finished; }
+
+    /** @return the lane of the winner, -1 if there is none yet */
+    public int getWinner() { return winner; }
+
+    /** @return the number of lanes */
+    public int getLanes() { return distance.length; }
+}
@@ -0,0 +1,68 @@
+/**
+ * Compact state of every horse in a GUI race.
+ * Distances and confidences are primitive arrays indexed by lane and fallen horses are a bitset,
+ * so a move of the race runs over a few arrays without visiting any objects.
+ * HorseGUI objects in a live race are attached as views over their lane.
+ * Lanes are 0-based indexes into the list of horses.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class RaceStateGUI {
+    final double[] confidence;      // Confidence of the horse in each lane
+    final int[] distance;           // Distance travelled in each lane
+    final long[] fallen;            // Bitset of lanes whose horse has fallen
+    private final int lanes;        // Number of lanes
+    private final int lapLength;    // Length of a lap on an oval track, 0 on a straight track
+
+    /** Constructor for a race with every horse at the start @param confidence confidence of the horse in each lane @param lapLength length of a lap, 0 for a straight track */
+    public RaceStateGUI(double[] confidence, int lapLength) {
+        this.lanes = confidence.length;
+        this.lapLength = lapLength;
+        this.confidence = confidence.clone();
+        this.distance = new int[lanes];
+        this.fallen = new long[(lanes + 63) >>> 6];
+    }
+
+    /** Brings every horse back to the start, standing */
+    public void reset() {
+        for (int lane = 0; lane < lanes; lane++) { distance[lane] = 0; }
+        for (int word = 0; word < fallen.length; word++) { fallen[word] = 0L; }
+    }
+
+    /** @return true if at least one horse has not fallen */
+    public boolean anyStanding() {
+        for (int word = 0; word < fallen.length; word++) {
+            long lanesInWord = (word == fallen.length - 1 && (lanes & 63) != 0) ? (1L << (lanes & 63)) - 1 : -1L;
+            if ((lanesInWord & ~fallen[word]) != 0) return true;
+        }
+        return false;
+    }
+
+    /** marks the horse in the lane as fallen @param lane the lane index */
+    public void fall(int lane) { fallen[lane >>> 6] |= 1L << lane; }
+
+    /** marks the horse in the lane as standing @param lane the lane index */
+    public void standUp(int lane) { fallen[lane >>> 6] &= ~(1L << lane); }
+
+    /** @return true if the horse in the lane has fallen @param lane the lane index */
+    public boolean hasFallen(int lane) { return (fallen[lane >>> 6] & (1L << lane)) != 0; }
+
+    /** @return distance travelled in the lane @param lane the lane index */
+    public int getDistance(int lane) { return distance[lane]; }
+
+    /** places the horse in the lane at a distance @param lane the lane index @param newDistance the distance */
+    public void setDistance(int lane, int newDistance) { distance[lane] = newDistance; }
+
+    /** @return laps completed in the lane (always 0 on a straight track) @param lane the lane index */
+    public int getLapsCompleted(int lane) { return lapLength == 0 ? 0 : distance[lane] / lapLength; }
+
+    /** @return the confidence of the horse in the lane @param lane the lane index */
+    public double getConfidence(int lane) { return confidence[lane]; }
+
+    /** sets the confidence of the horse in the lane @param lane the lane index @param newConfidence the confidence */
+    public void setConfidence(int lane, double newConfidence) { confidence[lane] = newConfidence; }
+
+    /** @return the number of lanes */
+    public int getLanes() { return lanes; }
+}
@@ -1,32 +1,44 @@
 /**
  * The class to time each race
- * 
+ * The clock is simulated: a race lasts as many moves as it made, each standing for a
+ * fixed time, so race times and the speeds worked out from them depend only on the
+ * race and not on how promptly the machine ran its moves. How long moves and frames
+ * really took is measured separately, with LatencyHistogramGUI.
+ *
  * @author Peter Bojthe
- * @version 1.0.1
+ * @version 1.0.2
  */
 public class RaceTimerGUI {
-    private long raceStartTime;
-    private long raceEndTime;
+    private final long tickMillis;         // Simulated time of one move
+    private long ticks;                    // Moves made since the timer was started
     private boolean running = false;
 
+    /** Constructor for a clock of moves @param tickMillis the simulated time of one move */
+    public RaceTimerGUI(long tickMillis) { this.tickMillis = tickMillis; }
+
+    /** @return the number of moves timed */
+    public long getTicks() { return ticks; }
+
     /** @return elapsed time in milliseconds */
-    public long getElapsedMillis() { return raceEndTime - raceStartTime; }
+    public long getElapsedMillis() { return ticks * tickMillis; }
 
     /** @return elapsed time in seconds */
     public double getElapsedSeconds() { return getElapsedMillis() / 1000.0; }
 
-    /** Starts the race timer */
+    /** Starts the race timer from no moves */
     public void start() {
-        raceStartTime = System.currentTimeMillis();
+        ticks = 0;
         running = true;
     }
 
+    /** Counts one move of the race, if the timer is running */
+    public void tick() {
+        if (running) ticks++;
+    }
+
     /** Stops the race timer */
     public void stop() {
-        if (running) {
-            raceEndTime = System.currentTimeMillis();
-            running = false;
-        }
+        running = false;
     }
 
     /** @return formatted string of the elapsed time */
@@ -0,0 +1,377 @@
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Saved GUI horses and track times, kept between sessions.
+ * Every read and write of the file happens on one writer thread. Callers on the EDT
+ * only format a line and put a task on a bounded queue; the writer drains the queue,
+ * applies the tasks to its copy of the stable, and appends the lines of a whole
+ * batch in one write. The queue is bounded so a stalled disk holds callers back
+ * instead of growing memory, and with a few lines per race it never fills in play.
+ * The file is loaded by the writer's first task, so opening the store returns at
+ * once; snapshots are queued behind the writes before them and so always see them.
+ * Closing the store flushes, forces the file to disk and, if horses were saved more
+ * than once, rewrites it with the latest line of each. Unreadable lines, such as one
+ * torn by a crash, are skipped, and a file that could not be read to the end is only
+ * ever appended to, so a rewrite never drops horses it did not read. A torn last line
+ * is cut off before the file is read and again before the first append, so it is never
+ * taken for a whole line and new lines never run on from it.
+ *
+ * Lines: H,symbol,breed,coat,saddle,shoes,wins,races,averageSpeed,name and T,track,seconds.
+ * The name comes last so it may hold commas.
+ *
+ * @author Peter Bojthe
+ * @version 1.0.0
+ */
+public class StableStoreGUI implements AutoCloseable {
+    public static final String FILE_NAME = "SavedStableGUI.csv";
+    private static final int QUEUE_CAPACITY = 1024;                         // Tasks waiting for the writer at most
+
+    private final Path file;                                                // The stable file
+    private final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;                                            // Only thread to touch the file and the maps
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
+    private volatile boolean closing;                                       // Set once close has queued its task
+
+    // Owned by the writer thread
+    private final Map<String, SavedHorse> horses = new HashMap<>();         // Latest saved horse by name
+    private final Map<String, TrackType> tracks = new LinkedHashMap<>();    // Saved times of every track
+    private final StringBuilder pending = new StringBuilder();              // Lines of the batch being built
+    private Writer out;                                                     // Appends to the file, opened after loading
+    private int horseLines;                                                 // Horse lines in the file, repeats included
+    private boolean loaded;                                                 // True once the whole file was read, needed to compact it
+    private long batches;                                                   // Appends made
+    private long linesWritten;                                              // Lines appended over every batch
+
+    /** A unit of work run on the writer thread */
+    private interface Task { void run() throws IOException; }
+
+    /**
+     * Constructor for a store, loading it in the background
+     *
+     * @param file   // The stable file, created by the first save
+     */
+    public StableStoreGUI(Path file) {
+        this.file = file;
+        this.writer = new Thread(this::run, "stable-writer");
+        this.writer.setDaemon(true);
+        queue.add(this::load);
+        writer.start();
+    }
+
+    /** @return a store over the stable file in the working directory */
+    public static StableStoreGUI openDefault() { return new StableStoreGUI(Path.of(FILE_NAME)); }
+
+    /** Queues the stats and accessories of a horse, to be written with its batch @param horse the horse, read on the calling thread */
+    public void saveHorse(HorseGUI horse) {
+        SavedHorse saved = SavedHorse.of(horse);
+        String name = horse.getName();
+        submit(() -> {
+            horses.put(name, saved);
+            horseLines++;
+            pending.append(saved.toLine(name)).append('\n');
+        });
+    }
+
+    /** Queues a race time of a track @param track the type of track @param seconds length of the race */
+    public void saveTrackTime(String track, double seconds) {
+        submit(() -> {
+            tracks.computeIfAbsent(track, TrackType::new).addTime(seconds);
+            pending.append("T,").append(track).append(',').append(seconds).append('\n');
+        });
+    }
+
+    /** @return a future of the stable as it is once every task queued before this call has run */
+    public CompletableFuture<Snapshot> snapshot() {
+        CompletableFuture<Snapshot> result = new CompletableFuture<>();
+        submit(() -> {
+            Map<String, TrackType> copies = new HashMap<>();
+            tracks.forEach((type, track) -> copies.put(type, track.copy()));
+            result.complete(new Snapshot(Map.copyOf(horses), copies));
+        });
+        return result;
+    }
+
+    /** Flushes every queued line, forces the file to disk and compacts repeated horses, waiting for the writer to finish */
+    @Override
+    public void close() {
+        if (!closing) {
+            closing = true;
+            put(this::finish);
+        }
+        closed.join();
+    }
+
+    /** @return a one line summary of the writes made */
+    public String report() {
+        return String.format("%d stable lines written in %d batches", linesWritten, batches);
+    }
+
+    /** Queues a task, waiting for room if the writer has fallen a whole queue behind @param task the task */
+    private void submit(Task task) {
+        if (closing) throw new IllegalStateException("The stable is closed");
+        put(task);
+    }
+
+    /** Puts a task on the queue @param task the task */
+    private void put(Task task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a stable write", e);
+        }
+    }
+
+    /** Writer loop: runs every task waiting, then appends the lines of the batch in one write */
+    private void run() {
+        List<Task> batch = new ArrayList<>(QUEUE_CAPACITY);
+        try {
+            while (!closed.isDone()) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Task task : batch) {
+                    try {
+                        task.run();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Error saving the stable: " + e.getMessage());
+                    }
+                }
+                batch.clear();
+                try {
+                    writePending();
+                } catch (IOException e) {
+                    System.err.println("Error saving the stable: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            closed.complete(null);
+        }
+    }
+
+    /** Reads the file into the maps, the last line of a horse wins and unreadable lines are skipped @throws IOException if the file cannot be read */
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            loaded = true;
+            return;
+        }
+        cutTornTail();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    readLine(line);
+                } catch (RuntimeException e) {
+                    skipped++;   // such as a last line torn by a crash
+                }
+            }
+        }
+        if (skipped > 0) System.err.println("Skipped " + skipped + " unreadable lines of the stable");
+        loaded = true;
+    }
+
+    /** Adds a line of the file to the maps @param line the line @throws RuntimeException if the line is malformed */
+    private void readLine(String line) {
+        if (line.startsWith("H,")) {
+            String[] f = line.split(",", 10);
+            if (f.length < 10) throw new IllegalArgumentException("Malformed horse line");
+            horses.put(f[9], new SavedHorse(f[1], f[2], f[3], f[4], f[5],
+                Integer.parseInt(f[6]), Integer.parseInt(f[7]), Double.parseDouble(f[8])));
+            horseLines++;
+        } else if (line.startsWith("T,")) {
+            int comma = line.lastIndexOf(',');
+            if (comma <= 2 || !TrackType.TYPES.contains(line.substring(2, comma))) throw new IllegalArgumentException("Malformed track line");
+            tracks.computeIfAbsent(line.substring(2, comma), TrackType::new).addTime(Double.parseDouble(line.substring(comma + 1)));
+        }
+    }
+
+    /** Appends the lines of the batch, if any, in one write @throws IOException if the file cannot be written */
+    private void writePending() throws IOException {
+        if (pending.length() == 0) return;
+        if (out == null) {
+            cutTornTail();
+            out = new OutputStreamWriter(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8);
+        }
+        int lines = 0;
+        for (int i = 0; i < pending.length(); i++) if (pending.charAt(i) == '\n') lines++;
+        out.append(pending);
+        out.flush();
+        pending.setLength(0);
+        batches++;
+        linesWritten += lines;
+    }
+
+    /** Cuts the file back to the end of its last whole line, so a line torn by a crash is not run on into the next one @throws IOException if the file cannot be cut */
+    private void cutTornTail() throws IOException {
+        if (!Files.exists(file)) return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long keep = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            for (long end = size; end > 0 && keep == 0; end -= buffer.limit()) {
+                int n = (int) Math.min(buffer.capacity(), end);
+                buffer.clear().limit(n);
+                while (buffer.hasRemaining() && channel.read(buffer, end - n + buffer.position()) > 0) { }
+                for (int i = buffer.position() - 1; i >= 0 && keep == 0; i--) {
+                    if (buffer.get(i) == '\n') keep = end - n + i + 1;
+                }
+            }
+            if (keep < size) {
+                channel.truncate(keep);
+                channel.force(true);
+            }
+        }
+    }
+
+    /** Last task: writes what is left, forces it to disk and compacts the file, unless it could not be read whole @throws IOException if the file cannot be written */
+    private void finish() throws IOException {
+        try {
+            writePending();
+            if (out != null) {
+                out.close();
+                out = null;
+                if (loaded && horseLines > horses.size()) {
+                    compact();
+                } else {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                }
+            }
+        } finally {
+            closed.complete(null);
+        }
+    }
+
+    /** Rewrites the file with the latest line of every horse, through a synced temporary file @throws IOException if it cannot be written */
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+             Writer rewrite = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, SavedHorse> horse : horses.entrySet()) {
+                rewrite.write(horse.getValue().toLine(horse.getKey()));
+                rewrite.write('\n');
+            }
+            for (TrackType track : tracks.values()) {
+                for (int i = 0; i < track.getCount(); i++) {
+                    rewrite.write("T," + track.getType() + "," + track.getTime(i) + "\n");
+                }
+            }
+            rewrite.flush();
+            stream.getFD().sync();
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        horseLines = horses.size();
+    }
+
+    /**
+     * The saved stats and accessories of a horse
+     */
+    public static final class SavedHorse {
+        private final String symbol;
+        private final String breed;
+        private final String coatColour;
+        private final String saddle;
+        private final String shoes;
+        private final int wins;
+        private final int races;
+        private final double averageSpeed;
+
+        /** Constructor for a saved horse */
+        SavedHorse(String symbol, String breed, String coatColour, String saddle, String shoes, int wins, int races, double averageSpeed) {
+            this.symbol = symbol;
+            this.breed = breed;
+            this.coatColour = coatColour;
+            this.saddle = saddle;
+            this.shoes = shoes;
+            this.wins = wins;
+            this.races = races;
+            this.averageSpeed = averageSpeed;
+        }
+
+        /** @return the stats and accessories a horse has now @param horse the horse, read on the calling thread */
+        static SavedHorse of(HorseGUI horse) {
+            return new SavedHorse(horse.getSymbol(), horse.getBreed(), horse.getCoatColour(), horse.getSaddle(),
+                horse.getShoes(), horse.getWins(), horse.getRaces(), horse.getAverageSpeed());
+        }
+
+        /** @return the line of the horse in the file @param name the name of the horse */
+        String toLine(String name) {
+            return "H," + symbol + "," + breed + "," + coatColour + "," + saddle + "," + shoes + "," + wins + "," + races + "," + averageSpeed + "," + name;
+        }
+
+        /** @return the symbol of the horse */
+        public String getSymbol() { return symbol; }
+
+        /** @return the breed of the horse */
+        public String getBreed() { return breed; }
+
+        /** @return the coat colour of the horse */
+        public String getCoatColour() { return coatColour; }
+
+        /** @return the saddle of the horse */
+        public String getSaddle() { return saddle; }
+
+        /** @return the shoes of the horse */
+        public String getShoes() { return shoes; }
+
+        /** @return the total wins of the horse */
+        public int getWins() { return wins; }
+
+        /** @return the total races of the horse */
+        public int getRaces() { return races; }
+
+        /** @return the average speed of the horse over its races */
+        public double getAverageSpeed() { return averageSpeed; }
+    }
+
+    /**
+     * The stable at one point of the writer's queue, safe to read on any thread
+     */
+    public static final class Snapshot {
+        private final Map<String, SavedHorse> horses;
+        private final Map<String, TrackType> tracks;
+
+        /** Constructor for a snapshot of copied maps */
+        Snapshot(Map<String, SavedHorse> horses, Map<String, TrackType> tracks) {
+            this.horses = horses;
+            this.tracks = tracks;
+        }
+
+        /** @return the saved horse with the name, or null @param name the name of the horse */
+        public SavedHorse getHorse(String name) { return horses.get(name); }
+
+        /** @return the number of saved horses */
+        public int size() { return horses.size(); }
+
+        /** @return the names of every saved horse, in no particular order */
+        public String[] getNames() { return horses.keySet().toArray(new String[0]); }
+
+        /** @return the saved times of a track, empty if none are saved @param type the type of track */
+        public TrackType getTrack(String type) { TrackType track = tracks.get(type); return track != null ? track : new TrackType(type); }
+    }
+}
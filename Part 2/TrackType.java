@@ -1,24 +1,154 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Track class to keep track of lap times during run-time
- * 
+ * Times are kept in a growable double[] with running aggregates, so recording a race
+ * is O(1) and boxes nothing. Count, mean and variance are kept with Welford's method,
+ * along with the fastest and slowest time. Quantiles come from a log-bucket sketch:
+ * a time falls in bucket ceil(log(time) / log(GAMMA)), so every bucket spans the same
+ * ratio of times and a quantile read from it is within 1% of the true time. The sketch
+ * holds a few hundred counters however many races are recorded, and two tracks merge
+ * by adding their counters.
+ *
  * @author Peter Bojthe
- * @version 1.0.2
+ * @version 1.0.4
  */
 public class TrackType {
+    public static final List<String> TYPES = List.of("STRAIGHT", "OVAL");              // Every type of track a race is run on
+    private static final double ACCURACY = 0.01;                                        // Relative error of a quantile
+    private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);               // Ratio of the bounds of a bucket
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
     private final String type;
-    private final ArrayList<Double> trackTimes = new ArrayList<>();
+    private double[] times = new double[16];       // Every time, in the order recorded
+    private int count;                             // Number of times recorded
+    private double mean;                           // Mean of the times
+    private double sumOfSquares;                   // Sum of squared differences from the mean (Welford)
+    private double min = Double.POSITIVE_INFINITY; // Fastest time
+    private double max = Double.NEGATIVE_INFINITY; // Slowest time
+    private long[] buckets = new long[0];          // Times in each bucket of the sketch, from bucket firstBucket
+    private int firstBucket;                       // Index of buckets[0]
+    private long zeroCount;                        // Times of 0 or less, kept out of the log buckets
 
     /** Constructor to create a type of track @param type is the name of the track */
     public TrackType(String type) { this.type = type; }
 
-    /** @param time to be added to the array list of track times */
-    public void addTime(double time) { trackTimes.add(time); }
+    /** @param time to be added to the times and the running statistics */
+    public void addTime(double time) {
+        if (count == times.length) times = Arrays.copyOf(times, count * 2);
+        times[count++] = time;
+        double delta = time - mean;
+        mean += delta / count;
+        sumOfSquares += delta * (time - mean);
+        min = Math.min(min, time);
+        max = Math.max(max, time);
+        addToSketch(time, 1);
+    }
+
+    /** Adds every time of another track, as if each had been recorded here @param other the track to merge in */
+    public void merge(TrackType other) {
+        if (other.count == 0) return;
+        if (count + other.count > times.length) times = Arrays.copyOf(times, Math.max(times.length * 2, count + other.count));
+        System.arraycopy(other.times, 0, times, count, other.count);
+        int total = count + other.count;
+        double delta = other.mean - mean;
+        sumOfSquares += other.sumOfSquares + delta * delta * count * other.count / total;
+        mean += delta * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        zeroCount += other.zeroCount;
+        for (int i = 0; i < other.buckets.length; i++) {
+            if (other.buckets[i] > 0) addBucket(other.firstBucket + i, other.buckets[i]);
+        }
+    }
+
+    /** @return a copy of the track, its times and statistics */
+    public TrackType copy() {
+        TrackType copy = new TrackType(type);
+        copy.merge(this);
+        return copy;
+    }
+
+    /** Puts a time in its bucket of the sketch @param time the time @param times how many of it */
+    private void addToSketch(double time, long times) {
+        if (time <= 0) { zeroCount += times; return; }
+        addBucket((int) Math.ceil(Math.log(time) / LOG_GAMMA), times);
+    }
+
+    /** Adds to a bucket, growing the sketch to reach it @param index the bucket @param times count to add */
+    private void addBucket(int index, long times) {
+        if (buckets.length == 0) {
+            buckets = new long[8];
+            firstBucket = index - 4;
+        } else if (index < firstBucket || index >= firstBucket + buckets.length) {
+            int low = Math.min(firstBucket, index);
+            int high = Math.max(firstBucket + buckets.length, index + 1);
+            long[] grown = new long[Math.max(high - low, buckets.length * 2)];
+            int newFirst = index < firstBucket ? high - grown.length : low;
+            System.arraycopy(buckets, 0, grown, firstBucket - newFirst, buckets.length);
+            buckets = grown;
+            firstBucket = newFirst;
+        }
+        buckets[index - firstBucket] += times;
+    }
+
+    /** @return the time a bucket stands for, within ACCURACY of every time in it @param index the bucket */
+    private static double bucketValue(int index) { return 2 * Math.pow(GAMMA, index) / (GAMMA + 1); }
 
     /** @return the type of track */
     public String getType() { return type; }
 
-    /** Get all times for this track */
-    public ArrayList<Double> getTrackTimes() { return trackTimes; }
+    /** @return the number of times recorded */
+    public int getCount() { return count; }
+
+    /** @return a recorded time @param index 0-based, in the order recorded */
+    public double getTime(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("No time " + index + " of " + count);
+        return times[index];
+    }
+
+    /** @return the mean time, 0 if none are recorded */
+    public double getMean() { return mean; }
+
+    /** @return the sample variance of the times, 0 for fewer than two */
+    public double getVariance() { return count < 2 ? 0.0 : sumOfSquares / (count - 1); }
+
+    /** @return the sample standard deviation of the times */
+    public double getStandardDeviation() { return Math.sqrt(getVariance()); }
+
+    /** @return the fastest time, 0 if none are recorded */
+    public double getMin() { return count == 0 ? 0.0 : min; }
+
+    /** @return the slowest time, 0 if none are recorded */
+    public double getMax() { return count == 0 ? 0.0 : max; }
+
+    /** @return the time below which a share of the times fall, within 1%, 0 if none are recorded @param quantile the share, 0 to 1 */
+    public double getQuantile(double quantile) {
+        if (count == 0) return 0.0;
+        long rank = (long) Math.floor(quantile * (count - 1));
+        if (rank < zeroCount) return min;
+        long seen = zeroCount;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen > rank) return Math.max(min, Math.min(max, bucketValue(firstBucket + i)));
+        }
+        return max;
+    }
+
+    /** @return counts of times in equal-width bins from the fastest to the slowest time, read from the sketch @param bins the number of bins */
+    public long[] getHistogram(int bins) {
+        long[] histogram = new long[bins];
+        if (count == 0) return histogram;
+        double width = (max - min) / bins;
+        histogram[0] += zeroCount;
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == 0) continue;
+            double value = Math.max(min, Math.min(max, bucketValue(firstBucket + i)));
+            int bin = width == 0 ? 0 : (int) Math.min(bins - 1, (value - min) / width);
+            histogram[bin] += buckets[i];
+        }
+        return histogram;
+    }
 }